@@ -0,0 +1,107 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of caption searches of {@link MemoryPhotoRepository} against a scan that
+ * splits every caption of the library. The run logs the time to build the indexes and the average
+ * time per word prefix, and per typed query combining caption words with tags.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CaptionSearchBenchmarkTest {
+    private static final String TAG = "CaptionSearchBenchmark";
+    private static final int QUERIES = 20;
+    private static final String[] WORDS = {"sunset", "beach", "birthday", "party", "cafe", "hike", "mountain",
+            "snow", "dinner", "family", "wedding", "garden", "concert", "museum", "harbor", "picnic"};
+
+    private static void benchmark(int photoCount) throws ParseException {
+        Random random = new Random(photoCount);
+        Set<Album> albums = new HashSet<>();
+        Album album = null;
+        for (int p = 0; p < photoCount; p++) {
+            if (p % 1000 == 0) {
+                album = new Album("Album " + p / 1000);
+                albums.add(album);
+            }
+            // Common words plus a rarer word, such as a place or a name
+            String caption = WORDS[random.nextInt(WORDS.length)] + " with " + WORDS[random.nextInt(WORDS.length)]
+                    + " at " + Integer.toString(random.nextInt(photoCount / 10 + 1), 36);
+            Photo photo = new Photo(caption, "/storage/" + p + ".jpg");
+            photo.addTag(new Tag("Person", "Person " + random.nextInt(2000)));
+            album.addPhoto(photo);
+        }
+        ScanPhotoRepository scan = new ScanPhotoRepository(albums);
+        MemoryPhotoRepository repository = new MemoryPhotoRepository(albums);
+        long buildStart = System.nanoTime();
+        repository.findPhotosByCaption("warm up");
+        long buildNanos = System.nanoTime() - buildStart;
+
+        String[] prefixes = new String[QUERIES];
+        QueryExpression[] queries = new QueryExpression[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            String word = q % 2 == 0 ? WORDS[random.nextInt(WORDS.length)]
+                    : Integer.toString(random.nextInt(photoCount / 10 + 1), 36);
+            prefixes[q] = word.substring(0, Math.min(word.length(), 2 + q % 3));
+            queries[q] = QueryParser.parse("caption:" + WORDS[random.nextInt(WORDS.length)]
+                    + " caption:" + WORDS[random.nextInt(WORDS.length)].substring(0, 3)
+                    + " NOT person:\"person " + random.nextInt(20) + "\"");
+        }
+
+        double indexUs = 0;
+        double scanUs = 0;
+        double queryUs = 0;
+        double queryScanUs = 0;
+        for (int round = 0; round < 3; round++) { // The first rounds warm up the JIT
+            long indexNanos = 0;
+            long scanNanos = 0;
+            long queryNanos = 0;
+            long queryScanNanos = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                long start = System.nanoTime();
+                Set<Photo> fromIndex = repository.findPhotosByCaption(prefixes[q]);
+                indexNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                Set<Photo> fromScan = scan.findPhotosByCaption(prefixes[q]);
+                scanNanos += System.nanoTime() - start;
+                assertEquals(prefixes[q], fromScan, fromIndex);
+
+                start = System.nanoTime();
+                fromIndex = queries[q].run(repository);
+                queryNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                fromScan = queries[q].run(scan);
+                queryScanNanos += System.nanoTime() - start;
+                assertEquals(queries[q].toString(), fromScan, fromIndex);
+            }
+            indexUs = indexNanos / 1e3 / QUERIES;
+            scanUs = scanNanos / 1e3 / QUERIES;
+            queryUs = queryNanos / 1e3 / QUERIES;
+            queryScanUs = queryScanNanos / 1e3 / QUERIES;
+        }
+        Log.i(TAG, String.format("CaptionSearch %,d photos: build %.1f ms, index %.1f us/prefix, "
+                        + "scan %.1f us/prefix, index %.1f us/query, scan %.1f us/query",
+                photoCount, buildNanos / 1e6, indexUs, scanUs, queryUs, queryScanUs));
+    }
+
+    @Test
+    public void benchmark_10kPhotos() throws ParseException {
+        benchmark(10_000);
+    }
+
+    @Test
+    public void benchmark_100kPhotos() throws ParseException {
+        benchmark(100_000);
+    }
+}
@@ -0,0 +1,94 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of {@link ParallelScanner} against a loop over the albums on one thread, for
+ * a typed query checked photo by photo over the whole library. The run logs the time of the loop and of a scan on pools of
+ * one, two and four workers, as scaling depends on the number of cores of the device running it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParallelScannerBenchmarkTest {
+    private static final String TAG = "ParallelScannerBenchmark";
+    private static final int ROUNDS = 5;
+
+    private static void benchmark(int albumCount, int photosPerAlbum) throws ParseException {
+        Random random = new Random(albumCount);
+        List<Album> albums = new ArrayList<>();
+        for (int a = 0; a < albumCount; a++) {
+            Album album = new Album("Album " + a);
+            for (int p = 0; p < photosPerAlbum; p++) {
+                Photo photo = new Photo("A day at the beach " + random.nextInt(1000),
+                        "/storage/" + a + "/" + p + ".jpg");
+                photo.addTag(new Tag("Location", "City " + random.nextInt(5000)));
+                photo.addTag(new Tag("Person", "Person " + random.nextInt(5000)));
+                album.addPhoto(photo);
+            }
+            albums.add(album);
+        }
+        List<Photo> photos = new ArrayList<>();
+        for (Album album : albums) {
+            photos.addAll(album.getPhotos());
+        }
+        PhotoQuery query = QueryParser.parse("location:*y AND NOT person:\"person 7\" OR caption:99");
+
+        double loopMs = 0;
+        Set<Photo> expected = null;
+        for (int round = 0; round < ROUNDS; round++) { // The first rounds warm up the JIT
+            long start = System.nanoTime();
+            expected = new LinkedHashSet<>();
+            for (Album album : albums) {
+                for (Photo photo : album.getPhotos()) {
+                    if (query.matches(photo)) {
+                        expected.add(photo);
+                    }
+                }
+            }
+            loopMs = (System.nanoTime() - start) / 1e6;
+        }
+        StringBuilder report = new StringBuilder(String.format("ParallelScanner %,d photos, %d cores: loop %.1f ms",
+                albumCount * photosPerAlbum, Runtime.getRuntime().availableProcessors(), loopMs));
+        for (int parallelism : new int[]{1, 2, 4}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                ParallelScanner scanner = new ParallelScanner(pool);
+                double scanMs = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    Set<Photo> matches = scanner.filter(photos, query::matches);
+                    scanMs = (System.nanoTime() - start) / 1e6;
+                    assertEquals(new ArrayList<>(expected), new ArrayList<>(matches));
+                }
+                report.append(String.format(", %d workers %.1f ms", parallelism, scanMs));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        Log.i(TAG, report.toString());
+    }
+
+    @Test
+    public void benchmark_20kPhotos() throws ParseException {
+        benchmark(20, 1_000);
+    }
+
+    @Test
+    public void benchmark_200kPhotos() throws ParseException {
+        benchmark(200, 1_000);
+    }
+}
@@ -0,0 +1,137 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.ImageDecoder;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark comparing the decode time and memory of each {@link PhotoDecoder} on the
+ * sample photos, encoded as JPEG, PNG and WebP. HEIF cannot be encoded by {@link Bitmap#compress},
+ * so HEIF samples are read from {@code samples} in the external files directory of the app when
+ * some are pushed there, for example with {@code adb push photo.heic}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhotoDecoderBenchmarkTest {
+    private static final String TAG = "PhotoDecoderBenchmark";
+    private static final int THUMBNAIL_SIZE = 200;
+    private static final int ROUNDS = 5;
+    private static final int[] SAMPLES = {R.drawable.blinkystock, R.drawable.clydestock,
+            R.drawable.inkystock, R.drawable.pacmanstock, R.drawable.pinkystock};
+
+    @Test
+    public void decoders_compareTimeAndMemoryPerFormat() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Map<String, List<File>> formats = new LinkedHashMap<>();
+        formats.put("JPEG", encodeSamples(context, Bitmap.CompressFormat.JPEG, "jpg"));
+        formats.put("PNG", encodeSamples(context, Bitmap.CompressFormat.PNG, "png"));
+        formats.put("WebP", encodeSamples(context, Bitmap.CompressFormat.WEBP_LOSSY, "webp"));
+        formats.put("HEIF", heifSamples(context));
+
+        PhotoDecoder bitmapFactory = new BitmapFactoryPhotoDecoder();
+        Map<String, PhotoDecoder> decoders = new LinkedHashMap<>();
+        decoders.put("BitmapFactory", bitmapFactory);
+        decoders.put("ImageDecoder software",
+                new ImageDecoderPhotoDecoder(ImageDecoder.ALLOCATOR_SOFTWARE, null, bitmapFactory));
+        decoders.put("ImageDecoder hardware",
+                new ImageDecoderPhotoDecoder(ImageDecoder.ALLOCATOR_HARDWARE, null, bitmapFactory));
+
+        Log.i(TAG, String.format("%-6s %-22s %10s %10s %12s %12s",
+                "Format", "Decoder", "Full ms", "Thumb ms", "Full KB", "Thumb KB"));
+        for (Map.Entry<String, List<File>> format : formats.entrySet()) {
+            if (format.getValue().isEmpty()) {
+                Log.i(TAG, format.getKey() + ": no samples");
+                continue;
+            }
+            for (Map.Entry<String, PhotoDecoder> decoder : decoders.entrySet()) {
+                Result full = measure(context, decoder.getValue(), format.getValue(), BitmapCache.FULL_SIZE);
+                Result thumbnail = measure(context, decoder.getValue(), format.getValue(), THUMBNAIL_SIZE);
+                Log.i(TAG, String.format("%-6s %-22s %10.2f %10.2f %12d %12d",
+                        format.getKey(), decoder.getKey(), full.millis, thumbnail.millis,
+                        full.bytes / 1024, thumbnail.bytes / 1024));
+            }
+        }
+    }
+
+    private static class Result {
+        double millis;
+        long bytes;
+    }
+
+    /**
+     * Decodes every sample a few times, checking thumbnails are squares of the right size.
+     *
+     * @return the mean time of one decode and the mean bytes of one decoded image
+     */
+    private static Result measure(Context context, PhotoDecoder decoder, List<File> samples, int size) {
+        decoder.decode(context, samples.get(0).getPath(), size); // Warm up
+        Result result = new Result();
+        long nanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (File sample : samples) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                Bitmap bitmap = decoder.decode(context, sample.getPath(), size);
+                nanos += SystemClock.elapsedRealtimeNanos() - start;
+                assertNotNull(sample.getName(), bitmap);
+                if (size != BitmapCache.FULL_SIZE) {
+                    assertEquals(THUMBNAIL_SIZE, bitmap.getWidth());
+                    assertEquals(THUMBNAIL_SIZE, bitmap.getHeight());
+                }
+                result.bytes += bitmap.getAllocationByteCount();
+            }
+        }
+        int decodes = ROUNDS * samples.size();
+        result.millis = nanos / 1e6 / decodes;
+        result.bytes /= decodes;
+        return result;
+    }
+
+    private static List<File> encodeSamples(Context context, Bitmap.CompressFormat format, String suffix)
+            throws IOException {
+        File dir = new File(context.getCacheDir(), "decoder-benchmark");
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        PhotoDecoder decoder = new BitmapFactoryPhotoDecoder();
+        List<File> files = new ArrayList<>();
+        for (int id : SAMPLES) {
+            Bitmap bitmap = decoder.decode(context, String.valueOf(id), BitmapCache.FULL_SIZE);
+            File file = new File(dir, context.getResources().getResourceEntryName(id) + "." + suffix);
+            try (OutputStream out = new FileOutputStream(file)) {
+                assertTrue(bitmap.compress(format, 90, out));
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static List<File> heifSamples(Context context) {
+        List<File> files = new ArrayList<>();
+        File[] samples = new File(context.getExternalFilesDir(null), "samples").listFiles();
+        if (samples != null) {
+            for (File sample : samples) {
+                String name = sample.getName().toLowerCase();
+                if (name.endsWith(".heic") || name.endsWith(".heif")) {
+                    files.add(sample);
+                }
+            }
+        }
+        return files;
+    }
+}
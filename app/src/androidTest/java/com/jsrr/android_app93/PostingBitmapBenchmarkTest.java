@@ -0,0 +1,142 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of multi-term queries over {@link PostingBitmap} postings against the identity
+ * sets of photos {@link MemoryPhotoRepository} used to keep, over a library of a million photos. Every
+ * photo has a location, two people and one of a few events. Each query is
+ * {@code event AND (location OR location) AND NOT person}, evaluated in the same order both ways.
+ * The run logs the memory of both kinds of postings and the average time per query.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PostingBitmapBenchmarkTest {
+    private static final String TAG = "PostingBitmapBenchmark";
+    private static final int PHOTOS = 1_000_000;
+    private static final int EVENTS = 10;
+    private static final int LOCATIONS = 2_000;
+    private static final int PEOPLE = 50_000;
+    private static final int QUERIES = 50;
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Set<Photo> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    @Test
+    public void multiTermQueries_1mPhotos() {
+        Random random = new Random(23);
+        Photo[] photos = new Photo[PHOTOS];
+        for (int i = 0; i < PHOTOS; i++) {
+            photos[i] = new Photo(null, "/storage/" + i + ".jpg");
+        }
+        int[] events = new int[PHOTOS];
+        int[] locations = new int[PHOTOS];
+        int[][] people = new int[PHOTOS][2];
+        for (int i = 0; i < PHOTOS; i++) {
+            events[i] = random.nextInt(EVENTS);
+            locations[i] = random.nextInt(LOCATIONS);
+            people[i][0] = random.nextInt(PEOPLE);
+            people[i][1] = random.nextInt(PEOPLE);
+        }
+
+        long before = usedMemory();
+        List<PostingBitmap> eventBitmaps = new ArrayList<>();
+        List<PostingBitmap> locationBitmaps = new ArrayList<>();
+        List<PostingBitmap> personBitmaps = new ArrayList<>();
+        for (List<PostingBitmap> list : List.of(eventBitmaps, locationBitmaps, personBitmaps)) {
+            int count = list == eventBitmaps ? EVENTS : list == locationBitmaps ? LOCATIONS : PEOPLE;
+            for (int v = 0; v < count; v++) {
+                list.add(new PostingBitmap());
+            }
+        }
+        for (int i = 0; i < PHOTOS; i++) {
+            eventBitmaps.get(events[i]).add(i);
+            locationBitmaps.get(locations[i]).add(i);
+            personBitmaps.get(people[i][0]).add(i);
+            personBitmaps.get(people[i][1]).add(i);
+        }
+        long bitmapBytes = usedMemory() - before;
+
+        before = usedMemory();
+        List<Set<Photo>> eventSets = new ArrayList<>();
+        List<Set<Photo>> locationSets = new ArrayList<>();
+        List<Set<Photo>> personSets = new ArrayList<>();
+        for (int v = 0; v < EVENTS; v++) {
+            eventSets.add(newSet());
+        }
+        for (int v = 0; v < LOCATIONS; v++) {
+            locationSets.add(newSet());
+        }
+        for (int v = 0; v < PEOPLE; v++) {
+            personSets.add(newSet());
+        }
+        for (int i = 0; i < PHOTOS; i++) {
+            eventSets.get(events[i]).add(photos[i]);
+            locationSets.get(locations[i]).add(photos[i]);
+            personSets.get(people[i][0]).add(photos[i]);
+            personSets.get(people[i][1]).add(photos[i]);
+        }
+        long setBytes = usedMemory() - before;
+
+        int[][] queries = new int[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = new int[]{random.nextInt(EVENTS), random.nextInt(LOCATIONS), random.nextInt(LOCATIONS),
+                    people[random.nextInt(PHOTOS)][0]};
+        }
+
+        long bitmapNanos = 0;
+        long setNanos = 0;
+        for (int round = 0; round < 8; round++) { // The first rounds warm up the JIT
+            bitmapNanos = 0;
+            setNanos = 0;
+            for (int[] query : queries) {
+                long start = System.nanoTime();
+                PostingBitmap bitmap = PostingBitmap.union(List.of(locationBitmaps.get(query[1]), locationBitmaps.get(query[2])));
+                bitmap.and(eventBitmaps.get(query[0]));
+                bitmap.andNot(personBitmaps.get(query[3]));
+                bitmapNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                Set<Photo> set = newSet();
+                set.addAll(locationSets.get(query[1]));
+                set.addAll(locationSets.get(query[2]));
+                set.retainAll(eventSets.get(query[0]));
+                set.removeAll(personSets.get(query[3]));
+                setNanos += System.nanoTime() - start;
+
+                BitSet fromBitmap = new BitSet();
+                bitmap.forEach(fromBitmap::set);
+                assertEquals(fromBitmap.cardinality(), set.size());
+                for (Photo photo : set) {
+                    assertTrue(fromBitmap.get(Integer.parseInt(photo.getPathName().replaceAll("\\D", ""))));
+                }
+            }
+        }
+        Log.i(TAG, String.format("PostingBitmap %,d photos: bitmap postings %.1f MB, "
+                        + "photo set postings %.1f MB, bitmap %.1f us/query, photo sets %.1f us/query",
+                PHOTOS, bitmapBytes / 1e6, setBytes / 1e6, bitmapNanos / 1e3 / QUERIES, setNanos / 1e3 / QUERIES));
+    }
+}
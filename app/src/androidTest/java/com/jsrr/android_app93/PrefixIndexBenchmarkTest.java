@@ -0,0 +1,98 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of {@link PrefixIndex} against the scan {@code SearchActivity} used to do,
+ * which lowercases every tag value and checks it with {@code startsWith}.
+ * Each run logs the build time and the average time per prefix query.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PrefixIndexBenchmarkTest {
+    private static final String TAG = "PrefixIndexBenchmark";
+    private static final int QUERIES = 50;
+    private static final int MAX_PHOTOS = 100_000;
+
+    private static void benchmark(int tagCount) {
+        Random random = new Random(tagCount);
+        String[] values = new String[tagCount];
+        int[] owners = new int[tagCount];
+        int photoCount = Math.min(tagCount, MAX_PHOTOS);
+        for (int i = 0; i < tagCount; i++) {
+            // Mixed-case values like users type
+            String value = Integer.toString(random.nextInt(tagCount), 36);
+            values[i] = Character.toUpperCase(value.charAt(0)) + value.substring(1);
+            owners[i] = i % photoCount;
+        }
+        String[] queries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            String value = values[random.nextInt(tagCount)].toLowerCase();
+            queries[q] = value.substring(0, Math.min(value.length(), 2 + q % 3));
+        }
+
+        long buildStart = System.nanoTime();
+        Map<String, PostingBitmap> postings = new HashMap<>();
+        for (int i = 0; i < tagCount; i++) {
+            postings.computeIfAbsent(values[i].toLowerCase(), value -> new PostingBitmap()).add(owners[i]);
+        }
+        PrefixIndex index = new PrefixIndex(postings);
+        long buildNanos = System.nanoTime() - buildStart;
+
+        long indexNanos = 0;
+        long scanNanos = 0;
+        long matched = 0;
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            indexNanos = 0;
+            scanNanos = 0;
+            for (String query : queries) {
+                long start = System.nanoTime();
+                PostingBitmap fromIndex = index.collect(query);
+                indexNanos += System.nanoTime() - start;
+
+                BitSet fromScan = new BitSet();
+                start = System.nanoTime();
+                for (int i = 0; i < tagCount; i++) {
+                    if (values[i].toLowerCase().startsWith(query)) {
+                        fromScan.set(owners[i]);
+                    }
+                }
+                scanNanos += System.nanoTime() - start;
+
+                BitSet indexed = new BitSet();
+                fromIndex.forEach(indexed::set);
+                assertEquals(fromScan, indexed);
+                matched += fromIndex.cardinality();
+            }
+        }
+        Log.i(TAG, String.format("PrefixIndex %,d tags: build %.1f ms, index %.1f us/query, scan %.1f us/query, "
+                        + "%.0f matches/query", tagCount, buildNanos / 1e6, indexNanos / 1e3 / QUERIES,
+                scanNanos / 1e3 / QUERIES, matched / 2.0 / QUERIES));
+    }
+
+    @Test
+    public void benchmark_10kTags() {
+        benchmark(10_000);
+    }
+
+    @Test
+    public void benchmark_100kTags() {
+        benchmark(100_000);
+    }
+
+    @Test
+    public void benchmark_1mTags() {
+        benchmark(1_000_000);
+    }
+}
@@ -0,0 +1,82 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of planned {@link QueryExpression} runs against fetching every term of an
+ * AND in the order it was typed and intersecting the results, over {@link MemoryPhotoRepository}. The
+ * queries start with broad terms and end with a selective one, as people tend to type them.
+ * Each run logs the average time per query.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlannerBenchmarkTest {
+    private static final String TAG = "QueryPlannerBenchmark";
+    private static final int QUERIES = 20;
+
+    private static void benchmark(int photoCount) throws ParseException {
+        Random random = new Random(photoCount);
+        Album album = new Album("Library");
+        for (int i = 0; i < photoCount; i++) {
+            Photo photo = new Photo(null, "/storage/" + i + ".jpg");
+            photo.addTag(new Tag("Location", "City " + random.nextInt(photoCount / 20)));
+            photo.addTag(new Tag("Person", "Person " + random.nextInt(photoCount / 10)));
+            photo.addTag(new Tag("Person", "Guest " + random.nextInt(photoCount / 10)));
+            album.addPhoto(photo);
+        }
+        Set<Album> albums = new HashSet<>();
+        albums.add(album);
+        MemoryPhotoRepository repository = new MemoryPhotoRepository(albums);
+
+        String[][] terms = new String[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            terms[q] = new String[]{"location:city", "person:person", "person:guest",
+                    "location:\"city " + random.nextInt(photoCount / 20) + "\""};
+        }
+
+        long plannedNanos = 0;
+        long typedOrderNanos = 0;
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            plannedNanos = 0;
+            typedOrderNanos = 0;
+            for (String[] query : terms) {
+                QueryExpression expression = QueryParser.parse(String.join(" AND ", query));
+                long start = System.nanoTime();
+                Set<Photo> planned = expression.run(repository);
+                plannedNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                Set<Photo> typedOrder = QueryParser.parse(query[0]).run(repository);
+                for (int t = 1; t < query.length; t++) {
+                    typedOrder.retainAll(QueryParser.parse(query[t]).run(repository));
+                }
+                typedOrderNanos += System.nanoTime() - start;
+
+                assertEquals(typedOrder, planned);
+            }
+        }
+        Log.i(TAG, String.format("QueryPlanner %,d photos: planned %.1f us/query, typed order %.1f us/query",
+                photoCount, plannedNanos / 1e3 / QUERIES, typedOrderNanos / 1e3 / QUERIES));
+    }
+
+    @Test
+    public void plannedAnd_10kPhotos() throws ParseException {
+        benchmark(10_000);
+    }
+
+    @Test
+    public void plannedAnd_100kPhotos() throws ParseException {
+        benchmark(100_000);
+    }
+}
@@ -0,0 +1,70 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of taking the first page of {@link RankedResults} against ranking every
+ * result with a full sort, for a one-letter query that matches the whole library. The run logs the
+ * time to the first page, which includes scoring every result, and the time to sort them all.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RankedResultsBenchmarkTest {
+    private static final String TAG = "RankedResultsBenchmark";
+    private static final int PAGE_SIZE = 60;
+
+    private static void benchmark(int photoCount) {
+        Random random = new Random(photoCount);
+        Set<Photo> photos = new HashSet<>();
+        for (int p = 0; p < photoCount; p++) {
+            Photo photo = new Photo("Caption " + p, "/storage/" + p + ".jpg");
+            photo.setDate(1_700_000_000_000L + random.nextInt(1_000_000_000));
+            photo.addTag(new Tag("Person", random.nextInt(100) == 0 ? "m" : "Mar " + random.nextInt(5000)));
+            photo.addTag(new Tag("Location", "City " + random.nextInt(500)));
+            photos.add(photo);
+        }
+        TagQuery query = new TagQuery("Person", "m", TagQuery.Operator.SINGLE, "", "");
+        Comparator<Photo> ranking = Comparator.comparingInt((Photo p) -> -query.relevance(p))
+                .thenComparingLong(p -> -p.getDate())
+                .thenComparing(Photo::getPathName);
+
+        double pageMs = 0;
+        double sortMs = 0;
+        for (int round = 0; round < 5; round++) { // The first rounds warm up the JIT
+            long start = System.nanoTime();
+            List<Photo> firstPage = new RankedResults(photos, query).nextPage(PAGE_SIZE);
+            pageMs = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            List<Photo> sorted = new ArrayList<>(photos);
+            sorted.sort(ranking);
+            sortMs = (System.nanoTime() - start) / 1e6;
+            assertEquals(sorted.subList(0, PAGE_SIZE), firstPage);
+        }
+        Log.i(TAG, String.format("RankedResults %,d results: first page %.1f ms, full sort %.1f ms",
+                photoCount, pageMs, sortMs));
+    }
+
+    @Test
+    public void benchmark_10kResults() {
+        benchmark(10_000);
+    }
+
+    @Test
+    public void benchmark_100kResults() {
+        benchmark(100_000);
+    }
+}
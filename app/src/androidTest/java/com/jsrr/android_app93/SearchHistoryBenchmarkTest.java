@@ -0,0 +1,110 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of typing in {@code SearchActivity} with and without {@link SearchHistory},
+ * over a library scan and over {@link MemoryPhotoRepository}. Each session types a tag value one
+ * character at a time, backspaces to its first character and types it again, running one search per
+ * keystroke as the search thread would. Each run logs the average time per keystroke.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchHistoryBenchmarkTest {
+    private static final String TAG = "SearchHistoryBenchmark";
+    private static final int SESSIONS = 20;
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        int length = 6 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(8)));
+        }
+        return word.toString();
+    }
+
+    private static void benchmark(int photoCount) {
+        Random random = new Random(photoCount);
+        String[] locations = new String[photoCount / 4];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = word(random);
+        }
+        Album album = new Album("Library");
+        for (int i = 0; i < photoCount; i++) {
+            Photo photo = new Photo(null, "/storage/" + i + ".jpg");
+            photo.addTag(new Tag("Location", locations[random.nextInt(locations.length)]));
+            photo.addTag(new Tag("Person", word(random)));
+            album.addPhoto(photo);
+        }
+        Set<Album> albums = new HashSet<>();
+        albums.add(album);
+        String[][] sessions = new String[SESSIONS][];
+        for (int session = 0; session < SESSIONS; session++) {
+            sessions[session] = keystrokes(locations[random.nextInt(locations.length)]);
+        }
+
+        PhotoRepository scan = new ScanPhotoRepository(albums);
+        PhotoRepository index = new MemoryPhotoRepository(albums);
+        Log.i(TAG, String.format("SearchHistory %,d photos: scan %.1f us/keystroke, "
+                        + "scan with history %.1f us/keystroke, index %.1f us/keystroke, "
+                        + "index with history %.1f us/keystroke", photoCount,
+                time(sessions, scan, false), time(sessions, scan, true),
+                time(sessions, index, false), time(sessions, index, true)));
+    }
+
+    private static double time(String[][] sessions, PhotoRepository repository, boolean useHistory) {
+        long nanos = 0;
+        int keystrokes = 0;
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            nanos = 0;
+            keystrokes = 0;
+            SearchHistory history = new SearchHistory();
+            for (String[] prefixes : sessions) {
+                for (String prefix : prefixes) {
+                    TagQuery query = new TagQuery("Location", prefix, TagQuery.Operator.SINGLE, "", "");
+                    long start = System.nanoTime();
+                    Set<Photo> results = useHistory ? history.search(query, repository, 0) : query.run(repository);
+                    nanos += System.nanoTime() - start;
+                    assertFalse(results.isEmpty());
+                    keystrokes++;
+                }
+            }
+        }
+        return nanos / 1e3 / keystrokes;
+    }
+
+    private static String[] keystrokes(String target) {
+        String[] prefixes = new String[3 * target.length() - 2];
+        int k = 0;
+        for (int i = 1; i <= target.length(); i++) {
+            prefixes[k++] = target.substring(0, i);
+        }
+        for (int i = target.length() - 1; i >= 1; i--) {
+            prefixes[k++] = target.substring(0, i);
+        }
+        for (int i = 2; i <= target.length(); i++) {
+            prefixes[k++] = target.substring(0, i);
+        }
+        return prefixes;
+    }
+
+    @Test
+    public void typing_10kPhotos() {
+        benchmark(10_000);
+    }
+
+    @Test
+    public void typing_100kPhotos() {
+        benchmark(100_000);
+    }
+}
@@ -0,0 +1,123 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of {@link SuggestionIndex} against keeping a heap over the range of a sorted
+ * array of values that starts with the prefix. The heap visits every value of the range, which for a
+ * one or two letter prefix is a large part of the values. Each run checks both give the same
+ * suggestions and logs the time to build the index, to update it for a tag and to suggest values for
+ * prefixes of one to four letters.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SuggestionIndexBenchmarkTest {
+    private static final String TAG = "SuggestionIndexBenchmark";
+    private static final int LIMIT = TagSuggester.MAX_SUGGESTIONS;
+    private static final int QUERIES = 500;
+
+    private static List<String> heapOverRange(List<String> sorted, Map<String, Integer> counts, String prefix) {
+        int start = Collections.binarySearch(sorted, prefix);
+        start = start < 0 ? -start - 1 : start;
+        PriorityQueue<String> heap = new PriorityQueue<>(LIMIT + 1, (a, b) -> counts.get(a).equals(counts.get(b))
+                ? b.compareTo(a) : Integer.compare(counts.get(a), counts.get(b)));
+        for (int i = start; i < sorted.size() && sorted.get(i).startsWith(prefix); i++) {
+            heap.add(sorted.get(i));
+            if (heap.size() > LIMIT) {
+                heap.poll();
+            }
+        }
+        List<String> top = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            top.add(heap.poll());
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+    private static void benchmark(int valueCount) {
+        Random random = new Random(valueCount);
+        // Names such as "mar 1234" with a few very common values, as a photo library would have
+        String[] stems = {"anna", "ben", "carla", "dan", "eve", "frank", "mar", "maria", "mark", "new", "sam"};
+        Map<String, Integer> counts = new HashMap<>();
+        List<String> tags = new ArrayList<>();
+        for (int v = 0; v < valueCount; v++) {
+            String value = stems[random.nextInt(stems.length)] + " " + Integer.toString(v, 36);
+            int count = 1 + (int) (1000 / (1 + random.nextInt(valueCount) / 10.0));
+            counts.put(value, count);
+            for (int c = 0; c < count; c++) {
+                tags.add(value);
+            }
+        }
+        Collections.shuffle(tags, random);
+        List<String> sorted = new ArrayList<>(counts.keySet());
+        Collections.sort(sorted);
+
+        SuggestionIndex index = new SuggestionIndex(LIMIT);
+        long buildStart = System.nanoTime();
+        for (String tag : tags) {
+            index.add(tag, tag);
+        }
+        long buildNanos = System.nanoTime() - buildStart;
+
+        String[] prefixes = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            String value = sorted.get(random.nextInt(sorted.size()));
+            prefixes[q] = value.substring(0, Math.min(value.length(), 1 + q % 4));
+        }
+
+        double indexUs = 0;
+        double heapUs = 0;
+        double updateUs = 0;
+        for (int round = 0; round < 3; round++) { // The first rounds warm up the JIT
+            long indexNanos = 0;
+            long heapNanos = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                long start = System.nanoTime();
+                List<String> fromIndex = index.suggest(prefixes[q], LIMIT);
+                indexNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                List<String> fromHeap = heapOverRange(sorted, counts, prefixes[q]);
+                heapNanos += System.nanoTime() - start;
+                assertEquals(prefixes[q], fromHeap, fromIndex);
+            }
+            // Tag one photo more and one less with a random value, as when retagging
+            long start = System.nanoTime();
+            for (int q = 0; q < QUERIES; q++) {
+                String value = sorted.get(random.nextInt(sorted.size()));
+                index.add(value, value);
+                index.remove(value);
+            }
+            updateUs = (System.nanoTime() - start) / 1e3 / (2 * QUERIES);
+            indexUs = indexNanos / 1e3 / QUERIES;
+            heapUs = heapNanos / 1e3 / QUERIES;
+        }
+        Log.i(TAG, String.format("SuggestionIndex %,d values, %,d tags: build %.1f ms, update %.2f us/tag, "
+                        + "index %.2f us/prefix, heap over range %.1f us/prefix",
+                valueCount, tags.size(), buildNanos / 1e6, updateUs, indexUs, heapUs));
+    }
+
+    @Test
+    public void benchmark_10kValues() {
+        benchmark(10_000);
+    }
+
+    @Test
+    public void benchmark_200kValues() {
+        benchmark(200_000);
+    }
+}
@@ -0,0 +1,106 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of {@link TrigramIndex} against the scan {@code SearchActivity} used to
+ * describe, which checks every lowercase tag value with {@code contains}. The run logs the memory of
+ * the index and the average time per query for libraries with over 100,000 distinct values.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TrigramIndexBenchmarkTest {
+    private static final String TAG = "TrigramIndexBenchmark";
+    private static final int QUERIES = 200;
+    private static final String[] WORDS = {"north", "south", "river", "park", "lake", "hill", "street",
+            "harbor", "bridge", "market", "garden", "station", "beach", "forest", "valley", "tower"};
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void benchmark(int valueCount) {
+        Random random = new Random(valueCount);
+        Set<String> distinct = new LinkedHashSet<>();
+        while (distinct.size() < valueCount) {
+            // Place names and people like "harbor street 4821" or "ana 93177"
+            String value = random.nextBoolean()
+                    ? WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(10_000)
+                    : Integer.toString(random.nextInt(1 << 30), 36) + " " + random.nextInt(100_000);
+            distinct.add(value);
+        }
+        List<String> values = new ArrayList<>(distinct);
+        String[] queries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            String value = values.get(random.nextInt(valueCount));
+            int length = 3 + q % 4;
+            int start = random.nextInt(value.length() - length + 1);
+            queries[q] = value.substring(start, start + length);
+        }
+
+        long before = usedMemory();
+        long buildStart = System.nanoTime();
+        TrigramIndex index = new TrigramIndex();
+        for (String value : values) {
+            index.add(value);
+        }
+        long buildNanos = System.nanoTime() - buildStart;
+        long indexBytes = usedMemory() - before;
+
+        long indexNanos = 0;
+        long scanNanos = 0;
+        long matched = 0;
+        for (int round = 0; round < 3; round++) { // The first rounds warm up the JIT
+            indexNanos = 0;
+            scanNanos = 0;
+            matched = 0;
+            for (String query : queries) {
+                long start = System.nanoTime();
+                List<String> fromIndex = index.find(query);
+                indexNanos += System.nanoTime() - start;
+
+                List<String> fromScan = new ArrayList<>();
+                start = System.nanoTime();
+                for (String value : values) {
+                    if (value.contains(query)) {
+                        fromScan.add(value);
+                    }
+                }
+                scanNanos += System.nanoTime() - start;
+
+                assertEquals(query, fromScan.size(), fromIndex.size());
+                matched += fromIndex.size();
+            }
+        }
+        Log.i(TAG, String.format("TrigramIndex %,d values: %,d trigrams, %.1f MB, build %.1f ms, "
+                        + "index %.1f us/query, scan %.1f us/query, %d matches/query",
+                valueCount, index.gramCount(), indexBytes / 1e6, buildNanos / 1e6,
+                indexNanos / 1e3 / QUERIES, scanNanos / 1e3 / QUERIES, matched / QUERIES));
+    }
+
+    @Test
+    public void benchmark_100kValues() {
+        benchmark(100_000);
+    }
+
+    @Test
+    public void benchmark_300kValues() {
+        benchmark(300_000);
+    }
+}
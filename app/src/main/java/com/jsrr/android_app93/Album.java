@@ -1,6 +1,11 @@
 package com.jsrr.android_app93;
 
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 /**
@@ -9,6 +14,9 @@ import java.util.Set;
  * the earliest and latest dates of the photos in the album.
  *
  * <p>This class implements {@link Serializable} to allow serialization of album objects.
+ * Albums read from the binary store keep their photos encoded until they are first used,
+ * so listing albums does not require decoding any photos. An album whose photos cannot be decoded
+ * keeps them encoded and becomes read-only, so saving never replaces the stored photos with nothing.
  *
  * <p>Features of the {@code Album} class include:
  * <ul>
@@ -25,6 +33,10 @@ public class Album implements Serializable {
 
     private String name;
     private Set<Photo> photos = new HashSet<>();
+    private transient boolean attached = false;
+    private transient StoreCodec.AlbumBody pendingBody;
+    private transient int pendingPhotoCount;
+    private transient IOException loadError;
 
     /**
      * Constructs an {@code Album} with the specified name.
@@ -46,6 +58,20 @@ public class Album implements Serializable {
         this.photos = photos;
     }
 
+    /**
+     * Constructs an {@code Album} whose photos are decoded from the store on first use.
+     *
+     * @param name       the name of the album
+     * @param photoCount the number of photos in the encoded body
+     * @param body       the encoded photos
+     */
+    Album(String name, int photoCount, StoreCodec.AlbumBody body) {
+        this.name = name;
+        this.photos = null;
+        this.pendingPhotoCount = photoCount;
+        this.pendingBody = body;
+    }
+
     /**
      * Retrieves the name of the album.
      *
@@ -61,7 +87,16 @@ public class Album implements Serializable {
      * @param name the new name of the album
      */
     public void setName(String name) {
+        String oldName = this.name;
+        if (attached) {
+            // The hash code depends on the name, so re-insert the album into the library set
+            Data.getAlbums().remove(this);
+        }
         this.name = name;
+        if (attached) {
+            Data.getAlbums().add(this);
+            Data.notifyAlbumRenamed(this, oldName);
+        }
     }
 
     /**
@@ -70,7 +105,64 @@ public class Album implements Serializable {
      * @return the set of photos in the album
      */
     public Set<Photo> getPhotos() {
-        return photos;
+        return loadedPhotos();
+    }
+
+    /**
+     * Decodes the photos of this album if they are still encoded. If they cannot be decoded, the
+     * encoded photos are kept and the album shows no photos.
+     *
+     * @return the set of photos in the album, read-only if they could not be decoded
+     */
+    private synchronized Set<Photo> loadedPhotos() {
+        if (pendingBody != null && loadError == null) {
+            try {
+                photos = pendingBody.decode();
+                pendingBody = null;
+                for (Photo photo : photos) {
+                    photo.setAlbum(this);
+                }
+            } catch (IOException e) {
+                Log.e("Album", "Could not decode album " + name + ": " + e.getMessage(), e);
+                loadError = e;
+            }
+        }
+        return loadError != null ? Collections.emptySet() : photos;
+    }
+
+    /**
+     * Decodes the photos of this album if needed and returns the error that kept them from being read.
+     * Such an album cannot be changed until the app is restarted.
+     *
+     * @return the error, or null if the photos of the album are readable
+     */
+    public IOException getLoadError() {
+        loadedPhotos();
+        return loadError;
+    }
+
+    /**
+     * Checks that the photos of this album may be changed.
+     *
+     * @return the set of photos in the album
+     * @throws IllegalStateException if the photos of the album could not be read
+     */
+    private Set<Photo> modifiablePhotos() {
+        Set<Photo> loaded = loadedPhotos();
+        if (loadError != null) {
+            throw new IllegalStateException("Album " + name + " could not be read", loadError);
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the encoded photos if the album has not been decoded yet, so they
+     * can be written to a new store unchanged.
+     *
+     * @return the encoded body, or null if the photos are decoded
+     */
+    synchronized StoreCodec.AlbumBody getPendingBody() {
+        return pendingBody;
     }
 
     /**
@@ -88,28 +180,98 @@ public class Album implements Serializable {
      *
      * @return the total number of photos in the album
      */
-    public int getPhotoCount() {
-        return photos.size();
+    public synchronized int getPhotoCount() {
+        return pendingBody != null ? pendingPhotoCount : photos.size();
     }
 
     /**
      * Adds a photo to the album.
      *
      * @param photo the photo to be added to the album
+     * @throws IllegalStateException if the photos of the album could not be read
      */
     public void addPhoto(Photo photo) {
-        photos.add(photo);
+        if (modifiablePhotos().add(photo)) {
+            photo.setAlbum(this);
+            if (attached) {
+                Data.notifyPhotoAdded(this, photo);
+            }
+        }
     }
 
     /**
      * Removes a photo from the album.
      *
      * @param photo the photo to be removed from the album
+     * @throws IllegalStateException if the photos of the album could not be read
      */
     public void removePhoto(Photo photo) {
-        photos.remove(photo);
+        if (modifiablePhotos().remove(photo)) {
+            if (photo.getAlbum() == this) {
+                photo.setAlbum(null);
+            }
+            if (attached) {
+                Data.notifyPhotoRemoved(this, photo);
+            }
+        }
+    }
+
+    /**
+     * Marks this album as part of the library so its changes are reported to listeners.
+     */
+    synchronized void attach() {
+        attached = true;
+        if (pendingBody == null) {
+            for (Photo photo : photos) {
+                photo.setAlbum(this);
+            }
+        }
     }
 
+    /**
+     * Marks this album as no longer part of the library.
+     */
+    void detach() {
+        attached = false;
+    }
+
+    /**
+     * Checks whether this album is part of the library held by {@link Data}.
+     *
+     * @return true if the album is in the library, false otherwise
+     */
+    boolean isAttached() {
+        return attached;
+    }
+
+
+    /**
+     * Creates a copy of this album whose photos are copied as well,
+     * so the copy can be saved while the original keeps changing.
+     *
+     * @return a copy of the album
+     */
+    synchronized Album copy() {
+        if (pendingBody != null) {
+            // The encoded body is immutable, so the copy can share it
+            return new Album(name, pendingPhotoCount, pendingBody);
+        }
+        Set<Photo> photoCopies = new HashSet<>();
+        for (Photo photo : photos) {
+            photoCopies.add(photo.copy());
+        }
+        return new Album(name, photoCopies);
+    }
+
+    /**
+     * Decodes any pending photos before the album is serialized.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (getLoadError() != null) {
+            throw new IOException("Album " + name + " could not be read", loadError);
+        }
+        out.defaultWriteObject();
+    }
 
     /**
      * Checks if two albums are equal based on their names.
@@ -0,0 +1,146 @@
+package com.jsrr.android_app93;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * The {@code BitmapCache} class keeps the images decoded by {@link Photo} for the whole app, so
+ * scrolling back to a photo does not decode it again. Images are keyed by the path of the photo and
+ * the size they were decoded at, and the least recently used ones are dropped once their pixels
+ * take more than a budget of bytes. The budget is an eighth of the memory class of the device.
+ *
+ * <p>Evicted bitmaps are not recycled, as a view may still show them; they are freed once no view
+ * uses them. An image larger than a quarter of the budget, such as a full-resolution photo, is not
+ * kept at all, since it would push every thumbnail out.
+ *
+ * <p>Images are decoded on the threads of the {@link ImageLoader}, and {@link LruCache} is
+ * synchronized, so the cache can be used from any thread.
+ *
+ * <p>Features of the {@code BitmapCache} class include:
+ * <ul>
+ *   <li>Sharing decoded images across activities</li>
+ *   <li>Bounding the bytes held by the images</li>
+ *   <li>Counting hits, misses and evictions</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class BitmapCache {
+    /**
+     * The size requested for an image decoded at its full resolution.
+     */
+    public static final int FULL_SIZE = 0;
+
+    private static final String TAG = "BitmapCache";
+    private static BitmapCache instance = null;
+
+    private final LruCache<String, Bitmap> cache;
+
+    /**
+     * Constructs a {@code BitmapCache} with the given budget.
+     *
+     * @param maxBytes the largest number of bytes the cached images may take
+     */
+    BitmapCache(int maxBytes) {
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by the whole app, creating it with a budget for this device.
+     *
+     * @param context any context of the app
+     * @return the shared cache
+     */
+    public static synchronized BitmapCache getInstance(Context context) {
+        if (instance == null) {
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            int memoryClassMb = activityManager != null ? activityManager.getMemoryClass() : 32;
+            instance = new BitmapCache(memoryClassMb * 1024 * 1024 / 8);
+            Log.d(TAG, "Bitmap cache budget " + memoryClassMb / 8 + " MB");
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the image of a photo decoded at a size, if it is still kept.
+     *
+     * @param photo the photo
+     * @param size  the size the image was decoded at, or {@link #FULL_SIZE}
+     * @return the image, or null if it must be decoded
+     */
+    public Bitmap get(Photo photo, int size) {
+        Bitmap bitmap = cache.get(key(photo, size));
+        return bitmap == null || bitmap.isRecycled() ? null : bitmap;
+    }
+
+    /**
+     * Keeps the image of a photo decoded at a size, unless it is too large for the budget.
+     *
+     * @param photo  the photo
+     * @param size   the size the image was decoded at, or {@link #FULL_SIZE}
+     * @param bitmap the decoded image
+     */
+    public void put(Photo photo, int size, Bitmap bitmap) {
+        if (bitmap.getAllocationByteCount() <= cache.maxSize() / 4) {
+            cache.put(key(photo, size), bitmap);
+        }
+    }
+
+    private static String key(Photo photo, int size) {
+        return size + ":" + photo.getPathName();
+    }
+
+    /**
+     * Returns the number of bytes taken by the images kept.
+     *
+     * @return the size of the cache in bytes
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the largest number of bytes the images kept may take.
+     *
+     * @return the budget in bytes
+     */
+    public int getMaxSize() {
+        return cache.maxSize();
+    }
+
+    /**
+     * Returns the number of lookups that found their image.
+     *
+     * @return the number of hits
+     */
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * Returns the number of lookups that did not find their image.
+     *
+     * @return the number of misses
+     */
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * Returns the number of images dropped to stay within the budget.
+     *
+     * @return the number of evictions
+     */
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+}
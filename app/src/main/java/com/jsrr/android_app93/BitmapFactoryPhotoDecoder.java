@@ -0,0 +1,188 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * The {@code BitmapFactoryPhotoDecoder} class decodes photos with {@link BitmapFactory}. It is the
+ * fallback of the {@link ImageDecoderPhotoDecoder} for images the platform decoder rejects.
+ * A thumbnail is decoded in two passes: the bounds are read first, then the image is decoded
+ * subsampled by a power of two close to the thumbnail size, and the middle square is scaled to the
+ * exact size.
+ *
+ * <p>Features of the {@code BitmapFactoryPhotoDecoder} class include:
+ * <ul>
+ *   <li>Decoding resources, drawables, files and content URIs</li>
+ *   <li>Subsampling large images while they are decoded</li>
+ *   <li>Center-cropping images to a square</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class BitmapFactoryPhotoDecoder implements PhotoDecoder {
+    private static final String TAG = "BitmapFactoryDecoder";
+
+    @Override
+    public Bitmap decode(Context context, String pathName, int size) {
+        return size == BitmapCache.FULL_SIZE
+                ? decode(context, pathName, new BitmapFactory.Options())
+                : decodeThumbnail(context, pathName, size);
+    }
+
+    /**
+     * Decodes the image a path names with the given options, trying each kind of path in turn.
+     * When the options only ask for the bounds, the bitmap is null and the size is set in the options.
+     *
+     * @param context  the Android context
+     * @param pathName the path of the photo
+     * @param options  the decoding options
+     * @return the bitmap, or null if it cannot be loaded or only the bounds were asked for
+     */
+    private static Bitmap decode(Context context, String pathName, BitmapFactory.Options options) {
+        Bitmap image;
+        Log.d(TAG, "Loading image from path: " + pathName);
+
+        try {
+            // Try first as a resource ID
+            try {
+                int resourceId = Integer.parseInt(pathName);
+                image = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+                if (isDecoded(image, options)) {
+                    Log.d(TAG, "Successfully loaded image from resource ID: " + resourceId);
+                    return image;
+                } else {
+                    Log.e(TAG, "Failed to decode resource with ID: " + resourceId);
+                }
+            } catch (NumberFormatException nfe) {
+                // Not a resource ID, continue to next method
+                Log.d(TAG, "Not a resource ID, trying other methods");
+            }
+
+            // Try to load from drawable directory
+            if (pathName.startsWith("/drawable/")) {
+                String resourceName = pathName.substring("/drawable/".length());
+                int resourceId = context.getResources().getIdentifier(
+                        resourceName, "drawable", context.getPackageName());
+                if (resourceId != 0) {
+                    image = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+                    if (isDecoded(image, options)) {
+                        Log.d(TAG, "Successfully loaded image from drawable: " + resourceName);
+                        return image;
+                    }
+                } else {
+                    Log.e(TAG, "Resource not found: " + resourceName);
+                }
+            }
+
+            // Try as direct file path from storage
+            File imageFile = new File(pathName);
+            if (imageFile.exists() && imageFile.canRead()) {
+                image = BitmapFactory.decodeFile(pathName, options);
+                if (isDecoded(image, options)) {
+                    Log.d(TAG, "Successfully loaded image from file path");
+                    return image;
+                } else {
+                    Log.e(TAG, "Failed to decode file from path: " + pathName);
+                }
+            } else {
+                Log.d(TAG, "File does not exist or cannot be read: " + pathName);
+            }
+
+            // Try as URI
+            try (InputStream in = context.getContentResolver().openInputStream(Uri.parse(pathName))) {
+                image = BitmapFactory.decodeStream(in, null, options);
+                if (isDecoded(image, options)) {
+                    Log.d(TAG, "Successfully loaded image from URI");
+                    return image;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading image from URI: " + e.getMessage());
+            }
+
+            // If all else fails, set a placeholder
+            Log.e(TAG, "Could not load image from any method. Using placeholder.");
+            image = null;
+        } catch (Exception e) {
+            Log.e(TAG, "General error loading image: " + e.getMessage(), e);
+            image = null;
+        }
+        return image;
+    }
+
+    private static boolean isDecoded(Bitmap image, BitmapFactory.Options options) {
+        return image != null || (options.inJustDecodeBounds && options.outWidth > 0 && options.outHeight > 0);
+    }
+
+    /**
+     * Decodes an image close to the thumbnail size and crops it to a square. The bounds are read
+     * first, so the image is subsampled while it is decoded and the full-sized bitmap never exists.
+     */
+    private static Bitmap decodeThumbnail(Context context, String pathName, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(context, pathName, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, size);
+        options.inJustDecodeBounds = false;
+        Bitmap sampled = decode(context, pathName, options);
+        if (sampled == null) {
+            return null;
+        }
+        Bitmap thumbnail = centerCrop(sampled, size);
+        if (thumbnail != sampled) {
+            sampled.recycle();
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Computes the largest power of two an image can be subsampled by while its shorter side
+     * stays at least the target size.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param target the smallest size of the shorter side after subsampling
+     * @return the sample size, at least 1
+     */
+    static int sampleSize(int width, int height, int target) {
+        int shorter = Math.min(width, height);
+        int sampleSize = 1;
+        while (shorter / (sampleSize * 2) >= target) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Scales an image so its shorter side is the given size and crops the middle square out of it,
+     * keeping the aspect ratio of what is shown.
+     *
+     * @param image the image, which is left as it is
+     * @param size  the side of the square
+     * @return the square image, which is the given image if it already has that size
+     */
+    static Bitmap centerCrop(Bitmap image, int size) {
+        int side = Math.min(image.getWidth(), image.getHeight());
+        if (side == size && image.getWidth() == image.getHeight()) {
+            return image;
+        }
+        Matrix matrix = new Matrix();
+        float scale = (float) size / side;
+        matrix.setScale(scale, scale);
+        Bitmap square = Bitmap.createBitmap(image, (image.getWidth() - side) / 2, (image.getHeight() - side) / 2,
+                side, side, matrix, true);
+        // Rounding may leave the scaled square a pixel off
+        return square.getWidth() == size && square.getHeight() == size
+                ? square : Bitmap.createScaledBitmap(square, size, size, true);
+    }
+}
@@ -0,0 +1,86 @@
+package com.jsrr.android_app93;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code CaptionTokenizer} class splits captions into the words they are searched by. Words are
+ * runs of letters and digits, folded to lowercase without diacritics, so "Cafe" with or without an
+ * accent is the same word. Every caption index and every check of a single photo uses these words,
+ * so they always agree on what a caption search matches.
+ *
+ * <p>Features of the {@code CaptionTokenizer} class include:
+ * <ul>
+ *   <li>Folding text to lowercase without diacritics</li>
+ *   <li>Splitting a caption into its distinct words</li>
+ *   <li>Checking whether a caption has a word starting with a prefix</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class CaptionTokenizer {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private CaptionTokenizer() {}
+
+    /**
+     * Folds text to lowercase and removes its diacritics.
+     *
+     * @param text the text to fold
+     * @return the folded text
+     */
+    public static String fold(String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (!ascii) {
+            // Decompose so each diacritic becomes a separate mark that can be dropped
+            text = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        }
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits a caption into its distinct folded words, in the order they first appear.
+     *
+     * @param caption the caption, which may be null
+     * @return a new set of the words
+     */
+    public static Set<String> words(String caption) {
+        Set<String> words = new LinkedHashSet<>();
+        if (caption == null) {
+            return words;
+        }
+        for (String word : SEPARATORS.split(fold(caption))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Checks whether a caption has a word starting with a prefix.
+     *
+     * @param caption the caption, which may be null
+     * @param prefix  the folded beginning of a word, which matches nothing if empty
+     * @return true if a word of the caption starts with the prefix, false otherwise
+     */
+    public static boolean hasWord(String caption, String prefix) {
+        if (prefix.isEmpty()) {
+            return false;
+        }
+        for (String word : words(caption)) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
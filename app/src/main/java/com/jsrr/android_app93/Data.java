@@ -1,19 +1,48 @@
 package com.jsrr.android_app93;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.io.*;
 import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
  * The {@code Data} class holds static fields and methods used by the whole app.
- * It provides functionality to set the current Album and Photo, as well as to save and load data with Serialization.
+ * It provides functionality to set the current Album and Photo, as well as to save and load data in the
+ * binary format of {@link StoreCodec}.
+ * Saving is handed off to {@link DataWriter} so that the UI thread never writes to disk.
+ * When {@code use_sqlite_store} is set, the library is kept in a {@link SqlitePhotoRepository} instead.
+ *
+ * <p>The library belongs to the main thread: the set of albums, and the albums and photos in it, are
+ * only read and changed there, and the methods of this class throw {@link IllegalStateException}
+ * when called on another thread. Background threads work on copies taken on the main thread, such
+ * as the saves of {@link DataWriter}, or on indexes that listeners update on the main thread.
  *
  * <p>Features of the {@code Data} class include:
  * <ul>
  *   <li>Accessing and setting the current fields</li>
- *   <li>Saving and loading data with serialization</li>
+ *   <li>Saving and loading data, migrating stores written with serialization</li>
+ *   <li>Loading data in the background behind a load barrier</li>
+ *   <li>Notifying {@link LibraryListener}s of changes to the library</li>
+ *   <li>Versioning the library so unchanged data is never saved</li>
+ *   <li>Counting the changes that affect search results</li>
+ *   <li>Providing the {@link PhotoRepository} used to search the library</li>
+ *   <li>Providing the {@link TagSuggester} used to suggest tag values</li>
  * </ul>
  *
  * @author [Joseph Scarpulla and Roger Ramirez]
@@ -26,8 +55,25 @@ public class Data {
     private static Album currentAlbum = null;
     private static Photo currentPhoto = null;
     private static Set<Album> albums = new HashSet<>();
+    private static final List<LibraryListener> listeners = new ArrayList<>();
+    private static volatile boolean loaded = false;
+    private static Future<LoadResult> pendingLoad = null;
+    private static final List<Runnable> loadCallbacks = new ArrayList<>();
+    private static long loadStartMs = 0;
+    private static long loadTimeMs = -1;
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DataLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static long version = 0;
+    private static long searchGeneration = 0;
+    private static PhotoRepository repository = null;
+    private static SqlitePhotoRepository database = null;
+    private static TagSuggester suggester = null;
 
-    public static final String storeFile = "albums.ser";
+    public static final String storeFile = "albums.dat";
+    public static final String legacyStoreFile = "albums.ser";
 
     /**
      * Returns the current album of the system.
@@ -72,7 +118,7 @@ public class Data {
      * @return the album with the specified name, or null if not found
      */
     public static Album getAlbum(String name) {
-        for (Album album : albums) {
+        for (Album album : getAlbums()) {
             if (album.getName().equals(name)) {
                 return album;
             }
@@ -86,7 +132,15 @@ public class Data {
      * @param album the album to add
      */
     public static void addAlbum(Album album) {
-        albums.add(album);
+        checkMainThread();
+        if (albums.add(album)) {
+            version++;
+            searchGeneration++;
+            album.attach();
+            for (LibraryListener listener : listeners) {
+                listener.onAlbumAdded(album);
+            }
+        }
     }
 
     /**
@@ -95,58 +149,476 @@ public class Data {
      * @param album the album to remove
      */
     public static void removeAlbum(Album album) {
-        albums.remove(album);
+        checkMainThread();
+        if (albums.remove(album)) {
+            version++;
+            searchGeneration++;
+            album.detach();
+            for (LibraryListener listener : listeners) {
+                listener.onAlbumRemoved(album);
+            }
+        }
     }
 
     /**
-     * Returns the set of albums in the system.
+     * Returns the set of albums in the system. While a load is in progress, this is the load barrier:
+     * it blocks the main thread until the loader thread has read the stores, then installs the albums
+     * and runs the callbacks of {@link #loadDataAsync} before returning.
      *
-     * @return the set of albums
+     * @return the set of albums, to be used on the main thread only
+     * @throws IllegalStateException if called on another thread
      */
     public static Set<Album> getAlbums() {
+        checkMainThread();
+        if (!loaded && pendingLoad != null) {
+            installPendingLoad();
+        }
         return albums;
     }
 
     /**
-     * Saves the data to a file using serialization.
+     * Returns the version of the library, which changes whenever an album, photo, tag or caption changes.
+     *
+     * @return the current library version
+     */
+    public static long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the search generation of the library, which changes whenever the results of a search
+     * may change: when an album, photo or tag is added or removed, or a caption changes. Renaming an
+     * album leaves it alone, so cached search results survive that.
+     *
+     * @return the current search generation
+     */
+    public static long getSearchGeneration() {
+        return searchGeneration;
+    }
+
+    /**
+     * Returns the repository used to search the photos of the library. Like {@link #getAlbums},
+     * this waits for a load in progress.
+     *
+     * @return the photo repository
+     */
+    public static PhotoRepository getRepository() {
+        checkMainThread();
+        if (!loaded && pendingLoad != null) {
+            installPendingLoad();
+        }
+        return repository;
+    }
+
+    /**
+     * Returns the suggester of tag values for the library. Like {@link #getAlbums}, this waits for a
+     * load in progress.
+     *
+     * @return the tag suggester
+     */
+    public static TagSuggester getSuggester() {
+        checkMainThread();
+        if (!loaded && pendingLoad != null) {
+            installPendingLoad();
+        }
+        return suggester;
+    }
+
+    /**
+     * Registers a listener to be notified of every change to the library.
+     *
+     * @param listener the listener to add
+     */
+    public static void addListener(LibraryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a previously added listener.
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeListener(LibraryListener listener) {
+        listeners.remove(listener);
+    }
+
+    static void notifyAlbumRenamed(Album album, String oldName) {
+        checkMainThread();
+        version++;
+        for (LibraryListener listener : listeners) {
+            listener.onAlbumRenamed(album, oldName);
+        }
+    }
+
+    static void notifyPhotoAdded(Album album, Photo photo) {
+        checkMainThread();
+        version++;
+        searchGeneration++;
+        for (LibraryListener listener : listeners) {
+            listener.onPhotoAdded(album, photo);
+        }
+    }
+
+    static void notifyPhotoRemoved(Album album, Photo photo) {
+        checkMainThread();
+        version++;
+        searchGeneration++;
+        for (LibraryListener listener : listeners) {
+            listener.onPhotoRemoved(album, photo);
+        }
+    }
+
+    static void notifyTagAdded(Album album, Photo photo, Tag tag) {
+        checkMainThread();
+        version++;
+        searchGeneration++;
+        for (LibraryListener listener : listeners) {
+            listener.onTagAdded(album, photo, tag);
+        }
+    }
+
+    static void notifyTagRemoved(Album album, Photo photo, Tag tag) {
+        checkMainThread();
+        version++;
+        searchGeneration++;
+        for (LibraryListener listener : listeners) {
+            listener.onTagRemoved(album, photo, tag);
+        }
+    }
+
+    static void notifyCaptionChanged(Album album, Photo photo, String oldCaption) {
+        checkMainThread();
+        version++;
+        searchGeneration++;
+        for (LibraryListener listener : listeners) {
+            listener.onCaptionChanged(album, photo, oldCaption);
+        }
+    }
+
+    /**
+     * Saves the data in the background. Bursts of calls are coalesced into one write,
+     * which normally appends the recorded changes to the journal.
      *
      * @param context the application context
      */
     public static void saveData(Context context) {
-        try {
-            FileOutputStream fileOut = context.openFileOutput(storeFile, Context.MODE_PRIVATE);
-            ObjectOutputStream oos = new ObjectOutputStream(fileOut);
-            oos.writeObject(albums);
-            oos.close();
-            fileOut.close();
-            Log.d(TAG, "Data saved successfully");
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving data: " + e.getMessage(), e);
+        if (database != null) {
+            return; // Every change is already queued as its own transaction
+        }
+        DataWriter.getInstance(context).requestSave();
+    }
+
+    /**
+     * Starts any pending save immediately. Used at lifecycle edges such as {@code onPause}.
+     *
+     * @param context the application context
+     */
+    public static void flushData(Context context) {
+        if (database != null) {
+            database.flush();
+            return;
+        }
+        DataWriter.getInstance(context).flush();
+    }
+
+    /**
+     * Deletes the single-file stores written by earlier versions of the app,
+     * once their albums have been written to shards.
+     *
+     * @param context the application context
+     */
+    static void deleteLegacyStores(Context context) {
+        for (String name : new String[]{storeFile, legacyStoreFile}) {
+            File file = new File(context.getFilesDir(), name);
+            if (file.exists() && file.delete()) {
+                Log.d(TAG, "Removed " + name + " after migration");
+            }
+        }
+    }
+
+    /**
+     * Starts loading the data on a background thread and returns right away.
+     * The callback runs on the main thread once the albums are in place, or immediately if they
+     * already are. Used by {@link MainActivity} so its first frame never waits for the disk.
+     *
+     * @param context  the application context
+     * @param onLoaded the callback to run once the data is loaded
+     */
+    public static void loadDataAsync(Context context, Runnable onLoaded) {
+        checkMainThread();
+        if (loaded) {
+            onLoaded.run();
+            return;
+        }
+        loadCallbacks.add(onLoaded);
+        if (pendingLoad == null) {
+            Executor mainExecutor = context.getMainExecutor();
+            startLoad(context);
+            // The loader has a single thread, so this runs once the load has finished
+            loader.execute(() -> mainExecutor.execute(Data::installPendingLoad));
         }
     }
 
     /**
-     * Loads the data from a file using deserialization.
+     * Loads the data, waiting for a load already started by {@link #loadDataAsync}.
+     * This is the load barrier for activities that read the albums: an activity that is restored
+     * directly after the process was killed starts the load here.
+     * The manifest of the shard store is read, then the album shards are decoded in parallel and
+     * indexed for searches, all on the loader thread.
+     * If only a single-file store from an earlier version exists, it is read instead
+     * and converted to shards on the next save.
+     * When {@code use_sqlite_store} is set, the data is read from the database instead.
+     * The data is only read once per process; afterwards the albums in memory are authoritative.
      *
      * @param context the application context
      */
     public static void loadData(Context context) {
+        checkMainThread();
+        if (loaded) {
+            return;
+        }
+        startLoad(context);
+        installPendingLoad();
+    }
+
+    /**
+     * Checks whether the data has been loaded, so reading the albums will not wait.
+     *
+     * @return true if the albums are loaded, false otherwise
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns the time taken to load the data, from the start of the load until the albums were usable.
+     *
+     * @return the load time in milliseconds, or -1 if the data is not loaded yet
+     */
+    public static long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+
+    /**
+     * Enforces that the library is only used on the main thread.
+     *
+     * @throws IllegalStateException if called on another thread
+     */
+    private static void checkMainThread() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("The library must be used on the main thread, not on "
+                    + Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Hands the reading of the stores to the loader thread, unless it was already started.
+     * Objects that register listeners are created here, on the main thread.
+     */
+    private static Future<LoadResult> startLoad(Context context) {
+        if (pendingLoad == null) {
+            Context appContext = context.getApplicationContext();
+            loadStartMs = SystemClock.elapsedRealtime();
+            if (appContext.getResources().getBoolean(R.bool.use_sqlite_store)) {
+                SqlitePhotoRepository db = SqlitePhotoRepository.getInstance(appContext);
+                pendingLoad = loader.submit(() -> readDatabase(appContext, db));
+            } else {
+                DataWriter writer = DataWriter.getInstance(appContext);
+                pendingLoad = loader.submit(() -> readFiles(appContext, writer));
+            }
+        }
+        return pendingLoad;
+    }
+
+    /**
+     * Waits for the loader thread and puts its albums in place. Runs on the main thread, either as
+     * the callback of {@link #loadDataAsync} or from the load barrier, whichever comes first.
+     */
+    private static void installPendingLoad() {
+        if (loaded) {
+            return;
+        }
+        LoadResult result;
         try {
-            FileInputStream fileIn = context.openFileInput(storeFile);
-            ObjectInputStream ois = new ObjectInputStream(fileIn);
-            Object obj = ois.readObject();
-            if (obj instanceof Set<?>) {
-                albums = (Set<Album>) obj;
-                Log.d(TAG, "Data loaded successfully. Albums: " + albums.size());
+            result = pendingLoad.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error loading data: " + e.getCause(), e.getCause());
+            result = new LoadResult(new HashSet<>(), false, null, null, null, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = new LoadResult(new HashSet<>(), false, null, null, null, null);
+        }
+        albums = result.albums;
+        for (Album album : albums) {
+            album.attach();
+        }
+        if (result.database != null) {
+            database = result.database;
+            repository = result.database;
+            addListener(result.database);
+        } else {
+            MemoryPhotoRepository memory = result.memory != null ? result.memory : new MemoryPhotoRepository(albums);
+            repository = memory;
+            addListener(memory);
+        }
+        suggester = result.suggester != null ? result.suggester : new TagSuggester(albums);
+        addListener(suggester);
+        loaded = true;
+        loadTimeMs = SystemClock.elapsedRealtime() - loadStartMs;
+        Log.d(TAG, "Data loaded successfully in " + loadTimeMs + " ms. Albums: " + albums.size());
+        if (result.migrating) {
+            DataWriter writer = DataWriter.getInstance(result.context);
+            writer.getJournal().requestCompaction();
+            writer.requestSave();
+        }
+        List<Runnable> callbacks = new ArrayList<>(loadCallbacks);
+        loadCallbacks.clear();
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Reads the shard store, or a single-file store from an earlier version, and indexes it for
+     * searches and tag suggestions. Runs on the loader thread, which is the only thread using the
+     * albums until they are installed, so the indexes are built from albums that cannot change under it.
+     */
+    private static LoadResult readFiles(Context context, DataWriter writer)
+            throws ExecutionException, InterruptedException {
+        ShardStore shards = writer.getShardStore();
+        boolean migrating = !shards.exists() && (new File(context.getFilesDir(), storeFile).exists()
+                || new File(context.getFilesDir(), legacyStoreFile).exists());
+        Set<Album> stored = readFileStores(context, shards, writer.getJournal());
+        // Decode the shards in parallel rather than one by one while indexing
+        for (Future<?> decoded : ShardStore.preload(stored)) {
+            decoded.get();
+        }
+        return new LoadResult(stored, migrating, null, new MemoryPhotoRepository(stored),
+                new TagSuggester(stored), context);
+    }
+
+    /**
+     * Reads the SQLite database. If the database is still empty, the albums kept in files by
+     * earlier versions of the app are imported into it, and the tag suggestions are built from the
+     * albums. Runs on the loader thread.
+     */
+    private static LoadResult readDatabase(Context context, SqlitePhotoRepository db) {
+        long start = SystemClock.elapsedRealtime();
+        Set<Album> stored = db.loadAlbums();
+        Log.d(TAG, "Read " + stored.size() + " albums from the database in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        if (stored.isEmpty()) {
+            stored = readFileStores(context, new ShardStore(context.getFilesDir()), new DataJournal());
+            if (!stored.isEmpty()) {
+                Log.d(TAG, "Importing " + stored.size() + " albums into the database");
+                db.importAlbums(stored);
+            }
+        }
+        return new LoadResult(stored, false, db, null, new TagSuggester(stored), context);
+    }
+
+    /**
+     * The albums read by the loader thread, before they are attached to the library.
+     */
+    private static class LoadResult {
+        final Set<Album> albums;
+        final boolean migrating;
+        final SqlitePhotoRepository database;
+        final MemoryPhotoRepository memory;
+        final TagSuggester suggester;
+        final Context context;
+
+        LoadResult(Set<Album> albums, boolean migrating, SqlitePhotoRepository database,
+                   MemoryPhotoRepository memory, TagSuggester suggester, Context context) {
+            this.albums = albums;
+            this.migrating = migrating;
+            this.database = database;
+            this.memory = memory;
+            this.suggester = suggester;
+            this.context = context;
+        }
+    }
+
+    /**
+     * Reads the albums kept in files: the shard store, or else a single-file store written by an
+     * earlier version of the app, with the journal replayed over it.
+     *
+     * @param context the application context
+     * @param shards  the shard store to read
+     * @param journal the journal to replay
+     * @return the albums, not yet attached to the library
+     */
+    private static Set<Album> readFileStores(Context context, ShardStore shards, DataJournal journal) {
+        Set<Album> snapshot = new HashSet<>();
+        long sequence = 0;
+        File storeTarget = new File(context.getFilesDir(), storeFile);
+        File legacyFile = new File(context.getFilesDir(), legacyStoreFile);
+        long start = SystemClock.elapsedRealtime();
+        try {
+            if (shards.exists()) {
+                StoreCodec.Snapshot stored = shards.load();
+                snapshot = stored.albums;
+                sequence = stored.sequence;
+                Log.d(TAG, "Read album manifest in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            } else if (storeTarget.exists()) {
+                StoreCodec.Snapshot stored = StoreCodec.decode(mapFile(storeTarget));
+                snapshot = stored.albums;
+                sequence = stored.sequence;
+                Log.d(TAG, "Migrating single-file store with " + snapshot.size() + " albums");
+            } else if (legacyFile.exists()) {
+                sequence = readLegacyStore(legacyFile, snapshot);
+                Log.d(TAG, "Migrating legacy store with " + snapshot.size() + " albums");
+            } else {
+                Log.d(TAG, "No saved data found. Creating new albums collection.");
             }
-            ois.close();
-            fileIn.close();
-        } catch (FileNotFoundException e) {
-            Log.d(TAG, "No saved data found. Creating new albums collection.");
-            albums = new HashSet<>();
         } catch (IOException | ClassNotFoundException e) {
             Log.e(TAG, "Error loading data: " + e.getMessage(), e);
-            albums = new HashSet<>();
+            snapshot = new HashSet<>();
+        }
+
+        Map<String, Album> byName = new HashMap<>();
+        for (Album album : snapshot) {
+            byName.put(album.getName(), album);
+        }
+        Set<Album> replayed = Collections.newSetFromMap(new IdentityHashMap<>());
+        journal.replay(new File(context.getFilesDir(), DataJournal.journalFile), sequence, byName, replayed);
+        // The shards of replayed albums are out of date, and compacting resets the journal
+        shards.markDirty(replayed);
+        return new HashSet<>(byName.values());
+    }
+
+    /**
+     * Maps the store file into memory. The mapping stays valid after the channel is closed and
+     * after a new store is renamed over the file, so undecoded albums can be read at any time.
+     *
+     * @param file the store file
+     * @return a read-only buffer over the whole file
+     */
+    private static ByteBuffer mapFile(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads a store written with serialization by earlier versions of the app.
+     *
+     * @param file the legacy store file
+     * @param albums the set to fill with the stored albums
+     * @return the snapshot sequence number, or 0 if the store has none
+     */
+    private static long readLegacyStore(File file, Set<Album> albums) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Object obj = ois.readObject();
+            if (obj instanceof Set<?>) {
+                albums.addAll((Set<Album>) obj);
+            }
+            try {
+                return ois.readLong();
+            } catch (EOFException e) {
+                // Stores written before the journal existed have no sequence number
+                return 0;
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,466 @@
+package com.jsrr.android_app93;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code DataJournal} class records every change to the library as a small typed record
+ * that is appended to a log file, so a save costs as much as the change instead of the whole library.
+ * On startup the journal is replayed over the last snapshot, and once it grows past a threshold
+ * {@link DataWriter} folds it into a new snapshot.
+ *
+ * <p>Each record is framed as its length, a type byte with its fields, and a CRC32 checksum,
+ * so a record torn by a crash is detected and dropped on replay.
+ *
+ * <p>Features of the {@code DataJournal} class include:
+ * <ul>
+ *   <li>Buffering records for albums, photos, tags and captions as they change</li>
+ *   <li>Appending buffered records and resetting the log after compaction</li>
+ *   <li>Replaying the log over a loaded snapshot</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class DataJournal implements LibraryListener {
+    private static final String TAG = "DataJournal";
+    private static final int MAGIC = 0x414A524E; // "AJRN"
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final long COMPACT_THRESHOLD_BYTES = 256 * 1024;
+
+    public static final String journalFile = "albums.journal";
+
+    private static final byte ADD_ALBUM = 1;
+    private static final byte REMOVE_ALBUM = 2;
+    private static final byte RENAME_ALBUM = 3;
+    private static final byte ADD_PHOTO = 4; // Written before dates were kept, read for older journals
+    private static final byte REMOVE_PHOTO = 5;
+    private static final byte ADD_TAG = 6;
+    private static final byte REMOVE_TAG = 7;
+    private static final byte SET_CAPTION = 8;
+    private static final byte ADD_PHOTO_DATED = 9;
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    private long sequence = 0;
+    private long journalBytes = 0;
+    private volatile boolean compactionRequested = true;
+
+    @Override
+    public void onAlbumAdded(Album album) {
+        try {
+            recordOut.writeByte(ADD_ALBUM);
+            recordOut.writeUTF(album.getName());
+            endRecord();
+        } catch (IOException e) {
+            discardRecord(e);
+        }
+        for (Photo photo : album.getPhotos()) {
+            onPhotoAdded(album, photo);
+        }
+    }
+
+    @Override
+    public void onAlbumRemoved(Album album) {
+        try {
+            recordOut.writeByte(REMOVE_ALBUM);
+            recordOut.writeUTF(album.getName());
+            endRecord();
+        } catch (IOException e) {
+            discardRecord(e);
+        }
+    }
+
+    @Override
+    public void onAlbumRenamed(Album album, String oldName) {
+        try {
+            recordOut.writeByte(RENAME_ALBUM);
+            recordOut.writeUTF(oldName);
+            recordOut.writeUTF(album.getName());
+            endRecord();
+        } catch (IOException e) {
+            discardRecord(e);
+        }
+    }
+
+    @Override
+    public void onPhotoAdded(Album album, Photo photo) {
+        try {
+            recordOut.writeByte(ADD_PHOTO_DATED);
+            recordOut.writeUTF(album.getName());
+            recordOut.writeUTF(photo.getPathName());
+            writeNullableUTF(photo.getCaption());
+            recordOut.writeInt(photo.getTags().size());
+            for (Tag tag : photo.getTags()) {
+                recordOut.writeUTF(tag.getName());
+                recordOut.writeUTF(tag.getValue());
+            }
+            recordOut.writeLong(photo.getDate());
+            endRecord();
+        } catch (IOException e) {
+            discardRecord(e);
+        }
+    }
+
+    @Override
+    public void onPhotoRemoved(Album album, Photo photo) {
+        try {
+            recordOut.writeByte(REMOVE_PHOTO);
+            recordOut.writeUTF(album.getName());
+            recordOut.writeUTF(photo.getPathName());
+            endRecord();
+        } catch (IOException e) {
+            discardRecord(e);
+        }
+    }
+
+    @Override
+    public void onTagAdded(Album album, Photo photo, Tag tag) {
+        writeTagRecord(ADD_TAG, album, photo, tag);
+    }
+
+    @Override
+    public void onTagRemoved(Album album, Photo photo, Tag tag) {
+        writeTagRecord(REMOVE_TAG, album, photo, tag);
+    }
+
+    @Override
+    public void onCaptionChanged(Album album, Photo photo, String oldCaption) {
+        try {
+            recordOut.writeByte(SET_CAPTION);
+            recordOut.writeUTF(album.getName());
+            recordOut.writeUTF(photo.getPathName());
+            writeNullableUTF(photo.getCaption());
+            endRecord();
+        } catch (IOException e) {
+            discardRecord(e);
+        }
+    }
+
+    private void writeTagRecord(byte type, Album album, Photo photo, Tag tag) {
+        try {
+            recordOut.writeByte(type);
+            recordOut.writeUTF(album.getName());
+            recordOut.writeUTF(photo.getPathName());
+            recordOut.writeUTF(tag.getName());
+            recordOut.writeUTF(tag.getValue());
+            endRecord();
+        } catch (IOException e) {
+            discardRecord(e);
+        }
+    }
+
+    private void writeNullableUTF(String value) throws IOException {
+        recordOut.writeBoolean(value != null);
+        if (value != null) {
+            recordOut.writeUTF(value);
+        }
+    }
+
+    /**
+     * Frames the record built in {@code record} and moves it to the pending buffer.
+     */
+    private void endRecord() throws IOException {
+        byte[] payload = record.toByteArray();
+        record.reset();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        DataOutputStream out = new DataOutputStream(pending);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private void discardRecord(IOException e) {
+        // Writing to memory does not fail in practice; fall back to a full snapshot if it does
+        Log.e(TAG, "Could not record change: " + e.getMessage(), e);
+        record.reset();
+        compactionRequested = true;
+    }
+
+    /**
+     * Checks whether there are records that have not been handed to the writer yet.
+     *
+     * @return true if records are pending, false otherwise
+     */
+    public boolean hasPendingRecords() {
+        return pending.size() > 0;
+    }
+
+    /**
+     * Checks whether the journal should be folded into a new snapshot instead of appended to.
+     *
+     * @return true if a compaction is needed, false otherwise
+     */
+    public boolean shouldCompact() {
+        return compactionRequested || journalBytes + pending.size() > COMPACT_THRESHOLD_BYTES;
+    }
+
+    /**
+     * Forces the next save to write a full snapshot, for example after a failed append.
+     */
+    public void requestCompaction() {
+        compactionRequested = true;
+    }
+
+    /**
+     * Removes the pending records so they can be appended to the log file.
+     *
+     * @return the framed records
+     */
+    public byte[] drainPending() {
+        byte[] records = pending.toByteArray();
+        pending.reset();
+        journalBytes += records.length;
+        return records;
+    }
+
+    /**
+     * Starts a compaction. Pending records are dropped because the snapshot taken
+     * at the same moment already contains their changes.
+     *
+     * @return the sequence number of the new snapshot
+     */
+    public long startCompaction() {
+        pending.reset();
+        journalBytes = 0;
+        compactionRequested = false;
+        return ++sequence;
+    }
+
+    /**
+     * Appends framed records to the log file. Called on the writer thread.
+     *
+     * @param file    the journal file
+     * @param records the records to append
+     * @throws IOException if the records cannot be written
+     */
+    public static void append(File file, byte[] records) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(records);
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Replaces the log file with an empty journal that applies to the given snapshot.
+     * Called on the writer thread right after the snapshot has been written.
+     *
+     * @param file     the journal file
+     * @param sequence the sequence number of the snapshot
+     * @throws IOException if the file cannot be written
+     */
+    public static void reset(File file, long sequence) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(fileOut);
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file.getName());
+        }
+    }
+
+    /**
+     * Replays the log file over a freshly loaded snapshot. A journal written for another
+     * snapshot, or one with a damaged record, makes the next save write a full snapshot.
+     *
+     * @param file             the journal file
+     * @param snapshotSequence the sequence number stored in the snapshot
+     * @param albums           the loaded albums keyed by name, updated in place
+     * @param changed          filled with the albums whose photos the applied records changed, as
+     *                         their shards no longer match them
+     * @return the number of records applied
+     */
+    public int replay(File file, long snapshotSequence, Map<String, Album> albums, Set<Album> changed) {
+        sequence = snapshotSequence;
+        journalBytes = 0;
+        compactionRequested = true;
+        pending.reset();
+
+        if (!file.exists()) {
+            Log.d(TAG, "No journal found");
+            return 0;
+        }
+
+        int applied = 0;
+        Map<Album, Map<String, Photo>> photoIndex = new IdentityHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readLong() != snapshotSequence) {
+                Log.d(TAG, "Journal does not match the snapshot, ignoring it");
+                return 0;
+            }
+            long bytes = 0;
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    throw new IOException("Bad record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if (in.readInt() != (int) crc.getValue()) {
+                    throw new IOException("Checksum mismatch");
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload)), albums, photoIndex, changed);
+                applied++;
+                bytes += length + 8;
+            }
+            journalBytes = bytes;
+            compactionRequested = false;
+        } catch (IOException e) {
+            // A torn tail is expected after a crash; everything before it has been applied
+            Log.w(TAG, "Stopped replay after " + applied + " records: " + e.getMessage());
+        }
+        Log.d(TAG, "Replayed " + applied + " journal records");
+        return applied;
+    }
+
+    private static void apply(DataInputStream in, Map<String, Album> albums,
+                              Map<Album, Map<String, Photo>> photoIndex, Set<Album> changed) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_ALBUM: {
+                String name = in.readUTF();
+                if (!albums.containsKey(name)) {
+                    Album album = new Album(name);
+                    albums.put(name, album);
+                    changed.add(album);
+                }
+                break;
+            }
+            case REMOVE_ALBUM: {
+                Album album = albums.remove(in.readUTF());
+                if (album != null) {
+                    photoIndex.remove(album);
+                    changed.remove(album);
+                }
+                break;
+            }
+            case RENAME_ALBUM: {
+                String oldName = in.readUTF();
+                String newName = in.readUTF();
+                Album album = albums.get(oldName);
+                if (album != null && !albums.containsKey(newName)) {
+                    albums.remove(oldName);
+                    album.setName(newName);
+                    albums.put(newName, album);
+                }
+                break;
+            }
+            case ADD_PHOTO:
+            case ADD_PHOTO_DATED: {
+                Album album = readableAlbum(albums, in.readUTF());
+                String pathName = in.readUTF();
+                String caption = in.readBoolean() ? in.readUTF() : null;
+                Photo photo = new Photo(caption, pathName);
+                int tagCount = in.readInt();
+                for (int i = 0; i < tagCount; i++) {
+                    photo.addTag(new Tag(in.readUTF(), in.readUTF()));
+                }
+                photo.setDate(type == ADD_PHOTO_DATED ? in.readLong() : 0);
+                if (album != null) {
+                    // Replace any earlier copy so the photo ends up with the recorded tags
+                    album.removePhoto(photo);
+                    album.addPhoto(photo);
+                    photosOf(album, photoIndex).put(pathName, photo);
+                    changed.add(album);
+                }
+                break;
+            }
+            case REMOVE_PHOTO: {
+                Album album = readableAlbum(albums, in.readUTF());
+                String pathName = in.readUTF();
+                if (album != null) {
+                    Photo photo = photosOf(album, photoIndex).remove(pathName);
+                    if (photo != null) {
+                        album.removePhoto(photo);
+                        changed.add(album);
+                    }
+                }
+                break;
+            }
+            case ADD_TAG:
+            case REMOVE_TAG: {
+                Album album = readableAlbum(albums, in.readUTF());
+                String pathName = in.readUTF();
+                Tag tag = new Tag(in.readUTF(), in.readUTF());
+                Photo photo = album == null ? null : photosOf(album, photoIndex).get(pathName);
+                if (photo != null) {
+                    if (type == ADD_TAG) {
+                        photo.addTag(tag);
+                    } else {
+                        photo.removeTag(tag);
+                    }
+                    changed.add(album);
+                }
+                break;
+            }
+            case SET_CAPTION: {
+                Album album = readableAlbum(albums, in.readUTF());
+                String pathName = in.readUTF();
+                String caption = in.readBoolean() ? in.readUTF() : null;
+                Photo photo = album == null ? null : photosOf(album, photoIndex).get(pathName);
+                if (photo != null) {
+                    photo.setCaption(caption);
+                    changed.add(album);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Finds the album a record changes. An album whose photos could not be decoded cannot be
+     * changed, so its records are skipped.
+     */
+    private static Album readableAlbum(Map<String, Album> albums, String name) {
+        Album album = albums.get(name);
+        if (album != null && album.getLoadError() != null) {
+            Log.w(TAG, "Skipping change to unreadable album " + name);
+            return null;
+        }
+        return album;
+    }
+
+    private static Map<String, Photo> photosOf(Album album, Map<Album, Map<String, Photo>> photoIndex) {
+        Map<String, Photo> photos = photoIndex.get(album);
+        if (photos == null) {
+            photos = new HashMap<>();
+            for (Photo photo : album.getPhotos()) {
+                photos.put(photo.getPathName(), photo);
+            }
+            photoIndex.put(album, photos);
+        }
+        return photos;
+    }
+}
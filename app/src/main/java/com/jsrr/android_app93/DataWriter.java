@@ -0,0 +1,271 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code DataWriter} class saves the album library on a single background thread.
+ * Save requests made in quick succession are coalesced into one write, so the UI thread
+ * never touches the disk. A save normally appends the changes recorded by {@link DataJournal};
+ * once the journal grows too large, the UI thread copies the albums that changed and the writer
+ * folds the journal into their {@link ShardStore} shards.
+ *
+ * <p>Features of the {@code DataWriter} class include:
+ * <ul>
+ *   <li>Coalescing bursts of save requests into a single write</li>
+ *   <li>Appending journal records and compacting them into snapshots</li>
+ *   <li>Flushing pending saves at lifecycle edges such as {@code onPause}</li>
+ *   <li>Skipping saves when the library version has not changed</li>
+ *   <li>Reporting save latency and queue depth</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class DataWriter {
+    private static final String TAG = "DataWriter";
+    private static final long COALESCE_DELAY_MS = 300;
+
+    private static DataWriter instance;
+
+    private final Context appContext;
+    private final DataJournal journal = new DataJournal();
+    private final File journalFile;
+    private final ShardStore shards;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private final Runnable captureTask = this::capture;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private boolean captureScheduled = false;
+    private Future<?> lastWrite = CompletableFuture.completedFuture(null);
+    private int requestCount = 0;
+    private int writeCount = 0;
+    private int skippedSaveCount = 0;
+    private long savedVersion = Data.getVersion();
+    private volatile long lastSaveLatencyMs = 0;
+    private volatile long maxSaveLatencyMs = 0;
+    private long totalSaveLatencyMs = 0;
+
+    private DataWriter(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.journalFile = new File(appContext.getFilesDir(), DataJournal.journalFile);
+        this.shards = new ShardStore(appContext.getFilesDir());
+        Data.addListener(journal);
+        Data.addListener(shards);
+    }
+
+    /**
+     * Returns the writer shared by the whole app, creating it on first use.
+     *
+     * @param context any context of the app
+     * @return the shared writer
+     */
+    public static synchronized DataWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new DataWriter(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the journal that records changes to the library.
+     *
+     * @return the journal
+     */
+    public DataJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the file the journal records are appended to.
+     *
+     * @return the journal file
+     */
+    File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Returns the store that keeps one shard file per album.
+     *
+     * @return the shard store
+     */
+    public ShardStore getShardStore() {
+        return shards;
+    }
+
+    /**
+     * Requests a save of the albums. The save starts after a short delay so that
+     * several edits in a row result in one write. Must be called on the main thread.
+     */
+    public synchronized void requestSave() {
+        if (!captureScheduled && Data.getVersion() == savedVersion && !journal.shouldCompact()) {
+            skippedSaveCount++;
+            return;
+        }
+        requestCount++;
+        if (!captureScheduled) {
+            captureScheduled = true;
+            mainHandler.postDelayed(captureTask, COALESCE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Starts any pending save right away instead of waiting for the coalescing delay.
+     * If the library has not changed since the last save and the journal needs no compacting,
+     * nothing is written.
+     * Must be called on the main thread.
+     *
+     * @return a future that completes once the latest save has been written, or fails with the
+     *         error if it could not be written
+     */
+    public synchronized Future<?> flush() {
+        if (captureScheduled) {
+            mainHandler.removeCallbacks(captureTask);
+            capture();
+        } else if (Data.getVersion() != savedVersion || journal.shouldCompact()) {
+            capture();
+        } else {
+            skippedSaveCount++;
+        }
+        return lastWrite;
+    }
+
+    /**
+     * Hands the pending journal records, or copies of the changed albums when the journal
+     * needs compacting, to the writer thread. Runs on the main thread.
+     */
+    private synchronized void capture() {
+        captureScheduled = false;
+        savedVersion = Data.getVersion();
+        int coalesced = requestCount;
+        requestCount = 0;
+        if (journal.shouldCompact()) {
+            long sequence = journal.startCompaction();
+            ShardStore.Plan plan = shards.capture(Data.getAlbums(), sequence);
+            submit(() -> compact(plan, sequence), coalesced);
+        } else if (journal.hasPendingRecords()) {
+            byte[] records = journal.drainPending();
+            submit(() -> DataJournal.append(journalFile, records), coalesced);
+        } else {
+            skippedSaveCount++;
+            Log.d(TAG, "No changes to save");
+        }
+    }
+
+    private void compact(ShardStore.Plan plan, long sequence) throws IOException {
+        shards.write(plan);
+        DataJournal.reset(journalFile, sequence);
+        Data.deleteLegacyStores(appContext);
+        Log.d(TAG, "Compacted journal into snapshot " + sequence + ", rewrote "
+                + plan.getShardWriteCount() + " shards");
+    }
+
+    private void submit(SaveTask task, int coalesced) {
+        queueDepth.incrementAndGet();
+        lastWrite = executor.submit(() -> {
+            write(task, coalesced);
+            return null;
+        });
+    }
+
+    private void write(SaveTask task, int coalesced) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            task.run();
+            long latency = SystemClock.elapsedRealtime() - start;
+            recordLatency(latency);
+            Log.d(TAG, "Data saved in " + latency + " ms (" + coalesced + " requests coalesced, "
+                    + (queueDepth.get() - 1) + " saves queued)");
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving data: " + e.getMessage(), e);
+            // The files on disk may now be incomplete, so the next save writes everything
+            journal.requestCompaction();
+            shards.requestRewriteAll();
+            throw e;
+        } finally {
+            queueDepth.decrementAndGet();
+        }
+    }
+
+    private synchronized void recordLatency(long latency) {
+        writeCount++;
+        totalSaveLatencyMs += latency;
+        lastSaveLatencyMs = latency;
+        maxSaveLatencyMs = Math.max(maxSaveLatencyMs, latency);
+    }
+
+    /**
+     * Returns the number of saves copied but not yet written to disk.
+     *
+     * @return the current queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Returns the number of writes completed since the app started.
+     *
+     * @return the number of completed writes
+     */
+    public synchronized int getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Returns the number of saves that were skipped because the library had not changed.
+     *
+     * @return the number of skipped saves
+     */
+    public synchronized int getSkippedSaveCount() {
+        return skippedSaveCount;
+    }
+
+    /**
+     * Returns the time taken by the most recent write.
+     *
+     * @return the latest save latency in milliseconds
+     */
+    public long getLastSaveLatencyMs() {
+        return lastSaveLatencyMs;
+    }
+
+    /**
+     * Returns the slowest write since the app started.
+     *
+     * @return the maximum save latency in milliseconds
+     */
+    public long getMaxSaveLatencyMs() {
+        return maxSaveLatencyMs;
+    }
+
+    /**
+     * Returns the average time taken by a write since the app started.
+     *
+     * @return the average save latency in milliseconds
+     */
+    public synchronized long getAverageSaveLatencyMs() {
+        return writeCount == 0 ? 0 : totalSaveLatencyMs / writeCount;
+    }
+
+    private interface SaveTask {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,453 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code DiskThumbnailCache} class keeps encoded thumbnails in the cache directory of the app,
+ * so opening an album viewed before reads small thumbnail files instead of decoding every original.
+ * A thumbnail is keyed by the path of its photo together with the size and modification time of the
+ * original, so replacing the original makes the old thumbnail unreachable, and it is evicted in turn.
+ *
+ * <p>The thumbnails kept and the order they were last used in are recorded in a journal, framed
+ * like the {@link DataJournal} as a length, a type byte with its fields, and a CRC32 checksum. On
+ * startup the journal is replayed, a torn tail is dropped, and files the journal does not account
+ * for are deleted. A thumbnail is written to a temporary file and renamed into place before its
+ * record is appended, so a crash never leaves a half-written thumbnail behind a key. Once the
+ * thumbnails take more than the size cap, the least recently used are deleted, and once the journal
+ * holds many more records than thumbnails, it is rewritten.
+ *
+ * <p>Thumbnails are read and written on the threads of the {@link ImageLoader}, so every method is
+ * synchronized.
+ *
+ * <p>Features of the {@code DiskThumbnailCache} class include:
+ * <ul>
+ *   <li>Keeping encoded thumbnails across process deaths</li>
+ *   <li>Invalidating thumbnails when their original changes</li>
+ *   <li>Evicting the least recently used thumbnails over a size cap</li>
+ *   <li>Recovering from a torn journal or a crash during a write</li>
+ *   <li>Counting hits, misses and evictions</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class DiskThumbnailCache {
+    private static final String TAG = "DiskThumbnailCache";
+    private static final int MAGIC = 0x41544843; // "ATHC"
+    private static final int VERSION = 1;
+    private static final int MAX_RECORD_SIZE = 1024;
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private static final int COMPRESS_QUALITY = 85;
+
+    static final String journalFile = "journal";
+    private static final String ENTRY_SUFFIX = ".jpg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final byte WRITE = 1;
+    private static final byte READ = 2;
+    private static final byte REMOVE = 3;
+
+    private static DiskThumbnailCache instance = null;
+
+    private final File directory;
+    private final long maxBytes;
+    // Key -> size in bytes of its file, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private DataOutputStream journal;
+    private long size = 0;
+    private int journalRecords = 0;
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int evictionCount = 0;
+
+    /**
+     * Constructs a {@code DiskThumbnailCache} in a directory, replaying its journal.
+     *
+     * @param directory the directory holding the thumbnails, created if needed
+     * @param maxBytes  the largest number of bytes the thumbnail files may take
+     */
+    DiskThumbnailCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+        }
+        replay();
+        deleteUntrackedFiles();
+        rewriteJournal();
+        trimToSize();
+    }
+
+    /**
+     * Returns the cache shared by the whole app, in the cache directory of the app.
+     *
+     * @param context any context of the app
+     * @return the shared cache
+     */
+    public static synchronized DiskThumbnailCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new DiskThumbnailCache(new File(context.getCacheDir(), "thumbnails"), DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the key of a thumbnail from its photo and the version of the original it was made from.
+     *
+     * @param pathName     the path of the photo
+     * @param lastModified the modification time of the original, or 0 if it is not known
+     * @param length       the size of the original in bytes, or 0 if it is not known
+     * @return the key, which is also a file name
+     */
+    public static String keyOf(String pathName, long lastModified, long length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((pathName + "\n" + lastModified + "\n" + length)
+                    .getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Decodes the thumbnail kept for a key.
+     *
+     * @param key the key, from {@link #keyOf}
+     * @return the thumbnail, or null if none is kept
+     */
+    public Bitmap getBitmap(String key) {
+        byte[] encoded = get(key);
+        return encoded == null ? null : BitmapFactory.decodeByteArray(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Encodes and keeps the thumbnail for a key.
+     *
+     * @param key       the key, from {@link #keyOf}
+     * @param thumbnail the thumbnail
+     */
+    public void putBitmap(String key, Bitmap thumbnail) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        if (thumbnail.compress(Bitmap.CompressFormat.JPEG, COMPRESS_QUALITY, encoded)) {
+            put(key, encoded.toByteArray());
+        }
+    }
+
+    /**
+     * Reads the encoded thumbnail kept for a key, and marks it as the most recently used.
+     *
+     * @param key the key
+     * @return the encoded thumbnail, or null if none is kept
+     */
+    synchronized byte[] get(String key) {
+        Long length = entries.get(key);
+        File file = entryFile(key);
+        if (length == null || file.length() != length) {
+            if (length != null) {
+                // Renamed into place but lost before it reached the disk
+                remove(key);
+            }
+            missCount++;
+            return null;
+        }
+        byte[] encoded = new byte[(int) (long) length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(encoded);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read thumbnail " + key + ": " + e.getMessage());
+            remove(key);
+            missCount++;
+            return null;
+        }
+        appendRecord(READ, key, 0);
+        hitCount++;
+        return encoded;
+    }
+
+    /**
+     * Keeps an encoded thumbnail for a key, replacing any kept before, and evicts the least
+     * recently used thumbnails while the cache is over its size cap.
+     *
+     * @param key     the key
+     * @param encoded the encoded thumbnail
+     */
+    synchronized void put(String key, byte[] encoded) {
+        File tempFile = new File(directory, key + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(encoded);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write thumbnail " + key + ": " + e.getMessage());
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(entryFile(key))) {
+            Log.e(TAG, "Could not move thumbnail " + key + " into place");
+            tempFile.delete();
+            return;
+        }
+        Long previous = entries.put(key, (long) encoded.length);
+        size += encoded.length - (previous == null ? 0 : previous);
+        appendRecord(WRITE, key, encoded.length);
+        trimToSize();
+    }
+
+    private void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) {
+            size -= length;
+            entryFile(key).delete();
+            appendRecord(REMOVE, key, 0);
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            entryFile(eldest.getKey()).delete();
+            appendRecord(REMOVE, eldest.getKey(), 0);
+            evictionCount++;
+        }
+        if (journalRecords > 2 * entries.size() + 1000) {
+            rewriteJournal();
+        }
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Frames a record and appends it to the journal. The stream is flushed to the system after
+     * every record, so the journal survives the process being killed.
+     */
+    private void appendRecord(byte type, String key, long length) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            recordOut.writeByte(type);
+            recordOut.writeUTF(key);
+            if (type == WRITE) {
+                recordOut.writeLong(length);
+            }
+            byte[] payload = record.toByteArray();
+            record.reset();
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            journal.writeInt(payload.length);
+            journal.write(payload);
+            journal.writeInt((int) crc.getValue());
+            journal.flush();
+            journalRecords++;
+        } catch (IOException e) {
+            // The journal is rewritten from the entries in memory on the next start
+            Log.e(TAG, "Could not append to journal: " + e.getMessage());
+            record.reset();
+        }
+    }
+
+    /**
+     * Rebuilds the entries from the journal, stopping at the first damaged record.
+     */
+    private void replay() {
+        File file = new File(directory, journalFile);
+        if (!file.exists()) {
+            return;
+        }
+        int applied = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.d(TAG, "Journal of another format, starting empty");
+                return;
+            }
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    throw new IOException("Bad record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if (in.readInt() != (int) crc.getValue()) {
+                    throw new IOException("Checksum mismatch");
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload)));
+                applied++;
+            }
+        } catch (IOException e) {
+            // A torn tail is expected after a crash; everything before it has been applied
+            Log.w(TAG, "Stopped replay after " + applied + " records: " + e.getMessage());
+        }
+        Log.d(TAG, "Replayed " + applied + " records, " + entries.size() + " thumbnails");
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        String key = in.readUTF();
+        switch (type) {
+            case WRITE: {
+                long length = in.readLong();
+                Long previous = entries.put(key, length);
+                size += length - (previous == null ? 0 : previous);
+                break;
+            }
+            case READ:
+                entries.get(key); // Moves the key to the most recently used end
+                break;
+            case REMOVE: {
+                Long previous = entries.remove(key);
+                size -= previous == null ? 0 : previous;
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Deletes temporary files left by a crash, and thumbnails whose record was lost, and forgets
+     * entries whose file is gone.
+     */
+    private void deleteUntrackedFiles() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                boolean tracked = name.endsWith(ENTRY_SUFFIX)
+                        && entries.containsKey(name.substring(0, name.length() - ENTRY_SUFFIX.length()));
+                if (!tracked && !name.equals(journalFile)) {
+                    file.delete();
+                }
+            }
+        }
+        for (Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entryFile(entry.getKey()).length() != entry.getValue()) {
+                entryFile(entry.getKey()).delete();
+                size -= entry.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with one WRITE record per entry, least recently used first, through a
+     * temporary file, and reopens it for appending.
+     */
+    private void rewriteJournal() {
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            File file = new File(directory, journalFile);
+            File tempFile = new File(directory, journalFile + TEMP_SUFFIX);
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                journal = out;
+                journalRecords = 0;
+                for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                    appendRecord(WRITE, entry.getKey(), entry.getValue());
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            } finally {
+                journal = null;
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not replace " + file.getName());
+            }
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        } catch (IOException e) {
+            // Thumbnails still work for this run, but are forgotten on the next start
+            Log.e(TAG, "Could not rewrite journal: " + e.getMessage(), e);
+            journal = null;
+        }
+    }
+
+    /**
+     * Returns the number of bytes taken by the thumbnail files.
+     *
+     * @return the size of the cache in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of thumbnails kept.
+     *
+     * @return the number of entries
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found their thumbnail.
+     *
+     * @return the number of hits
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not find their thumbnail.
+     *
+     * @return the number of misses
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of thumbnails deleted to stay under the size cap.
+     *
+     * @return the number of evictions
+     */
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+}
@@ -0,0 +1,114 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.ImageDecoder;
+import android.graphics.PostProcessor;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The {@code ImageDecoderPhotoDecoder} class decodes photos with {@link ImageDecoder}, which reads
+ * HEIF and animated formats, decodes straight to a target size, and can place the pixels in
+ * graphics memory. A thumbnail is decoded scaled so its shorter side is the thumbnail size and
+ * cropped to the middle square in the same pass. Thumbnails always use the software allocator, as
+ * they are encoded into the {@link DiskThumbnailCache}; full images use the allocator chosen when
+ * the decoder is made.
+ *
+ * <p>Images the platform decoder rejects, and paths it cannot open, are handed to a fallback
+ * decoder, normally a {@link BitmapFactoryPhotoDecoder}.
+ *
+ * <p>Features of the {@code ImageDecoderPhotoDecoder} class include:
+ * <ul>
+ *   <li>Decoding resources, drawables, files and content URIs</li>
+ *   <li>Decoding and cropping thumbnails at their target size in one pass</li>
+ *   <li>Choosing between hardware and software bitmaps</li>
+ *   <li>Post-processing decoded images</li>
+ *   <li>Falling back to another decoder</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class ImageDecoderPhotoDecoder implements PhotoDecoder {
+    private static final String TAG = "ImageDecoderDecoder";
+
+    private final int fullImageAllocator;
+    private final PostProcessor postProcessor;
+    private final PhotoDecoder fallback;
+
+    /**
+     * Constructs an {@code ImageDecoderPhotoDecoder}.
+     *
+     * @param fullImageAllocator the allocator of full images, such as {@link ImageDecoder#ALLOCATOR_HARDWARE}
+     * @param postProcessor      draws over every decoded image, or null to leave images as they are
+     * @param fallback           decodes the images this decoder cannot
+     */
+    public ImageDecoderPhotoDecoder(int fullImageAllocator, PostProcessor postProcessor, PhotoDecoder fallback) {
+        this.fullImageAllocator = fullImageAllocator;
+        this.postProcessor = postProcessor;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Bitmap decode(Context context, String pathName, int size) {
+        try {
+            ImageDecoder.Source source = sourceOf(context, pathName);
+            if (source != null) {
+                return ImageDecoder.decodeBitmap(source,
+                        (decoder, info, src) -> configure(decoder, info.getSize(), size));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.d(TAG, "Falling back for " + pathName + ": " + e.getMessage());
+        }
+        return fallback.decode(context, pathName, size);
+    }
+
+    private void configure(ImageDecoder decoder, Size imageSize, int size) {
+        if (size == BitmapCache.FULL_SIZE) {
+            decoder.setAllocator(fullImageAllocator);
+        } else {
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+            int[] scaled = scaledSize(imageSize.getWidth(), imageSize.getHeight(), size);
+            decoder.setTargetSize(scaled[0], scaled[1]);
+            int left = (scaled[0] - size) / 2;
+            int top = (scaled[1] - size) / 2;
+            decoder.setCrop(new Rect(left, top, left + size, top + size));
+        }
+        if (postProcessor != null) {
+            decoder.setPostProcessor(postProcessor);
+        }
+    }
+
+    /**
+     * Scales an image so its shorter side is the given size, keeping the aspect ratio.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param size   the size of the shorter side
+     * @return the scaled width and height, neither below the size
+     */
+    static int[] scaledSize(int width, int height, int size) {
+        double scale = (double) size / Math.min(width, height);
+        return new int[]{Math.max(size, (int) Math.round(width * scale)),
+                Math.max(size, (int) Math.round(height * scale))};
+    }
+
+    private static ImageDecoder.Source sourceOf(Context context, String pathName) {
+        int resourceId = PhotoDecoder.resourceIdOf(context, pathName);
+        if (resourceId != 0) {
+            return ImageDecoder.createSource(context.getResources(), resourceId);
+        }
+        File imageFile = new File(pathName);
+        if (imageFile.exists() && imageFile.canRead()) {
+            return ImageDecoder.createSource(imageFile);
+        }
+        Uri uri = Uri.parse(pathName);
+        return uri.getScheme() != null ? ImageDecoder.createSource(context.getContentResolver(), uri) : null;
+    }
+}
@@ -0,0 +1,180 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The {@code ImageLoader} class decodes the thumbnails shown in photo grids on a small pool of
+ * background threads, so binding a grid cell never decodes an image on the main thread.
+ * Each request is attached to the {@link ImageView} it fills. Binding the view to another photo, or
+ * recycling it, cancels the request, and a decoded thumbnail is only shown if the view still waits
+ * for that photo, so fast scrolling neither shows stale images nor decodes photos long gone.
+ *
+ * <p>Requests are made and cancelled on the main thread only.
+ *
+ * <p>Features of the {@code ImageLoader} class include:
+ * <ul>
+ *   <li>Showing thumbnails still in the {@link BitmapCache} at once</li>
+ *   <li>Decoding thumbnails on a bounded pool of threads</li>
+ *   <li>Cancelling the request of a view when it is rebound or recycled</li>
+ *   <li>Showing a thumbnail only in the view that still waits for it</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class ImageLoader {
+    private static final String TAG = "ImageLoader";
+    // Decoding is bound by memory bandwidth more than by cores, so a few threads are enough
+    private static final int MAX_THREADS = 3;
+
+    private static ImageLoader instance = null;
+
+    private final ExecutorService decoders;
+    private final Function<Photo, Bitmap> decoder;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the main thread
+    private final Map<ImageView, Request> requests = new WeakHashMap<>();
+    private int loadedCount = 0;
+    private int cancelledCount = 0;
+
+    private static class Request {
+        final Photo photo;
+        Future<?> future;
+
+        Request(Photo photo) {
+            this.photo = photo;
+        }
+    }
+
+    /**
+     * Constructs an {@code ImageLoader} that decodes on the given threads.
+     *
+     * @param decoders the threads to decode on
+     * @param decoder  decodes the thumbnail of a photo, or returns null if it cannot be decoded
+     */
+    ImageLoader(ExecutorService decoders, Function<Photo, Bitmap> decoder) {
+        this.decoders = decoders;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Returns the image loader shared by the whole app. Must be called on the main thread.
+     *
+     * @param context any context of the app
+     * @return the shared image loader
+     */
+    public static ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+            AtomicInteger count = new AtomicInteger();
+            ExecutorService decoders = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, TAG + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            instance = new ImageLoader(decoders, photo -> photo.getThumbnail(appContext));
+        }
+        return instance;
+    }
+
+    /**
+     * Shows the thumbnail of a photo in a view once it is decoded, cancelling the earlier request of
+     * the view. The view is cleared until then, and shows a placeholder if the photo cannot be decoded.
+     *
+     * @param photo  the photo to show
+     * @param target the view to show it in
+     */
+    public void load(Photo photo, ImageView target) {
+        Request current = requests.get(target);
+        if (current != null && current.photo == photo) {
+            return; // Rebinding the same photo, as after notifyItemChanged
+        }
+        cancel(target);
+        Bitmap cached = photo.getCachedThumbnail(target.getContext());
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            return;
+        }
+        target.setImageDrawable(null);
+        Request request = new Request(photo);
+        requests.put(target, request);
+        request.future = decoders.submit(() -> {
+            Bitmap bitmap;
+            try {
+                bitmap = decoder.apply(photo);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error decoding " + photo.getPathName() + ": " + e.getMessage(), e);
+                bitmap = null;
+            }
+            Bitmap decoded = bitmap;
+            mainHandler.post(() -> deliver(request, target, decoded));
+        });
+    }
+
+    /**
+     * Cancels the request of a view, if any, so its thumbnail is never shown there.
+     *
+     * @param target the view
+     */
+    public void cancel(ImageView target) {
+        Request request = requests.remove(target);
+        if (request != null && !request.future.isDone()) {
+            request.future.cancel(false);
+            cancelledCount++;
+        }
+    }
+
+    /**
+     * Shows a decoded thumbnail, unless the view was cancelled or rebound since it was requested.
+     */
+    private void deliver(Request request, ImageView target, Bitmap bitmap) {
+        if (requests.get(target) != request) {
+            return;
+        }
+        requests.remove(target);
+        if (bitmap != null) {
+            target.setImageBitmap(bitmap);
+        } else {
+            Log.e(TAG, "Failed to load thumbnail for " + request.photo.getCaption());
+            target.setImageResource(android.R.drawable.ic_menu_gallery);
+        }
+        loadedCount++;
+    }
+
+    /**
+     * Returns the number of thumbnails shown in their views.
+     *
+     * @return the number of delivered requests
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * Returns the number of requests cancelled before they were decoded.
+     *
+     * @return the number of cancelled requests
+     */
+    public int getCancelledCount() {
+        return cancelledCount;
+    }
+}
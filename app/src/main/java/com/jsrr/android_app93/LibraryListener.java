@@ -0,0 +1,79 @@
+package com.jsrr.android_app93;
+
+/**
+ * The {@code LibraryListener} interface is notified of every change made to the albums held by {@link Data}.
+ * Changes to albums or photos that are not part of the library, such as copies passed between activities,
+ * are not reported.
+ *
+ * <p>All methods have empty default implementations so listeners only override what they need.
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public interface LibraryListener {
+
+    /**
+     * Called after an album has been added to the library.
+     *
+     * @param album the album that was added
+     */
+    default void onAlbumAdded(Album album) {}
+
+    /**
+     * Called after an album has been removed from the library.
+     *
+     * @param album the album that was removed
+     */
+    default void onAlbumRemoved(Album album) {}
+
+    /**
+     * Called after an album has been renamed.
+     *
+     * @param album   the renamed album
+     * @param oldName the previous name of the album
+     */
+    default void onAlbumRenamed(Album album, String oldName) {}
+
+    /**
+     * Called after a photo has been added to an album.
+     *
+     * @param album the album the photo was added to
+     * @param photo the photo that was added
+     */
+    default void onPhotoAdded(Album album, Photo photo) {}
+
+    /**
+     * Called after a photo has been removed from an album.
+     *
+     * @param album the album the photo was removed from
+     * @param photo the photo that was removed
+     */
+    default void onPhotoRemoved(Album album, Photo photo) {}
+
+    /**
+     * Called after a tag has been added to a photo.
+     *
+     * @param album the album containing the photo
+     * @param photo the photo that was tagged
+     * @param tag   the tag that was added
+     */
+    default void onTagAdded(Album album, Photo photo, Tag tag) {}
+
+    /**
+     * Called after a tag has been removed from a photo.
+     *
+     * @param album the album containing the photo
+     * @param photo the photo the tag was removed from
+     * @param tag   the tag that was removed
+     */
+    default void onTagRemoved(Album album, Photo photo, Tag tag) {}
+
+    /**
+     * Called after the caption of a photo has changed.
+     *
+     * @param album      the album containing the photo
+     * @param photo      the photo whose caption changed
+     * @param oldCaption the previous caption
+     */
+    default void onCaptionChanged(Album album, Photo photo, String oldCaption) {}
+}
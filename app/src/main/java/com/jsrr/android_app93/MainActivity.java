@@ -4,14 +4,19 @@ package com.jsrr.android_app93;
 import android.app.AlertDialog;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -25,10 +30,12 @@ import java.util.Arrays;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
 
     private RecyclerView albumRecyclerView;
+    private ProgressBar loadingProgress;
     private AlbumAdapter albumAdapter;
-    private List<Album> albumList;
+    private List<Album> albumList = new ArrayList<>();
     private Button createAlbumButton;
     private Button deleteAlbumButton;
     private Button renameAlbumButton;
@@ -42,6 +49,9 @@ public class MainActivity extends AppCompatActivity {
         // Initialize RecyclerView
         albumRecyclerView = findViewById(R.id.album_recycler_view);
         albumRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        albumAdapter = new AlbumAdapter(albumList);
+        albumRecyclerView.setAdapter(albumAdapter);
+        loadingProgress = findViewById(R.id.album_loading_progress);
 
         // Initialize buttons
         createAlbumButton = findViewById(R.id.create_album_button);
@@ -55,10 +65,45 @@ public class MainActivity extends AppCompatActivity {
         renameAlbumButton.setOnClickListener(v -> showRenameAlbumDialog());
         searchButton.setOnClickListener(v -> openSearchActivity()); // Add click listener for search button
 
-        // Load data or initialize
-        Data.loadData(this);
-        // Convert Set to List for the adapter
+        // Load data in the background so the first frame does not wait for the disk
+        if (!Data.isLoaded()) {
+            setLoading(true);
+            recordFirstFrame();
+            Data.loadDataAsync(this, this::onDataLoaded);
+        }
+    }
+
+    private void onDataLoaded() {
+        if (isDestroyed()) {
+            return;
+        }
+        setLoading(false);
         refreshAlbumList();
+        Log.d(TAG, "Albums usable " + (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime())
+                + " ms after process start (load took " + Data.getLoadTimeMs() + " ms)");
+        reportFullyDrawn();
+    }
+
+    private void setLoading(boolean loading) {
+        loadingProgress.setVisibility(loading ? View.VISIBLE : View.GONE);
+        // Edits and searches need the albums, so they wait for the load
+        createAlbumButton.setEnabled(!loading);
+        deleteAlbumButton.setEnabled(!loading);
+        renameAlbumButton.setEnabled(!loading);
+        searchButton.setEnabled(!loading);
+    }
+
+    private void recordFirstFrame() {
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(TAG, "First frame " + (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime())
+                        + " ms after process start");
+                return true;
+            }
+        });
     }
 
     // Method to open the search activity
@@ -68,10 +113,12 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void refreshAlbumList() {
-        albumList = new ArrayList<>(Data.getAlbums());
-        // Set up the adapter
-        albumAdapter = new AlbumAdapter(albumList);
-        albumRecyclerView.setAdapter(albumAdapter);
+        if (!Data.isLoaded()) {
+            return; // Filled in by onDataLoaded
+        }
+        albumList.clear();
+        albumList.addAll(Data.getAlbums());
+        albumAdapter.notifyDataSetChanged();
     }
 
     private void showCreateAlbumDialog() {
@@ -259,8 +306,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        // Save data when app is paused
-        Data.saveData(this);
+        // Flush pending saves when app is paused
+        Data.flushData(this);
     }
 
     // RecyclerView Adapter for Albums
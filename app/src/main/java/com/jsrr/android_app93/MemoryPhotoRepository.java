@@ -0,0 +1,359 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code MemoryPhotoRepository} class searches the albums held in memory with an inverted index
+ * from tag type and lowercase tag value to the photos carrying that tag. It is used when the library
+ * is kept in files. The values of each tag type are kept sorted in a {@link PrefixIndex}, so a prefix
+ * search only visits the values that match, and a search for values containing some text only
+ * checks the values that share its trigrams. The words of every caption, as split by
+ * {@link CaptionTokenizer}, are kept in one more {@link PrefixIndex}.
+ *
+ * <p>Each photo is given a dense ordinal, and the photos of a value are kept as a
+ * {@link PostingBitmap} of ordinals rather than a set of photos. A typed query is evaluated entirely
+ * on bitmaps, and only its final result is turned back into photos.
+ *
+ * <p>The index is built when the repository is made, by the thread that owns the albums at that time:
+ * {@link Data} builds it on its loader thread, before the albums are handed to the main thread, so the
+ * index never reads albums that are being changed. Afterwards it is kept up to date as a
+ * {@link LibraryListener} on the main thread, so adding or removing a tag, photo or album, or changing
+ * a caption, only touches the entries of that tag, photo, album or caption. Searches run on a
+ * background thread and only read the index, so every method is synchronized.
+ *
+ * <p>The main thread changes a photo before it notifies the listeners, so a search must never read
+ * the photos of the library. The index keeps a detached {@link Photo#copy()} of each photo for
+ * searches to check and return, and replaces it with a new copy in the listener call that follows
+ * each change. A copy is never changed once made, so results can be read and ranked without the lock.
+ *
+ * <p>Features of the {@code MemoryPhotoRepository} class include:
+ * <ul>
+ *   <li>Building the tag index while the library loads</li>
+ *   <li>Updating the index as tags, photos and albums change</li>
+ *   <li>Finding and counting photos by tag value prefix without scanning photos</li>
+ *   <li>Finding and counting photos by text anywhere in a tag value</li>
+ *   <li>Finding and counting photos by the beginning of a caption word</li>
+ *   <li>Evaluating typed queries as bitmap operations</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 3.0
+ */
+public class MemoryPhotoRepository implements PhotoRepository, LibraryListener {
+    // Lowercase tag type -> its values and photo ordinals
+    private final Map<String, PrefixIndex> index = new HashMap<>();
+    // Folded caption word -> photo ordinals
+    private PrefixIndex captionIndex = new PrefixIndex();
+    // Ordinal -> photo, with null for ordinals freed by removed photos, and photo -> ordinal
+    private final List<Photo> photos = new ArrayList<>();
+    private final Map<Photo, Integer> ordinals = new IdentityHashMap<>();
+    // Ordinal -> copy of its photo as of the last change the index was notified of, and copy -> ordinal
+    private final List<Photo> copies = new ArrayList<>();
+    private final Map<Photo, Integer> copyOrdinals = new IdentityHashMap<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    /**
+     * Constructs a {@code MemoryPhotoRepository} and indexes the given albums. Must be called on the
+     * only thread using the albums, as it decodes and reads all of them.
+     *
+     * @param albums the albums of the library, which this repository must be notified of changes to
+     */
+    public MemoryPhotoRepository(Set<Album> albums) {
+        build(albums);
+    }
+
+    @Override
+    public synchronized Set<Photo> findPhotosByTag(String tagType, String valuePrefix) {
+        return photosOf(findOrdinals(tagType, valuePrefix));
+    }
+
+    @Override
+    public synchronized Set<Photo> findPhotos(QueryExpression query) {
+        return photosOf(query.evaluate(this));
+    }
+
+    /**
+     * Finds the ordinals of the photos with a tag of the given type whose value starts with the
+     * given prefix. Must be called while holding the lock of this repository.
+     *
+     * @param tagType     the tag type
+     * @param valuePrefix the lowercase beginning of the tag value
+     * @return a new bitmap of the matching ordinals
+     */
+    PostingBitmap findOrdinals(String tagType, String valuePrefix) {
+        if (valuePrefix.isEmpty()) {
+            return new PostingBitmap(); // Don't match empty queries
+        }
+        PrefixIndex values = index.get(tagType.toLowerCase());
+        return values == null ? new PostingBitmap() : values.collect(valuePrefix);
+    }
+
+    @Override
+    public synchronized Set<Photo> findPhotosContaining(String tagType, String text) {
+        return photosOf(findContainingOrdinals(tagType, text));
+    }
+
+    /**
+     * Finds the ordinals of the photos with a tag of the given type whose value contains the given
+     * text. Must be called while holding the lock of this repository.
+     *
+     * @param tagType the tag type
+     * @param text    the lowercase text to find in the tag value
+     * @return a new bitmap of the matching ordinals
+     */
+    PostingBitmap findContainingOrdinals(String tagType, String text) {
+        if (text.isEmpty()) {
+            return new PostingBitmap();
+        }
+        PrefixIndex values = index.get(tagType.toLowerCase());
+        return values == null ? new PostingBitmap() : values.collectContaining(text);
+    }
+
+    @Override
+    public synchronized Set<Photo> findPhotosByCaption(String wordPrefix) {
+        return photosOf(findCaptionOrdinals(wordPrefix));
+    }
+
+    /**
+     * Finds the ordinals of the photos whose caption has a word starting with the given prefix.
+     * Must be called while holding the lock of this repository.
+     *
+     * @param wordPrefix the folded beginning of a caption word
+     * @return a new bitmap of the matching ordinals
+     */
+    PostingBitmap findCaptionOrdinals(String wordPrefix) {
+        return wordPrefix.isEmpty() ? new PostingBitmap() : captionIndex.collect(wordPrefix);
+    }
+
+    /**
+     * Returns the copy of the photo with an ordinal, which is safe to read on any thread. Must be
+     * called while holding the lock of this repository.
+     *
+     * @param ordinal the ordinal of a photo in the index
+     * @return the copy of the photo, as of the last change the index was notified of
+     */
+    Photo copyAt(int ordinal) {
+        return copies.get(ordinal);
+    }
+
+    /**
+     * Packs the photos found by this repository into a bitmap of their ordinals, so search results
+     * can be kept compactly. Copies that have since been replaced are left out.
+     *
+     * @param matches the copies of photos found by this repository
+     * @return a new bitmap of their ordinals
+     */
+    synchronized PostingBitmap ordinalsOf(Set<Photo> matches) {
+        PostingBitmap ordinalSet = new PostingBitmap();
+        for (Photo photo : matches) {
+            Integer ordinal = copyOrdinals.get(photo);
+            if (ordinal != null) {
+                ordinalSet.add(ordinal);
+            }
+        }
+        return ordinalSet;
+    }
+
+    /**
+     * Unpacks a bitmap of ordinals into the copies of their photos. Ordinals freed by removed photos
+     * are left out.
+     *
+     * @param ordinalSet the ordinals
+     * @return a new modifiable set of the copies, in ordinal order
+     */
+    synchronized Set<Photo> photosOf(PostingBitmap ordinalSet) {
+        Set<Photo> matches = new LinkedHashSet<>();
+        ordinalSet.forEach(ordinal -> {
+            Photo photo = ordinal < copies.size() ? copies.get(ordinal) : null;
+            if (photo != null) {
+                matches.add(photo);
+            }
+        });
+        return matches;
+    }
+
+    @Override
+    public synchronized int countPhotosByTag(String tagType, String valuePrefix) {
+        if (valuePrefix.isEmpty()) {
+            return 0;
+        }
+        PrefixIndex values = index.get(tagType.toLowerCase());
+        return values == null ? 0 : values.count(valuePrefix);
+    }
+
+    @Override
+    public synchronized int countPhotosContaining(String tagType, String text) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        PrefixIndex values = index.get(tagType.toLowerCase());
+        return values == null ? 0 : values.countContaining(text);
+    }
+
+    @Override
+    public synchronized int countPhotosByCaption(String wordPrefix) {
+        if (wordPrefix.isEmpty()) {
+            return 0;
+        }
+        return captionIndex.count(wordPrefix);
+    }
+
+    @Override
+    public boolean prefersRefinement() {
+        return false; // A longer prefix is a narrower range of the index, found just as fast
+    }
+
+    @Override
+    public synchronized void onAlbumAdded(Album album) {
+        for (Photo photo : album.getPhotos()) {
+            addPhoto(photo);
+        }
+    }
+
+    @Override
+    public synchronized void onAlbumRemoved(Album album) {
+        for (Photo photo : album.getPhotos()) {
+            removePhoto(photo);
+        }
+    }
+
+    @Override
+    public synchronized void onPhotoAdded(Album album, Photo photo) {
+        addPhoto(photo);
+    }
+
+    @Override
+    public synchronized void onPhotoRemoved(Album album, Photo photo) {
+        removePhoto(photo);
+    }
+
+    @Override
+    public synchronized void onTagAdded(Album album, Photo photo, Tag tag) {
+        addTag(photo, tag);
+        updateCopy(photo);
+    }
+
+    @Override
+    public synchronized void onTagRemoved(Album album, Photo photo, Tag tag) {
+        removeTag(photo, tag);
+        updateCopy(photo);
+    }
+
+    @Override
+    public synchronized void onCaptionChanged(Album album, Photo photo, String oldCaption) {
+        Integer ordinal = ordinals.get(photo);
+        if (ordinal != null) {
+            for (String word : CaptionTokenizer.words(oldCaption)) {
+                captionIndex.remove(word, ordinal);
+            }
+            addCaption(photo);
+            updateCopy(photo);
+        }
+    }
+
+    private void build(Set<Album> albums) {
+        // Ordinals are handed out in increasing order, so every posting is built by appending
+        Map<String, Map<String, PostingBitmap>> postings = new HashMap<>();
+        Map<String, PostingBitmap> captionPostings = new HashMap<>();
+        for (Album album : albums) {
+            for (Photo photo : album.getPhotos()) {
+                int ordinal = ordinalOf(photo);
+                for (Tag tag : photo.getTags()) {
+                    postings.computeIfAbsent(tag.getName().toLowerCase(), type -> new HashMap<>())
+                            .computeIfAbsent(tag.getValue().toLowerCase(), value -> new PostingBitmap())
+                            .add(ordinal);
+                }
+                for (String word : CaptionTokenizer.words(photo.getCaption())) {
+                    captionPostings.computeIfAbsent(word, value -> new PostingBitmap()).add(ordinal);
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, PostingBitmap>> entry : postings.entrySet()) {
+            index.put(entry.getKey(), new PrefixIndex(entry.getValue()));
+        }
+        captionIndex = new PrefixIndex(captionPostings);
+    }
+
+    // Reuses freed ordinals so the ordinals stay dense
+    private int ordinalOf(Photo photo) {
+        Integer ordinal = ordinals.get(photo);
+        if (ordinal == null) {
+            ordinal = freeOrdinals.isEmpty() ? photos.size() : freeOrdinals.pop();
+            Photo copy = photo.copy();
+            if (ordinal == photos.size()) {
+                photos.add(photo);
+                copies.add(copy);
+            } else {
+                photos.set(ordinal, photo);
+                copies.set(ordinal, copy);
+            }
+            ordinals.put(photo, ordinal);
+            copyOrdinals.put(copy, ordinal);
+        }
+        return ordinal;
+    }
+
+    // Replaces the copy of a changed photo rather than changing it, as searches may still read it
+    private void updateCopy(Photo photo) {
+        Integer ordinal = ordinals.get(photo);
+        if (ordinal != null) {
+            Photo copy = photo.copy();
+            copyOrdinals.remove(copies.set(ordinal, copy));
+            copyOrdinals.put(copy, ordinal);
+        }
+    }
+
+    private void addPhoto(Photo photo) {
+        for (Tag tag : photo.getTags()) {
+            addTag(photo, tag);
+        }
+        addCaption(photo);
+    }
+
+    private void removePhoto(Photo photo) {
+        for (Tag tag : photo.getTags()) {
+            removeTag(photo, tag);
+        }
+        Integer ordinal = ordinals.remove(photo);
+        if (ordinal != null) {
+            for (String word : CaptionTokenizer.words(photo.getCaption())) {
+                captionIndex.remove(word, ordinal);
+            }
+            photos.set(ordinal, null);
+            copyOrdinals.remove(copies.set(ordinal, null));
+            freeOrdinals.push(ordinal);
+        }
+    }
+
+    private void addCaption(Photo photo) {
+        int ordinal = ordinalOf(photo);
+        for (String word : CaptionTokenizer.words(photo.getCaption())) {
+            captionIndex.add(word, ordinal);
+        }
+    }
+
+    private void addTag(Photo photo, Tag tag) {
+        index.computeIfAbsent(tag.getName().toLowerCase(), type -> new PrefixIndex())
+                .add(tag.getValue().toLowerCase(), ordinalOf(photo));
+    }
+
+    private void removeTag(Photo photo, Tag tag) {
+        String type = tag.getName().toLowerCase();
+        PrefixIndex values = index.get(type);
+        Integer ordinal = ordinals.get(photo);
+        if (values != null && ordinal != null) {
+            values.remove(tag.getValue().toLowerCase(), ordinal);
+            if (values.isEmpty()) {
+                index.remove(type);
+            }
+        }
+    }
+}
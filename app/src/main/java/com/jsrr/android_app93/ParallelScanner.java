@@ -0,0 +1,131 @@
+package com.jsrr.android_app93;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * The {@code ParallelScanner} class checks photos against a predicate on all cores of a
+ * {@link ForkJoinPool}. It is used where the indexes cannot answer a query and each photo has to be
+ * checked on its own, such as filtering earlier results while a query is typed, or checking the
+ * photos left by an AND against a term that matches more photos than are left.
+ *
+ * <p>The photos are split into chunks of at most {@link #CHUNK_SIZE}. Workers only mark the photos
+ * that match; the matches are gathered afterwards in the order a loop over the same collection would
+ * find them, so the results never depend on how the work was scheduled.
+ *
+ * <p>Features of the {@code ParallelScanner} class include:
+ * <ul>
+ *   <li>Filtering a collection of photos in parallel</li>
+ *   <li>Marking the matches in an array of photos in parallel</li>
+ *   <li>Checking small collections on the calling thread</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class ParallelScanner {
+    /**
+     * The largest number of photos checked by one task.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    private static ParallelScanner instance = null;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a {@code ParallelScanner} that runs its tasks on a pool.
+     *
+     * @param pool the pool, whose parallelism is the number of cores used
+     */
+    public ParallelScanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the scanner shared by the whole app, which runs on the common pool.
+     *
+     * @return the shared scanner
+     */
+    public static synchronized ParallelScanner getInstance() {
+        if (instance == null) {
+            instance = new ParallelScanner(ForkJoinPool.commonPool());
+        }
+        return instance;
+    }
+
+    /**
+     * Finds the photos of a collection that match a predicate.
+     *
+     * @param photos    the photos, which must not change during the scan
+     * @param predicate the test each photo must pass, which may run on several threads at once
+     * @return a new modifiable set of the matching photos, in iteration order
+     */
+    public Set<Photo> filter(Collection<Photo> photos, Predicate<? super Photo> predicate) {
+        Photo[] photoArray = photos.toArray(new Photo[0]);
+        boolean[] matched = check(photoArray, predicate);
+        Set<Photo> matches = new LinkedHashSet<>();
+        for (int i = 0; i < photoArray.length; i++) {
+            if (matched[i]) {
+                matches.add(photoArray[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Checks each photo of an array against a predicate.
+     *
+     * @param photos    the photos, which must not change during the scan
+     * @param predicate the test each photo must pass, which may run on several threads at once
+     * @return a new array telling whether the photo at each position matched
+     */
+    public boolean[] check(Photo[] photos, Predicate<? super Photo> predicate) {
+        boolean[] matched = new boolean[photos.length];
+        if (photos.length <= CHUNK_SIZE) {
+            // Handing a single chunk to the pool would only add the cost of switching threads
+            for (int i = 0; i < photos.length; i++) {
+                matched[i] = predicate.test(photos[i]);
+            }
+        } else {
+            pool.invoke(new PhotoTask(photos, matched, 0, photos.length, predicate));
+        }
+        return matched;
+    }
+
+    // Splits a range of photos in half down to chunks, then checks each photo of a chunk
+    private static class PhotoTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Photo[] photos;
+        private final boolean[] matched;
+        private final int from;
+        private final int to;
+        private final Predicate<? super Photo> predicate;
+
+        PhotoTask(Photo[] photos, boolean[] matched, int from, int to, Predicate<? super Photo> predicate) {
+            this.photos = photos;
+            this.matched = matched;
+            this.from = from;
+            this.to = to;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PhotoTask(photos, matched, from, middle, predicate),
+                        new PhotoTask(photos, matched, middle, to, predicate));
+            } else {
+                for (int i = from; i < to; i++) {
+                    matched[i] = predicate.test(photos[i]);
+                }
+            }
+        }
+    }
+}
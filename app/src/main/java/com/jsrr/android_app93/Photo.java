@@ -1,9 +1,12 @@
 package com.jsrr.android_app93;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
 import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
 import android.util.Log;
 
 import java.io.File;
@@ -17,6 +20,8 @@ import java.util.Set;
  * It provides functionality to manage tags, retrieve photo details, and compare photos with each other.
  *
  * <p>This class implements {@link Serializable} to allow serialization of album objects.
+ * Decoded images are kept in the shared {@link BitmapCache} rather than in the photo, so memory
+ * for images stays within one budget however many photos are shown.
  *
  * <p>Features of the {@code Photo} class include:
  * <ul>
@@ -33,11 +38,15 @@ public class Photo implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final String TAG = "Photo";
     private static final int THUMBNAIL_SIZE = 200;
+    // Full images are only shown, so their pixels may stay in graphics memory
+    private static final PhotoDecoder decoder = new ImageDecoderPhotoDecoder(
+            ImageDecoder.ALLOCATOR_HARDWARE, null, new BitmapFactoryPhotoDecoder());
     private String caption;
     private String pathName;
-    private transient Bitmap fullImage;
-    private transient Bitmap thumbnailImage;
     private Set<Tag> tags = new HashSet<>();
+    // Milliseconds since the epoch, or 0 for photos added before dates were kept
+    private long date;
+    private transient Album album;
 
     /**
      * Constructs a {@code Photo} with the specified caption and path name.
@@ -48,6 +57,7 @@ public class Photo implements Serializable {
     public Photo(String caption, String pathName) {
         this.caption = caption;
         this.pathName = pathName;
+        this.date = System.currentTimeMillis();
     }
 
     /**
@@ -69,100 +79,51 @@ public class Photo implements Serializable {
     }
 
     /**
-     * Loads and retrieves the full-sized image of the photo.
+     * Loads and retrieves the full-sized image of the photo, through the {@link BitmapCache}.
      *
      * @param context the Android context
      * @return the bitmap of the photo, or null if it cannot be loaded
      */
     public Bitmap getFullImage(Context context) {
-        if (fullImage == null || fullImage.isRecycled()) {
-            Log.d(TAG, "Loading image from path: " + pathName);
-
-            try {
-                // Try first as a resource ID
-                try {
-                    int resourceId = Integer.parseInt(pathName);
-                    fullImage = BitmapFactory.decodeResource(context.getResources(), resourceId);
-                    if (fullImage != null) {
-                        Log.d(TAG, "Successfully loaded image from resource ID: " + resourceId);
-                        return fullImage;
-                    } else {
-                        Log.e(TAG, "Failed to decode resource with ID: " + resourceId);
-                    }
-                } catch (NumberFormatException nfe) {
-                    // Not a resource ID, continue to next method
-                    Log.d(TAG, "Not a resource ID, trying other methods");
-                }
-
-                // Try to load from drawable directory
-                if (pathName.startsWith("/drawable/")) {
-                    String resourceName = pathName.substring("/drawable/".length());
-                    int resourceId = context.getResources().getIdentifier(
-                            resourceName, "drawable", context.getPackageName());
-                    if (resourceId != 0) {
-                        fullImage = BitmapFactory.decodeResource(context.getResources(), resourceId);
-                        if (fullImage != null) {
-                            Log.d(TAG, "Successfully loaded image from drawable: " + resourceName);
-                            return fullImage;
-                        }
-                    } else {
-                        Log.e(TAG, "Resource not found: " + resourceName);
-                    }
-                }
-
-                // Try as direct file path from storage
-                File imageFile = new File(pathName);
-                if (imageFile.exists() && imageFile.canRead()) {
-                    fullImage = BitmapFactory.decodeFile(pathName);
-                    if (fullImage != null) {
-                        Log.d(TAG, "Successfully loaded image from file path");
-                        return fullImage;
-                    } else {
-                        Log.e(TAG, "Failed to decode file from path: " + pathName);
-                    }
-                } else {
-                    Log.d(TAG, "File does not exist or cannot be read: " + pathName);
-                }
-
-                // Try as URI
-                try {
-                    Uri uri = Uri.parse(pathName);
-                    fullImage = BitmapFactory.decodeStream(context.getContentResolver().openInputStream(uri));
-                    if (fullImage != null) {
-                        Log.d(TAG, "Successfully loaded image from URI");
-                        return fullImage;
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error loading image from URI: " + e.getMessage());
-                }
-
-                // If all else fails, set a placeholder
-                Log.e(TAG, "Could not load image from any method. Using placeholder.");
-                fullImage = null;
-            } catch (Exception e) {
-                Log.e(TAG, "General error loading image: " + e.getMessage(), e);
-                fullImage = null;
+        BitmapCache cache = BitmapCache.getInstance(context);
+        Bitmap fullImage = cache.get(this, BitmapCache.FULL_SIZE);
+        if (fullImage == null) {
+            fullImage = decoder.decode(context, pathName, BitmapCache.FULL_SIZE);
+            if (fullImage != null) {
+                cache.put(this, BitmapCache.FULL_SIZE, fullImage);
             }
         }
         return fullImage;
     }
 
     /**
-     * Gets a thumbnail version of the image with specified dimensions.
+     * Gets a square thumbnail of the middle of the image, through the {@link BitmapCache} and then the
+     * {@link DiskThumbnailCache}. A thumbnail made from scratch is decoded directly at about its size.
      *
      * @param context the Android context needed to access resources
      * @return A Bitmap of the thumbnail, or null if it cannot be created
      */
     public Bitmap getThumbnail(Context context) {
-        if (thumbnailImage == null || thumbnailImage.isRecycled()) {
-            Bitmap original = getFullImage(context);
-            if (original != null) {
-                thumbnailImage = Bitmap.createScaledBitmap(original, THUMBNAIL_SIZE, THUMBNAIL_SIZE, true);
-                Log.d(TAG, "Created thumbnail for " + caption);
+        BitmapCache cache = BitmapCache.getInstance(context);
+        Bitmap thumbnailImage = cache.get(this, THUMBNAIL_SIZE);
+        if (thumbnailImage == null) {
+            DiskThumbnailCache diskCache = DiskThumbnailCache.getInstance(context);
+            String diskKey = diskCacheKey(context);
+            thumbnailImage = diskCache.getBitmap(diskKey);
+            if (thumbnailImage != null) {
+                Log.d(TAG, "Read thumbnail of " + caption + " from the disk cache");
             } else {
-                Log.e(TAG, "Cannot create thumbnail: original image is null");
-                return null;
+                // A cached full image is a hardware bitmap, which cannot be cropped into a thumbnail
+                // without copying every pixel back, so the file is decoded again at the thumbnail size
+                thumbnailImage = decoder.decode(context, pathName, THUMBNAIL_SIZE);
+                if (thumbnailImage == null) {
+                    Log.e(TAG, "Cannot create thumbnail: the image could not be decoded");
+                    return null;
+                }
+                diskCache.putBitmap(diskKey, thumbnailImage);
+                Log.d(TAG, "Created thumbnail for " + caption);
             }
+            cache.put(this, THUMBNAIL_SIZE, thumbnailImage);
         }
         else {
             Log.d(TAG, "Using existing thumbnail for " + caption);
@@ -170,6 +131,54 @@ public class Photo implements Serializable {
         return thumbnailImage;
     }
 
+    /**
+     * Builds the key of the thumbnail in the {@link DiskThumbnailCache} from the size and modification
+     * time of the original, read from the file system or the content provider without opening the
+     * image. Images bundled with the app change only when the app is updated.
+     *
+     * @param context the Android context
+     * @return the key of the thumbnail
+     */
+    private String diskCacheKey(Context context) {
+        long lastModified = 0;
+        long length = 0;
+        try {
+            File imageFile = new File(pathName);
+            if (pathName.matches("\\d+") || pathName.startsWith("/drawable/")) {
+                lastModified = context.getPackageManager()
+                        .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            } else if (imageFile.exists()) {
+                lastModified = imageFile.lastModified();
+                length = imageFile.length();
+            } else {
+                try (Cursor cursor = context.getContentResolver().query(Uri.parse(pathName),
+                        null, null, null, null)) {
+                    if (cursor != null && cursor.moveToFirst()) {
+                        int sizeColumn = cursor.getColumnIndex(OpenableColumns.SIZE);
+                        int modifiedColumn = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                        length = sizeColumn >= 0 && !cursor.isNull(sizeColumn) ? cursor.getLong(sizeColumn) : 0;
+                        lastModified = modifiedColumn >= 0 && !cursor.isNull(modifiedColumn)
+                                ? cursor.getLong(modifiedColumn) : 0;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // Without a version the thumbnail is keyed by path only
+            Log.d(TAG, "Could not read the version of " + pathName + ": " + e.getMessage());
+        }
+        return DiskThumbnailCache.keyOf(pathName, lastModified, length);
+    }
+
+    /**
+     * Returns the thumbnail if it is in the {@link BitmapCache}, without decoding anything.
+     *
+     * @param context the Android context
+     * @return the thumbnail, or null if it must be decoded first
+     */
+    Bitmap getCachedThumbnail(Context context) {
+        return BitmapCache.getInstance(context).get(this, THUMBNAIL_SIZE);
+    }
+
     /**
      * Retrieves the set of tags associated with the photo.
      *
@@ -193,10 +202,22 @@ public class Photo implements Serializable {
     }
 
     /**
-     * Retrieves the date of the photo.
+     * Retrieves the date the photo was added to the app.
+     *
+     * @return the date in milliseconds since the epoch, or 0 if the photo was added before dates were kept
+     */
+    public long getDate() {
+        return date;
+    }
+
+    /**
+     * Sets the date the photo was added to the app, as read back from a store.
      *
-     * @return the date of the photo
+     * @param date the date in milliseconds since the epoch, or 0 if it is not known
      */
+    void setDate(long date) {
+        this.date = date;
+    }
 
     /**
      * Sets the caption of the photo.
@@ -204,7 +225,11 @@ public class Photo implements Serializable {
      * @param caption the caption to set for the photo
      */
     public void setCaption(String caption) {
+        String oldCaption = this.caption;
         this.caption = caption;
+        if (isInLibrary()) {
+            Data.notifyCaptionChanged(album, this, oldCaption);
+        }
     }
 
     /**
@@ -214,9 +239,7 @@ public class Photo implements Serializable {
      * @param context the Android context
      */
     public void setPathName(String pathName, Context context) {
-        this.pathName = pathName;
-        this.fullImage = null; // Force reload
-        this.thumbnailImage = null; // Force thumbnail recreation
+        this.pathName = pathName; // Images are cached by path, so the new one is decoded on first use
     }
 
     /**
@@ -225,7 +248,11 @@ public class Photo implements Serializable {
      * @param tag the tag to be added to the set
      */
     public void addTag(Tag tag) {
-        tags.add(tag);
+        if (tags.add(tag)) {
+            if (isInLibrary()) {
+                Data.notifyTagAdded(album, this, tag);
+            }
+        }
     }
 
     /**
@@ -234,21 +261,50 @@ public class Photo implements Serializable {
      * @param tag the tag to be removed from the set
      */
     public void removeTag(Tag tag) {
-        tags.remove(tag);
+        if (tags.remove(tag)) {
+            if (isInLibrary()) {
+                Data.notifyTagRemoved(album, this, tag);
+            }
+        }
     }
 
     /**
-     * Clean up bitmap resources when no longer needed
+     * Retrieves the album this photo was last added to.
+     *
+     * @return the owning album, or null if the photo is not in an album
      */
-    public void recycleImages() {
-        if (fullImage != null && !fullImage.isRecycled()) {
-            fullImage.recycle();
-            fullImage = null;
-        }
-        if (thumbnailImage != null && !thumbnailImage.isRecycled()) {
-            thumbnailImage.recycle();
-            thumbnailImage = null;
-        }
+    Album getAlbum() {
+        return album;
+    }
+
+    /**
+     * Sets the album that owns this photo.
+     *
+     * @param album the owning album, or null to clear it
+     */
+    void setAlbum(Album album) {
+        this.album = album;
+    }
+
+    /**
+     * Checks whether this photo belongs to an album in the library, so its changes must be reported.
+     *
+     * @return true if the photo is part of the library, false otherwise
+     */
+    private boolean isInLibrary() {
+        return album != null && album.isAttached();
+    }
+
+    /**
+     * Creates a copy of this photo with its own set of tags. It shares the cached images of this photo.
+     *
+     * @return a copy of the photo
+     */
+    Photo copy() {
+        Photo copy = new Photo(caption, pathName);
+        copy.date = date;
+        copy.tags.addAll(tags);
+        return copy;
     }
 
     /**
@@ -0,0 +1,51 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * The {@code PhotoDecoder} interface turns the path of a {@link Photo} into a bitmap, either at full
+ * resolution or as a square thumbnail of the middle of the image. A path may name a resource id,
+ * a drawable as {@code /drawable/name}, a file, or a content URI, and every decoder handles all four.
+ *
+ * <p>Features of the {@code PhotoDecoder} interface include:
+ * <ul>
+ *   <li>Decoding an image at full resolution</li>
+ *   <li>Decoding a center-cropped square thumbnail directly at about its size</li>
+ *   <li>Resolving paths that name resources of the app</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public interface PhotoDecoder {
+    /**
+     * Decodes the image a photo path names. Runs on a background thread.
+     *
+     * @param context  the Android context
+     * @param pathName the path of the photo
+     * @param size     the side of the square thumbnail, or {@link BitmapCache#FULL_SIZE} for the whole image
+     * @return the bitmap, or null if the image cannot be loaded
+     */
+    Bitmap decode(Context context, String pathName, int size);
+
+    /**
+     * Finds the resource a photo path names, as a resource id or as {@code /drawable/name}.
+     *
+     * @param context  the Android context
+     * @param pathName the path of the photo
+     * @return the resource id, or 0 if the path does not name a resource
+     */
+    static int resourceIdOf(Context context, String pathName) {
+        try {
+            return Integer.parseInt(pathName);
+        } catch (NumberFormatException e) {
+            // Not a resource ID, try a drawable name
+        }
+        if (pathName.startsWith("/drawable/")) {
+            return context.getResources().getIdentifier(
+                    pathName.substring("/drawable/".length()), "drawable", context.getPackageName());
+        }
+        return 0;
+    }
+}
@@ -9,8 +9,8 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
-import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.Spinner;
@@ -45,6 +45,9 @@ public class PhotoDetailActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_photo_detail);
 
+        // Wait for the albums, which may still be loading or not loaded at all after a restore
+        Data.loadData(this);
+
         // Enable back button in action bar
         if (getSupportActionBar() != null) {
             getSupportActionBar().setDisplayHomeAsUpEnabled(true);
@@ -157,7 +160,7 @@ public class PhotoDetailActivity extends AppCompatActivity {
 
         // Get references to dialog components
         Spinner tagTypeSpinner = dialogView.findViewById(R.id.tag_type_spinner);
-        EditText tagValueEditText = dialogView.findViewById(R.id.tag_value_edit_text);
+        AutoCompleteTextView tagValueEditText = dialogView.findViewById(R.id.tag_value_edit_text);
 
         // Set up the spinner with tag types
         ArrayAdapter<String> adapter = new ArrayAdapter<>(
@@ -167,6 +170,22 @@ public class PhotoDetailActivity extends AppCompatActivity {
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         tagTypeSpinner.setAdapter(adapter);
 
+        // Suggest values already used for the selected tag type, so they are not spelled differently
+        TagSuggestionAdapter suggestions = new TagSuggestionAdapter(this, Data.getSuggester(),
+                tagTypeSpinner.getSelectedItem().toString());
+        tagValueEditText.setAdapter(suggestions);
+        tagTypeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                suggestions.setTagType(parent.getItemAtPosition(position).toString());
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Not needed
+            }
+        });
+
         // Create and show the dialog
         AlertDialog dialog = new AlertDialog.Builder(this)
                 .setTitle("Add Tag")
@@ -278,8 +297,8 @@ public class PhotoDetailActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        // Save data when activity is paused
-        Data.saveData(this);
+        // Flush pending saves when activity is paused
+        Data.flushData(this);
     }
 
     // Adapter for the Tags RecyclerView
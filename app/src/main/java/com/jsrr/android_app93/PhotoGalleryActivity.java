@@ -65,6 +65,9 @@ public class PhotoGalleryActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_photo_gallery);
 
+        // Wait for the albums, which may still be loading or not loaded at all after a restore
+        Data.loadData(this);
+
         // Get album name from intent
         albumName = getIntent().getStringExtra("ALBUM_NAME");
 
@@ -101,6 +104,13 @@ public class PhotoGalleryActivity extends AppCompatActivity {
             photoList = new ArrayList<>();
         }
 
+        // An album whose stored photos cannot be read is shown empty and cannot be changed
+        if (currentAlbum != null && currentAlbum.getLoadError() != null) {
+            Toast.makeText(this, "The photos of " + currentAlbum.getName() + " could not be read",
+                    Toast.LENGTH_LONG).show();
+            addPhotoFab.setVisibility(View.GONE);
+        }
+
         // Set up the adapter
         photoAdapter = new PhotoAdapter(photoList);
         photoRecyclerView.setAdapter(photoAdapter);
@@ -358,6 +368,13 @@ public class PhotoGalleryActivity extends AppCompatActivity {
                             Log.d(TAG, "Using fresh destination album reference");
                         }
 
+                        if (destinationAlbum.getLoadError() != null) {
+                            Toast.makeText(PhotoGalleryActivity.this, "The photos of " +
+                                            destinationAlbum.getName() + " could not be read. Move cancelled.",
+                                    Toast.LENGTH_LONG).show();
+                            return;
+                        }
+
                         // Check if the destination album already contains the photo
                         boolean isDuplicate = false;
                         for (Photo existingPhoto : destinationAlbum.getPhotos()) {
@@ -512,19 +529,8 @@ public class PhotoGalleryActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        // Save data when activity is paused
-        Data.saveData(this);
-    }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        // Clean up bitmap resources
-        if (photoList != null) {
-            for (Photo photo : photoList) {
-                photo.recycleImages();
-            }
-        }
+        // Flush pending saves when activity is paused
+        Data.flushData(this);
     }
 
     // RecyclerView Adapter for Photos
@@ -550,18 +556,8 @@ public class PhotoGalleryActivity extends AppCompatActivity {
             Photo photo = photos.get(position);
             holder.photoNameTextView.setText(photo.getCaption());
 
-            // Use the thumbnail and handle potential null
-            try {
-                holder.photoImageView.setImageBitmap(photo.getThumbnail(holder.itemView.getContext()));
-                if (holder.photoImageView.getDrawable() == null) {
-                    Log.e(TAG, "Failed to load thumbnail for " + photo.getCaption());
-                    // Set a placeholder or default image
-                    holder.photoImageView.setImageResource(android.R.drawable.ic_menu_gallery);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error displaying photo: " + e.getMessage());
-                holder.photoImageView.setImageResource(android.R.drawable.ic_menu_gallery);
-            }
+            // The thumbnail is decoded in the background, with a placeholder if it cannot be loaded
+            ImageLoader.getInstance(holder.itemView.getContext()).load(photo, holder.photoImageView);
 
             // Handle expanded state (show/hide action buttons)
             boolean isExpanded = position == expandedPosition;
@@ -606,7 +602,8 @@ public class PhotoGalleryActivity extends AppCompatActivity {
         @Override
         public void onViewRecycled(@NonNull PhotoViewHolder holder) {
             super.onViewRecycled(holder);
-            // Clear the ImageView to help with recycling
+            // Stop decoding for a cell scrolled away and clear the ImageView to help with recycling
+            ImageLoader.getInstance(holder.itemView.getContext()).cancel(holder.photoImageView);
             holder.photoImageView.setImageBitmap(null);
         }
 
@@ -0,0 +1,65 @@
+package com.jsrr.android_app93;
+
+import java.util.Set;
+
+/**
+ * The {@code PhotoQuery} interface is a search that {@link SearchHistory} can answer, either the two
+ * tag fields of {@link SearchActivity} as a {@link TagQuery} or a typed {@link QueryExpression}.
+ * Equal queries must have equal results, so results can be reused. Results are ranked by how
+ * closely they match, as scored by {@link #relevance}.
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public interface PhotoQuery {
+
+    /**
+     * The relevance of a tag value or caption word equal to the text of a term.
+     */
+    int EXACT = 3;
+
+    /**
+     * The relevance of a tag value or caption word starting with the text of a term.
+     */
+    int PREFIX = 2;
+
+    /**
+     * The relevance of a tag value containing the text of a term after its start.
+     */
+    int SUBSTRING = 1;
+
+    /**
+     * Finds the matching photos with the indexes of a repository.
+     *
+     * @param repository the repository to search
+     * @return a new modifiable set of the matching photos
+     */
+    Set<Photo> run(PhotoRepository repository);
+
+    /**
+     * Checks whether a photo matches this query.
+     *
+     * @param photo the photo to check
+     * @return true if the photo is a result of this query, false otherwise
+     */
+    boolean matches(Photo photo);
+
+    /**
+     * Checks whether every result of this query is also a result of an earlier query, so this query
+     * can be answered by filtering the earlier results.
+     *
+     * @param earlier the earlier query
+     * @return true if this query narrows the earlier one, false otherwise
+     */
+    boolean narrows(PhotoQuery earlier);
+
+    /**
+     * Scores how closely a photo matches this query, so the best matches are shown first. Each term
+     * the photo matches adds {@link #EXACT}, {@link #PREFIX} or {@link #SUBSTRING}, whichever of its
+     * tags fits best; excluded terms add nothing.
+     *
+     * @param photo a photo that matches this query
+     * @return the relevance, higher for closer matches
+     */
+    int relevance(Photo photo);
+}
@@ -0,0 +1,105 @@
+package com.jsrr.android_app93;
+
+import java.util.Set;
+
+/**
+ * The {@code PhotoRepository} interface answers tag and caption searches over the photos of the library.
+ * {@link SearchActivity} only searches through this interface, so the library can be kept
+ * in memory or in a database. Searches run on a background thread, so implementations must be
+ * safe to query while the library changes on the main thread.
+ *
+ * <p>The photos found are detached copies, which are never changed afterwards, rather than the photos
+ * of the library. Queries check, filter and rank the photos found on background threads without any
+ * lock, which is only safe because the main thread never changes them.
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public interface PhotoRepository {
+
+    /**
+     * Finds the photos with a tag of the given type whose value starts with the given prefix.
+     * Tag types and values are compared without regard to case. An empty prefix matches nothing.
+     *
+     * @param tagType     the tag type, such as "Location" or "Person"
+     * @param valuePrefix the lowercase beginning of the tag value
+     * @return a new modifiable set of copies of the matching photos
+     */
+    Set<Photo> findPhotosByTag(String tagType, String valuePrefix);
+
+    /**
+     * Counts the photos {@link #findPhotosByTag} would find, so queries can be planned before any
+     * photos are fetched. The count may include a photo more than once but is never too low.
+     *
+     * @param tagType     the tag type, such as "Location" or "Person"
+     * @param valuePrefix the lowercase beginning of the tag value
+     * @return the most photos the search can find
+     */
+    default int countPhotosByTag(String tagType, String valuePrefix) {
+        return findPhotosByTag(tagType, valuePrefix).size();
+    }
+
+    /**
+     * Finds the photos with a tag of the given type whose value contains the given text anywhere.
+     * Tag types and values are compared without regard to case. Empty text matches nothing.
+     *
+     * @param tagType the tag type, such as "Location" or "Person"
+     * @param text    the lowercase text to find in the tag value
+     * @return a new modifiable set of copies of the matching photos
+     */
+    Set<Photo> findPhotosContaining(String tagType, String text);
+
+    /**
+     * Counts the photos {@link #findPhotosContaining} would find. The count may include a photo
+     * more than once but is never too low.
+     *
+     * @param tagType the tag type, such as "Location" or "Person"
+     * @param text    the lowercase text to find in the tag value
+     * @return the most photos the search can find
+     */
+    default int countPhotosContaining(String tagType, String text) {
+        return findPhotosContaining(tagType, text).size();
+    }
+
+    /**
+     * Finds the photos whose caption has a word starting with the given prefix. Words are split and
+     * folded by {@link CaptionTokenizer}. An empty prefix matches nothing.
+     *
+     * @param wordPrefix the folded beginning of a caption word
+     * @return a new modifiable set of copies of the matching photos
+     */
+    Set<Photo> findPhotosByCaption(String wordPrefix);
+
+    /**
+     * Counts the photos {@link #findPhotosByCaption} would find. The count may include a photo
+     * more than once but is never too low.
+     *
+     * @param wordPrefix the folded beginning of a caption word
+     * @return the most photos the search can find
+     */
+    default int countPhotosByCaption(String wordPrefix) {
+        return findPhotosByCaption(wordPrefix).size();
+    }
+
+    /**
+     * Finds the photos matching a typed query. By default the query is planned with the searches
+     * and counts above.
+     *
+     * @param query the query
+     * @return a new modifiable set of copies of the matching photos
+     */
+    default Set<Photo> findPhotos(QueryExpression query) {
+        return query.plan(this);
+    }
+
+    /**
+     * Checks whether narrowing a search is faster by filtering the earlier results in memory
+     * than by searching again. It is for repositories that scan or query a database, but not for
+     * indexes that already find a prefix in time proportional to its matches.
+     *
+     * @return true if {@link SearchHistory} should filter earlier results, false otherwise
+     */
+    default boolean prefersRefinement() {
+        return true;
+    }
+}
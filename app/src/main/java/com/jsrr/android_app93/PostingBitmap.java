@@ -0,0 +1,675 @@
+package com.jsrr.android_app93;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * The {@code PostingBitmap} class is a compressed set of photo ordinals, used as the posting list of a
+ * tag value in {@link MemoryPhotoRepository}. Ordinals are split into chunks of 65536 by their high
+ * 16 bits, and each chunk keeps its low 16 bits in a container suited to how full it is: a sorted
+ * array for up to 4096 ordinals, which takes 2 bytes each, or a bitset of 8 KB above that. A rare tag
+ * therefore costs a few bytes per photo and a common one an eighth of a byte per photo in the library.
+ *
+ * <p>Intersections, unions and differences work chunk by chunk: bitsets are combined a 64-bit word at
+ * a time, arrays are merged, and an array meeting a bitset is checked bit by bit. Chunks missing from
+ * either side are skipped entirely.
+ *
+ * <p>Features of the {@code PostingBitmap} class include:
+ * <ul>
+ *   <li>Adding, removing and checking ordinals</li>
+ *   <li>Intersecting, uniting and subtracting bitmaps in place</li>
+ *   <li>Uniting many bitmaps at once</li>
+ *   <li>Visiting ordinals in increasing order</li>
+ *   <li>Estimating the memory used</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class PostingBitmap {
+    // A chunk with more ordinals than this is smaller as a bitset
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITSET_WORDS = 65536 / 64;
+
+    // Parallel arrays: high 16 bits of each chunk in increasing order, and its container
+    private char[] keys = new char[1];
+    private Container[] containers = new Container[1];
+    private int chunkCount = 0;
+
+    /**
+     * Constructs an empty {@code PostingBitmap}.
+     */
+    public PostingBitmap() {
+    }
+
+    /**
+     * Constructs a copy of another bitmap.
+     *
+     * @param other the bitmap to copy
+     */
+    public PostingBitmap(PostingBitmap other) {
+        keys = Arrays.copyOf(other.keys, Math.max(1, other.chunkCount));
+        containers = new Container[keys.length];
+        for (int i = 0; i < other.chunkCount; i++) {
+            containers[i] = other.containers[i].copy();
+        }
+        chunkCount = other.chunkCount;
+    }
+
+    /**
+     * Adds an ordinal.
+     *
+     * @param ordinal the ordinal, which must not be negative
+     */
+    public void add(int ordinal) {
+        char key = (char) (ordinal >>> 16);
+        int index = findChunk(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) ordinal);
+    }
+
+    /**
+     * Removes an ordinal if present.
+     *
+     * @param ordinal the ordinal
+     */
+    public void remove(int ordinal) {
+        int index = findChunk((char) (ordinal >>> 16));
+        if (index >= 0) {
+            containers[index] = containers[index].remove((char) ordinal);
+            if (containers[index].cardinality == 0) {
+                removeChunk(index);
+            }
+        }
+    }
+
+    /**
+     * Checks whether an ordinal is present.
+     *
+     * @param ordinal the ordinal
+     * @return true if the bitmap contains the ordinal, false otherwise
+     */
+    public boolean contains(int ordinal) {
+        int index = findChunk((char) (ordinal >>> 16));
+        return index >= 0 && containers[index].contains((char) ordinal);
+    }
+
+    /**
+     * Returns the number of ordinals.
+     *
+     * @return the number of ordinals in the bitmap
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Checks whether the bitmap holds no ordinals.
+     *
+     * @return true if the bitmap is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    /**
+     * Keeps only the ordinals also in another bitmap.
+     *
+     * @param other the bitmap to intersect with
+     */
+    public void and(PostingBitmap other) {
+        int kept = 0;
+        for (int i = 0, j = 0; i < chunkCount && j < other.chunkCount; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container result = containers[i].and(other.containers[j]);
+                if (result.cardinality > 0) {
+                    keys[kept] = keys[i];
+                    containers[kept++] = result;
+                }
+                i++;
+                j++;
+            }
+        }
+        Arrays.fill(containers, kept, chunkCount, null);
+        chunkCount = kept;
+    }
+
+    /**
+     * Removes the ordinals that are in another bitmap.
+     *
+     * @param other the bitmap to subtract
+     */
+    public void andNot(PostingBitmap other) {
+        int kept = 0;
+        for (int i = 0, j = 0; i < chunkCount; i++) {
+            while (j < other.chunkCount && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container result = containers[i];
+            if (j < other.chunkCount && other.keys[j] == keys[i]) {
+                result = result.andNot(other.containers[j]);
+            }
+            if (result.cardinality > 0) {
+                keys[kept] = keys[i];
+                containers[kept++] = result;
+            }
+        }
+        Arrays.fill(containers, kept, chunkCount, null);
+        chunkCount = kept;
+    }
+
+    /**
+     * Adds the ordinals of another bitmap.
+     *
+     * @param other the bitmap to unite with
+     */
+    public void or(PostingBitmap other) {
+        int total = chunkCount + other.chunkCount;
+        char[] mergedKeys = new char[Math.max(1, total)];
+        Container[] merged = new Container[mergedKeys.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount || j < other.chunkCount) {
+            if (j == other.chunkCount || (i < chunkCount && keys[i] < other.keys[j])) {
+                mergedKeys[count] = keys[i];
+                merged[count++] = containers[i++];
+            } else if (i == chunkCount || keys[i] > other.keys[j]) {
+                mergedKeys[count] = other.keys[j];
+                merged[count++] = other.containers[j++].copy();
+            } else {
+                mergedKeys[count] = keys[i];
+                merged[count++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        keys = mergedKeys;
+        containers = merged;
+        chunkCount = count;
+    }
+
+    /**
+     * Unites many bitmaps at once, such as the postings of every value starting with a prefix.
+     * Each chunk is gathered and sorted once instead of merging sorted arrays over and over.
+     *
+     * @param bitmaps the bitmaps to unite, which are not changed
+     * @return a new bitmap of every ordinal in any of the bitmaps
+     */
+    public static PostingBitmap union(List<PostingBitmap> bitmaps) {
+        if (bitmaps.size() == 1) {
+            return new PostingBitmap(bitmaps.get(0));
+        }
+        // Each chunk is gathered in a growing array until it holds too many values, then in a
+        // bitset. The inputs are visited once, since they are scattered across memory.
+        char[][] arrays = new char[1][];
+        int[] filled = new int[1];
+        long[][] bitsets = new long[1][];
+        for (PostingBitmap bitmap : bitmaps) {
+            for (int i = 0; i < bitmap.chunkCount; i++) {
+                char key = bitmap.keys[i];
+                Container container = bitmap.containers[i];
+                if (key >= arrays.length) {
+                    int length = Math.max(key + 1, arrays.length * 2);
+                    arrays = Arrays.copyOf(arrays, length);
+                    filled = Arrays.copyOf(filled, length);
+                    bitsets = Arrays.copyOf(bitsets, length);
+                }
+                if (bitsets[key] == null && filled[key] + container.cardinality > ARRAY_MAX) {
+                    bitsets[key] = new long[BITSET_WORDS];
+                    if (arrays[key] != null) {
+                        new ArrayContainer(arrays[key], filled[key]).orInto(bitsets[key]);
+                        arrays[key] = null;
+                    }
+                }
+                if (bitsets[key] != null) {
+                    container.orInto(bitsets[key]);
+                    continue;
+                }
+                int needed = filled[key] + container.cardinality;
+                if (arrays[key] == null) {
+                    arrays[key] = new char[Math.max(16, needed)];
+                } else if (needed > arrays[key].length) {
+                    arrays[key] = Arrays.copyOf(arrays[key], Math.min(ARRAY_MAX, Math.max(needed, arrays[key].length * 2)));
+                }
+                filled[key] = container.copyInto(arrays[key], filled[key]);
+            }
+        }
+
+        PostingBitmap result = new PostingBitmap();
+        for (int key = 0; key < arrays.length; key++) {
+            Container container;
+            if (bitsets[key] != null) {
+                int cardinality = 0;
+                for (long word : bitsets[key]) {
+                    cardinality += Long.bitCount(word);
+                }
+                container = new BitsetContainer(bitsets[key], cardinality).shrinkIfSparse();
+            } else if (arrays[key] != null) {
+                char[] values = arrays[key];
+                Arrays.sort(values, 0, filled[key]);
+                int count = 1;
+                for (int i = 1; i < filled[key]; i++) {
+                    if (values[i] != values[count - 1]) {
+                        values[count++] = values[i];
+                    }
+                }
+                container = new ArrayContainer(values, count);
+            } else {
+                continue;
+            }
+            result.insertChunk(result.chunkCount, (char) key, container);
+        }
+        return result;
+    }
+
+    /**
+     * Visits every ordinal in increasing order.
+     *
+     * @param action receives each ordinal
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < chunkCount; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * Estimates the memory used by the bitmap, for comparing index layouts.
+     *
+     * @return the approximate size in bytes
+     */
+    public long sizeInBytes() {
+        long size = 16 + 2L * keys.length + 4L * containers.length;
+        for (int i = 0; i < chunkCount; i++) {
+            size += containers[i].sizeInBytes();
+        }
+        return size;
+    }
+
+    private int findChunk(char key) {
+        return Arrays.binarySearch(keys, 0, chunkCount, key);
+    }
+
+    private void insertChunk(int index, char key, Container container) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, chunkCount * 2);
+            containers = Arrays.copyOf(containers, chunkCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+        System.arraycopy(containers, index, containers, index + 1, chunkCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        chunkCount++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, chunkCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, chunkCount - index - 1);
+        containers[--chunkCount] = null;
+    }
+
+    /**
+     * The low 16 bits of the ordinals in one chunk. Operations may return a different kind of
+     * container when the number of ordinals crosses {@link #ARRAY_MAX}. Adding, removing and uniting
+     * may change the container itself; intersecting and subtracting return a new one.
+     */
+    private abstract static class Container {
+        int cardinality;
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container copy();
+
+        abstract void orInto(long[] words);
+
+        abstract int copyInto(char[] out, int offset);
+
+        abstract void forEach(int base, IntConsumer action);
+
+        abstract long sizeInBytes();
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] values;
+
+        ArrayContainer() {
+            values = new char[4];
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitset().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+                if (cardinality < values.length / 4) {
+                    values = Arrays.copyOf(values, values.length / 2); // Give back memory of removed photos
+                }
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            if (other instanceof BitsetContainer) {
+                BitsetContainer bitset = (BitsetContainer) other;
+                for (int i = 0; i < cardinality; i++) {
+                    if (bitset.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0, j = 0; i < cardinality && j < array.cardinality; ) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitsetContainer) {
+                return other.copy().or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if (cardinality + array.cardinality > ARRAY_MAX) {
+                BitsetContainer bitset = toBitset();
+                for (int i = 0; i < array.cardinality; i++) {
+                    bitset.set(array.values[i]);
+                }
+                return bitset.shrinkIfSparse();
+            }
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < array.cardinality) {
+                if (values[i] < array.values[j]) {
+                    result[count++] = values[i++];
+                } else if (values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < cardinality) {
+                result[count++] = values[i++];
+            }
+            while (j < array.cardinality) {
+                result[count++] = array.values[j++];
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+
+        @Override
+        int copyInto(char[] out, int offset) {
+            System.arraycopy(values, 0, out, offset, cardinality);
+            return offset + cardinality;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32 + 2L * values.length;
+        }
+
+        BitsetContainer toBitset() {
+            BitsetContainer bitset = new BitsetContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitset.set(values[i]);
+            }
+            return bitset;
+        }
+    }
+
+    private static final class BitsetContainer extends Container {
+        final long[] words;
+
+        BitsetContainer() {
+            words = new long[BITSET_WORDS];
+        }
+
+        BitsetContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        void set(char value) {
+            long bit = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & bit) == 0) {
+                words[word] |= bit;
+                cardinality++;
+            }
+        }
+
+        @Override
+        Container add(char value) {
+            set(value);
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long bit = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & bit) != 0) {
+                words[word] &= ~bit;
+                cardinality--;
+            }
+            return shrinkIfSparse();
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitsetContainer) other).words;
+            long[] result = new long[BITSET_WORDS];
+            int count = 0;
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitsetContainer(result, count).shrinkIfSparse();
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            int count = cardinality;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    char value = array.values[i];
+                    long bit = 1L << value;
+                    if ((result[value >>> 6] & bit) != 0) {
+                        result[value >>> 6] &= ~bit;
+                        count--;
+                    }
+                }
+            } else {
+                long[] otherWords = ((BitsetContainer) other).words;
+                count = 0;
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result[i] &= ~otherWords[i];
+                    count += Long.bitCount(result[i]);
+                }
+            }
+            return new BitsetContainer(result, count).shrinkIfSparse();
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    set(array.values[i]);
+                }
+            } else {
+                long[] otherWords = ((BitsetContainer) other).words;
+                int count = 0;
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    words[i] |= otherWords[i];
+                    count += Long.bitCount(words[i]);
+                }
+                cardinality = count;
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new BitsetContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void orInto(long[] target) {
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                target[i] |= words[i];
+            }
+        }
+
+        @Override
+        int copyInto(char[] out, int offset) {
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    out[offset++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32 + 8L * BITSET_WORDS;
+        }
+
+        Container shrinkIfSparse() {
+            if (cardinality > ARRAY_MAX) {
+                return this;
+            }
+            char[] values = new char[Math.max(1, cardinality)];
+            int count = 0;
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
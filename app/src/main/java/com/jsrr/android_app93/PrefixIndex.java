@@ -0,0 +1,231 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code PrefixIndex} class maps the lowercase values of one tag type to the ordinals of the photos
+ * carrying them, kept in a {@link PostingBitmap} per value. The values are kept in a sorted array, so
+ * all values starting with a prefix form one contiguous range that two binary searches find.
+ * Collecting the photos of a prefix therefore only visits the matching values, and the lookup itself
+ * allocates nothing.
+ *
+ * <p>Values that contain a piece of text anywhere are found with a {@link TrigramIndex}, which is
+ * only built on the first such search, since most searches are by prefix.
+ *
+ * <p>Features of the {@code PrefixIndex} class include:
+ * <ul>
+ *   <li>Adding and removing a photo ordinal under a value</li>
+ *   <li>Finding the range of values that start with a prefix</li>
+ *   <li>Collecting and counting the photos of a prefix</li>
+ *   <li>Collecting and counting the photos of values containing some text</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class PrefixIndex {
+    // Parallel lists: values in sorted order and the photo ordinals of each value
+    private final List<String> values = new ArrayList<>();
+    private final List<PostingBitmap> photos = new ArrayList<>();
+    private TrigramIndex trigrams = null;
+
+    /**
+     * Constructs an empty {@code PrefixIndex}.
+     */
+    public PrefixIndex() {
+    }
+
+    /**
+     * Constructs a {@code PrefixIndex} from the photo ordinals of each value, sorting the values once
+     * instead of inserting them one by one.
+     *
+     * @param postings the photo ordinals of each lowercase value
+     */
+    public PrefixIndex(Map<String, PostingBitmap> postings) {
+        values.addAll(postings.keySet());
+        Collections.sort(values);
+        for (String value : values) {
+            photos.add(postings.get(value));
+        }
+    }
+
+    /**
+     * Adds a photo under a value. A new value is inserted at its sorted position.
+     *
+     * @param value   the lowercase tag value
+     * @param ordinal the ordinal of the photo carrying the tag
+     */
+    public void add(String value, int ordinal) {
+        int index = Collections.binarySearch(values, value);
+        if (index < 0) {
+            index = -index - 1;
+            values.add(index, value);
+            photos.add(index, new PostingBitmap());
+            if (trigrams != null) {
+                trigrams.add(value);
+            }
+        }
+        photos.get(index).add(ordinal);
+    }
+
+    /**
+     * Removes a photo from a value. A value left without photos is removed.
+     *
+     * @param value   the lowercase tag value
+     * @param ordinal the ordinal of the photo that no longer carries the tag
+     */
+    public void remove(String value, int ordinal) {
+        int index = Collections.binarySearch(values, value);
+        if (index >= 0) {
+            photos.get(index).remove(ordinal);
+            if (photos.get(index).isEmpty()) {
+                values.remove(index);
+                photos.remove(index);
+                if (trigrams != null) {
+                    trigrams.remove(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the first value that starts with the prefix, if any.
+     *
+     * @param prefix the lowercase prefix
+     * @return the first position whose value is not less than the prefix
+     */
+    public int rangeStart(String prefix) {
+        int index = Collections.binarySearch(values, prefix);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * Returns the position after the last value that starts with the prefix.
+     *
+     * @param prefix the lowercase prefix
+     * @param start  the position returned by {@link #rangeStart}
+     * @return the end of the range, exclusive
+     */
+    public int rangeEnd(String prefix, int start) {
+        int low = start;
+        int high = values.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values.get(middle).startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the value at a position.
+     *
+     * @param index the position
+     * @return the lowercase tag value
+     */
+    public String valueAt(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Returns the photo ordinals of the value at a position. The bitmap must not be modified.
+     *
+     * @param index the position
+     * @return the ordinals of the photos carrying the value
+     */
+    public PostingBitmap photosAt(int index) {
+        return photos.get(index);
+    }
+
+    /**
+     * Collects the photo ordinals of every value starting with the prefix.
+     *
+     * @param prefix the lowercase prefix
+     * @return a new bitmap of the ordinals
+     */
+    public PostingBitmap collect(String prefix) {
+        int start = rangeStart(prefix);
+        int end = rangeEnd(prefix, start);
+        return start == end ? new PostingBitmap() : PostingBitmap.union(photos.subList(start, end));
+    }
+
+    /**
+     * Counts the photos of every value starting with the prefix, without collecting them.
+     * A photo carrying two such values is counted twice.
+     *
+     * @param prefix the lowercase prefix
+     * @return the number of photos found under the matching values
+     */
+    public int count(String prefix) {
+        int start = rangeStart(prefix);
+        int end = rangeEnd(prefix, start);
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            count += photos.get(i).cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * Collects the photo ordinals of every value containing the text.
+     *
+     * @param text the lowercase text
+     * @return a new bitmap of the ordinals
+     */
+    public PostingBitmap collectContaining(String text) {
+        List<PostingBitmap> matches = new ArrayList<>();
+        for (String value : trigrams().find(text)) {
+            matches.add(photos.get(Collections.binarySearch(values, value)));
+        }
+        return PostingBitmap.union(matches);
+    }
+
+    /**
+     * Counts the photos of every value containing the text, without collecting them.
+     * A photo carrying two such values is counted twice.
+     *
+     * @param text the lowercase text
+     * @return the number of photos found under the matching values
+     */
+    public int countContaining(String text) {
+        int count = 0;
+        for (String value : trigrams().find(text)) {
+            count += photos.get(Collections.binarySearch(values, value)).cardinality();
+        }
+        return count;
+    }
+
+    private TrigramIndex trigrams() {
+        if (trigrams == null) {
+            trigrams = new TrigramIndex();
+            for (String value : values) {
+                trigrams.add(value);
+            }
+        }
+        return trigrams;
+    }
+
+    /**
+     * Returns the number of distinct values.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Checks whether the index holds no values.
+     *
+     * @return true if the index is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+}
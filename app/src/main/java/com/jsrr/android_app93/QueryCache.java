@@ -0,0 +1,160 @@
+package com.jsrr.android_app93;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code QueryCache} class keeps the results of recent searches for the whole app, so a search
+ * that is run again, even from a new {@link SearchActivity}, is answered without searching the
+ * library. Queries are compared in their normalized form, so differences in case, surrounding
+ * spaces or the order of AND and OR operands do not matter. The least recently used results are
+ * dropped once the cache is full.
+ *
+ * <p>Results are only valid for the search generation they were computed at, from
+ * {@link Data#getSearchGeneration()}. A search at a newer generation drops every result, and a search
+ * that finishes after the generation has moved on is not kept. With a {@link MemoryPhotoRepository}
+ * the results are kept as a {@link PostingBitmap} of photo ordinals, which ordinals stay valid for
+ * as long as the generation does not change.
+ *
+ * <p>Several search threads may use the cache at once, so it is synchronized; searches themselves
+ * run outside the lock.
+ *
+ * <p>Features of the {@code QueryCache} class include:
+ * <ul>
+ *   <li>Returning the results of a repeated query without searching</li>
+ *   <li>Dropping the least recently used results beyond a fixed number of queries</li>
+ *   <li>Dropping every result when the search generation changes</li>
+ *   <li>Counting hits and misses</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class QueryCache {
+    private static final int MAX_ENTRIES = 64;
+
+    private static QueryCache instance;
+
+    private final Map<PhotoQuery, Entry> entries;
+    private long generation = -1;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    /**
+     * The results of one query in the repository that found them, as ordinals when the repository
+     * has them and as photos otherwise.
+     */
+    private static class Entry {
+        final PhotoRepository repository;
+        final PostingBitmap ordinals;
+        final Set<Photo> photos;
+
+        Entry(PhotoRepository repository, PostingBitmap ordinals, Set<Photo> photos) {
+            this.repository = repository;
+            this.ordinals = ordinals;
+            this.photos = photos;
+        }
+    }
+
+    /**
+     * Constructs a {@code QueryCache} holding the results of at most the given number of queries.
+     *
+     * @param maxEntries the number of queries to keep results for
+     */
+    public QueryCache(int maxEntries) {
+        // Access order, so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<PhotoQuery, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PhotoQuery, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by the whole app.
+     *
+     * @return the shared query cache
+     */
+    public static synchronized QueryCache getInstance() {
+        if (instance == null) {
+            instance = new QueryCache(MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    /**
+     * Answers a query from the cache if possible, otherwise by searching the repository.
+     *
+     * @param query      the query to answer
+     * @param repository the repository to search on a miss
+     * @param generation the current search generation, from {@link Data#getSearchGeneration()}
+     * @return the matching photos, which must not be modified
+     */
+    public Set<Photo> search(PhotoQuery query, PhotoRepository repository, long generation) {
+        Entry entry;
+        synchronized (this) {
+            if (generation > this.generation) {
+                entries.clear();
+                this.generation = generation;
+            }
+            entry = generation == this.generation ? entries.get(query) : null;
+            if (entry != null && entry.repository != repository) {
+                entry = null; // Ordinals only mean something to the repository that gave them out
+            }
+            if (entry != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        if (entry != null) {
+            return entry.ordinals != null
+                    ? ((MemoryPhotoRepository) repository).photosOf(entry.ordinals)
+                    : entry.photos;
+        }
+
+        Set<Photo> results = query.run(repository);
+        if (repository instanceof MemoryPhotoRepository) {
+            entry = new Entry(repository, ((MemoryPhotoRepository) repository).ordinalsOf(results), null);
+        } else {
+            entry = new Entry(repository, null, Collections.unmodifiableSet(results));
+        }
+        synchronized (this) {
+            // Results of a search that started before the library changed are already stale
+            if (generation == this.generation) {
+                entries.put(query, entry);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of searches answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of searches that had to search the repository.
+     *
+     * @return the number of misses
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of queries whose results are kept.
+     *
+     * @return the number of cached queries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
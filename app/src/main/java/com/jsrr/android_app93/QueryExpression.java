@@ -0,0 +1,864 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@code QueryExpression} class is a typed tag query such as
+ * {@code person:alice AND (location:nj OR location:ny) AND NOT person:bob}, as read by
+ * {@link QueryParser}. Each term matches the photos with a tag of its type whose value starts with
+ * its text, or contains it anywhere for a term such as {@code location:*york}. A caption term such
+ * as {@code caption:sun} matches the photos with a caption word starting with its text. Terms are
+ * combined with AND, OR and NOT.
+ *
+ * <p>Running an AND is planned from the number of photos each term matches, which the repository
+ * counts without fetching them. {@link MemoryPhotoRepository} runs the plan on bitmaps of photo
+ * ordinals, and other repositories on sets of photos. The most selective term is fetched first and
+ * each further term narrows it: a term matching fewer photos than are left is fetched and
+ * intersected, otherwise the photos left are checked against it directly.
+ * {@link MemoryPhotoRepository} checks its own copies of the photos, as the photos of the library
+ * may be changing on the main thread. Planning stops as soon as nothing is left, so a term that matches
+ * nothing costs one count. NOT may only exclude photos from an AND, so a query never has to list
+ * the whole library.
+ *
+ * <p>Features of the {@code QueryExpression} class include:
+ * <ul>
+ *   <li>Building terms and AND, OR and NOT combinations</li>
+ *   <li>Estimating how many photos an expression matches</li>
+ *   <li>Running an expression with the most selective terms first</li>
+ *   <li>Recognising an expression whose results are a subset of another's</li>
+ *   <li>Scoring how closely a photo matches, for ranking results</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public abstract class QueryExpression implements PhotoQuery {
+
+    /**
+     * Creates a term matching the photos with a tag of the given type whose value starts with the
+     * given text. The text is trimmed and lowercased.
+     *
+     * @param tagType the tag type
+     * @param prefix  the beginning of the tag value
+     * @return the term
+     */
+    public static QueryExpression term(String tagType, String prefix) {
+        return new Term(tagType.toLowerCase(), prefix.toLowerCase().trim());
+    }
+
+    /**
+     * Creates a term matching the photos with a tag of the given type whose value contains the
+     * given text anywhere. The text is trimmed and lowercased.
+     *
+     * @param tagType the tag type
+     * @param text    the text to find in the tag value
+     * @return the term
+     */
+    public static QueryExpression contains(String tagType, String text) {
+        return new Substring(tagType.toLowerCase(), text.toLowerCase().trim());
+    }
+
+    /**
+     * Creates a term matching the photos whose caption has words starting with each word of the
+     * given text, in any order. The text is split and folded by {@link CaptionTokenizer}.
+     *
+     * @param text the beginnings of caption words
+     * @return the term, an AND of one term per word if there are several
+     */
+    public static QueryExpression caption(String text) {
+        List<QueryExpression> words = new ArrayList<>();
+        for (String word : CaptionTokenizer.words(text)) {
+            words.add(new CaptionWord(word));
+        }
+        return words.isEmpty() ? new CaptionWord("") : and(words);
+    }
+
+    /**
+     * Combines expressions so that photos must match all of them. Nested ANDs are flattened.
+     *
+     * @param operands the expressions, at least one of which is not a NOT
+     * @return the combined expression, or the operand itself if there is only one
+     */
+    public static QueryExpression and(List<QueryExpression> operands) {
+        List<QueryExpression> flat = new ArrayList<>();
+        for (QueryExpression operand : operands) {
+            if (operand instanceof And) {
+                flat.addAll(((And) operand).operands);
+            } else {
+                flat.add(operand);
+            }
+        }
+        return flat.size() == 1 ? flat.get(0) : new And(flat);
+    }
+
+    /**
+     * Combines expressions so that photos must match at least one of them. Nested ORs are flattened.
+     *
+     * @param operands the expressions, none of which is a NOT
+     * @return the combined expression, or the operand itself if there is only one
+     */
+    public static QueryExpression or(List<QueryExpression> operands) {
+        List<QueryExpression> flat = new ArrayList<>();
+        for (QueryExpression operand : operands) {
+            if (operand instanceof Or) {
+                flat.addAll(((Or) operand).operands);
+            } else {
+                flat.add(operand);
+            }
+        }
+        return flat.size() == 1 ? flat.get(0) : new Or(flat);
+    }
+
+    /**
+     * Negates an expression. It may only be used as an operand of an AND.
+     *
+     * @param operand the expression whose photos are excluded
+     * @return the negated expression
+     */
+    public static QueryExpression not(QueryExpression operand) {
+        return operand instanceof Not ? ((Not) operand).operand : new Not(operand);
+    }
+
+    /**
+     * Finds the matching photos. The repository decides how, usually with {@link #plan}.
+     *
+     * @param repository the repository to search
+     * @return a new modifiable set of the matching photos
+     */
+    @Override
+    public Set<Photo> run(PhotoRepository repository) {
+        return repository.findPhotos(this);
+    }
+
+    /**
+     * Finds the matching photos with the tag searches and counts of a repository.
+     *
+     * @param repository the repository to search
+     * @return a new modifiable set of the matching photos
+     */
+    abstract Set<Photo> plan(PhotoRepository repository);
+
+    /**
+     * Finds the ordinals of the matching photos with bitmap operations on an in-memory index.
+     * Must be called while holding the lock of the repository.
+     *
+     * @param repository the repository whose index is searched
+     * @return a new bitmap of the matching ordinals
+     */
+    abstract PostingBitmap evaluate(MemoryPhotoRepository repository);
+
+    /**
+     * Estimates the number of photos this expression matches. The estimate is never too low.
+     *
+     * @param repository the repository to count in
+     * @return the most photos this expression can match
+     */
+    abstract long estimate(PhotoRepository repository);
+
+    /**
+     * Checks whether this expression narrows an earlier one.
+     *
+     * @param earlier the earlier expression
+     * @param negated whether both are excluded by a NOT, which turns narrowing around
+     * @return true if every result of this expression is a result of the earlier one
+     */
+    abstract boolean narrows(QueryExpression earlier, boolean negated);
+
+    abstract void appendTo(StringBuilder out);
+
+    /**
+     * Checks whether every result of this expression is also a result of an earlier one. That holds
+     * when both have the same structure, each included term only got longer and each excluded term
+     * only got shorter, as when the user types at the end of a term.
+     *
+     * @param earlier the earlier query
+     * @return true if this expression narrows the earlier one, false otherwise
+     */
+    @Override
+    public boolean narrows(PhotoQuery earlier) {
+        return earlier instanceof QueryExpression && narrows((QueryExpression) earlier, false);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        appendTo(out);
+        return out.toString();
+    }
+
+    /**
+     * Checks whether a prefix matches a subset of the values an earlier prefix matches.
+     * An empty prefix matches nothing, so only an empty prefix narrows it.
+     *
+     * @param prefix  the lowercase prefix
+     * @param earlier the earlier lowercase prefix
+     * @return true if the prefix narrows the earlier one, false otherwise
+     */
+    static boolean narrowsPrefix(String prefix, String earlier) {
+        return prefix.startsWith(earlier) && (!earlier.isEmpty() || prefix.isEmpty());
+    }
+
+    /**
+     * Checks whether text matches a subset of the values earlier text matches anywhere in them.
+     * Empty text matches nothing, so only empty text narrows it.
+     *
+     * @param text    the lowercase text
+     * @param earlier the earlier lowercase text
+     * @return true if the text narrows the earlier text, false otherwise
+     */
+    static boolean narrowsSubstring(String text, String earlier) {
+        return text.contains(earlier) && (!earlier.isEmpty() || text.isEmpty());
+    }
+
+    /**
+     * Checks whether a photo has a tag of a type whose value starts with a prefix.
+     *
+     * @param photo   the photo to check
+     * @param tagType the tag type
+     * @param prefix  the lowercase prefix, which matches nothing if empty
+     * @return true if the photo has a matching tag, false otherwise
+     */
+    static boolean hasTag(Photo photo, String tagType, String prefix) {
+        if (prefix.isEmpty()) {
+            return false;
+        }
+        for (Tag tag : photo.getTags()) {
+            if (tag.getName().equalsIgnoreCase(tagType) && tag.getValue().toLowerCase().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a photo has a tag of a type whose value contains some text.
+     *
+     * @param photo   the photo to check
+     * @param tagType the tag type
+     * @param text    the lowercase text, which matches nothing if empty
+     * @return true if the photo has a matching tag, false otherwise
+     */
+    static boolean hasTagContaining(Photo photo, String tagType, String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (Tag tag : photo.getTags()) {
+            if (tag.getName().equalsIgnoreCase(tagType) && tag.getValue().toLowerCase().contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scores the tag of a type that best fits some text: equal to it, starting with it, or
+     * containing it.
+     *
+     * @param photo   the photo to score
+     * @param tagType the tag type
+     * @param text    the lowercase text, which fits nothing if empty
+     * @return {@link #EXACT}, {@link #PREFIX}, {@link #SUBSTRING}, or 0 if no tag contains the text
+     */
+    static int tagRelevance(Photo photo, String tagType, String text) {
+        int best = 0;
+        if (text.isEmpty()) {
+            return best;
+        }
+        for (Tag tag : photo.getTags()) {
+            if (tag.getName().equalsIgnoreCase(tagType)) {
+                String value = tag.getValue().toLowerCase();
+                if (value.equals(text)) {
+                    return EXACT;
+                } else if (value.startsWith(text)) {
+                    best = PREFIX;
+                } else if (best == 0 && value.contains(text)) {
+                    best = SUBSTRING;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static class Term extends QueryExpression {
+        final String tagType;
+        final String prefix;
+
+        Term(String tagType, String prefix) {
+            this.tagType = tagType;
+            this.prefix = prefix;
+        }
+
+        @Override
+        Set<Photo> plan(PhotoRepository repository) {
+            return repository.findPhotosByTag(tagType, prefix);
+        }
+
+        @Override
+        PostingBitmap evaluate(MemoryPhotoRepository repository) {
+            return repository.findOrdinals(tagType, prefix);
+        }
+
+        @Override
+        public boolean matches(Photo photo) {
+            return hasTag(photo, tagType, prefix);
+        }
+
+        @Override
+        public int relevance(Photo photo) {
+            return tagRelevance(photo, tagType, prefix);
+        }
+
+        @Override
+        long estimate(PhotoRepository repository) {
+            return prefix.isEmpty() ? 0 : repository.countPhotosByTag(tagType, prefix);
+        }
+
+        @Override
+        boolean narrows(QueryExpression earlier, boolean negated) {
+            if (!(earlier instanceof Term) || !tagType.equals(((Term) earlier).tagType)) {
+                return false;
+            }
+            String earlierPrefix = ((Term) earlier).prefix;
+            // Excluding a longer prefix excludes fewer photos
+            return negated ? narrowsPrefix(earlierPrefix, prefix) : narrowsPrefix(prefix, earlierPrefix);
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            out.append(tagType).append(':');
+            // A prefix starting with * is quoted so it is not read back as text to find anywhere
+            if (prefix.isEmpty() || prefix.startsWith("*") || !prefix.matches("[^\\s()\"]+")) {
+                out.append('"').append(prefix).append('"');
+            } else {
+                out.append(prefix);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Term)) return false;
+            Term other = (Term) obj;
+            return tagType.equals(other.tagType) && prefix.equals(other.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tagType.hashCode() + prefix.hashCode();
+        }
+    }
+
+    private static class Substring extends QueryExpression {
+        final String tagType;
+        final String text;
+
+        Substring(String tagType, String text) {
+            this.tagType = tagType;
+            this.text = text;
+        }
+
+        @Override
+        Set<Photo> plan(PhotoRepository repository) {
+            return repository.findPhotosContaining(tagType, text);
+        }
+
+        @Override
+        PostingBitmap evaluate(MemoryPhotoRepository repository) {
+            return repository.findContainingOrdinals(tagType, text);
+        }
+
+        @Override
+        public boolean matches(Photo photo) {
+            return hasTagContaining(photo, tagType, text);
+        }
+
+        @Override
+        public int relevance(Photo photo) {
+            return tagRelevance(photo, tagType, text);
+        }
+
+        @Override
+        long estimate(PhotoRepository repository) {
+            return text.isEmpty() ? 0 : repository.countPhotosContaining(tagType, text);
+        }
+
+        @Override
+        boolean narrows(QueryExpression earlier, boolean negated) {
+            if (!(earlier instanceof Substring) || !tagType.equals(((Substring) earlier).tagType)) {
+                return false;
+            }
+            String earlierText = ((Substring) earlier).text;
+            return negated ? narrowsSubstring(earlierText, text) : narrowsSubstring(text, earlierText);
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            out.append(tagType).append(":*");
+            if (text.isEmpty() || !text.matches("[^\\s()\"]+")) {
+                out.append('"').append(text).append('"');
+            } else {
+                out.append(text);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Substring)) return false;
+            Substring other = (Substring) obj;
+            return tagType.equals(other.tagType) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 17 + 31 * tagType.hashCode() + text.hashCode();
+        }
+    }
+
+    private static class CaptionWord extends QueryExpression {
+        final String prefix;
+
+        CaptionWord(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        Set<Photo> plan(PhotoRepository repository) {
+            return repository.findPhotosByCaption(prefix);
+        }
+
+        @Override
+        PostingBitmap evaluate(MemoryPhotoRepository repository) {
+            return repository.findCaptionOrdinals(prefix);
+        }
+
+        @Override
+        public boolean matches(Photo photo) {
+            return CaptionTokenizer.hasWord(photo.getCaption(), prefix);
+        }
+
+        @Override
+        public int relevance(Photo photo) {
+            int best = 0;
+            if (prefix.isEmpty()) {
+                return best;
+            }
+            for (String word : CaptionTokenizer.words(photo.getCaption())) {
+                if (word.equals(prefix)) {
+                    return EXACT;
+                } else if (word.startsWith(prefix)) {
+                    best = PREFIX;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        long estimate(PhotoRepository repository) {
+            return prefix.isEmpty() ? 0 : repository.countPhotosByCaption(prefix);
+        }
+
+        @Override
+        boolean narrows(QueryExpression earlier, boolean negated) {
+            if (!(earlier instanceof CaptionWord)) {
+                return false;
+            }
+            String earlierPrefix = ((CaptionWord) earlier).prefix;
+            return negated ? narrowsPrefix(earlierPrefix, prefix) : narrowsPrefix(prefix, earlierPrefix);
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            out.append("caption:");
+            if (prefix.isEmpty()) {
+                out.append("\"\"");
+            } else {
+                out.append(prefix);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CaptionWord && prefix.equals(((CaptionWord) obj).prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return 37 + prefix.hashCode();
+        }
+    }
+
+    private static class And extends QueryExpression {
+        final List<QueryExpression> operands;
+
+        final Set<QueryExpression> operandSet;
+
+        And(List<QueryExpression> operands) {
+            this.operands = Collections.unmodifiableList(operands);
+            this.operandSet = new HashSet<>(operands);
+        }
+
+        @Override
+        Set<Photo> plan(PhotoRepository repository) {
+            Plan plan = new Plan(operands, repository);
+            if (plan.nothingMatches) {
+                return new LinkedHashSet<>();
+            }
+            Set<Photo> matches = plan.included.get(0).run(repository);
+            for (int i = 1; i < plan.included.size() && !matches.isEmpty(); i++) {
+                matches = narrow(matches, plan.included.get(i), plan.estimates[i], true, repository);
+            }
+            for (int i = 0; i < plan.excluded.size() && !matches.isEmpty(); i++) {
+                matches = narrow(matches, plan.excluded.get(i), plan.excludedEstimates[i], false, repository);
+            }
+            return matches;
+        }
+
+        @Override
+        PostingBitmap evaluate(MemoryPhotoRepository repository) {
+            Plan plan = new Plan(operands, repository);
+            if (plan.nothingMatches) {
+                return new PostingBitmap();
+            }
+            PostingBitmap matches = plan.included.get(0).evaluate(repository);
+            for (int i = 1; i < plan.included.size() && !matches.isEmpty(); i++) {
+                matches = narrow(matches, plan.included.get(i), plan.estimates[i], true, repository);
+            }
+            for (int i = 0; i < plan.excluded.size() && !matches.isEmpty(); i++) {
+                matches = narrow(matches, plan.excluded.get(i), plan.excludedEstimates[i], false, repository);
+            }
+            return matches;
+        }
+
+        // Checks the photos left directly, on all cores, when there are fewer of them than the operand
+        // matches. The photos are copies found by the repository, so no thread changes them meanwhile
+        private static Set<Photo> narrow(Set<Photo> matches, QueryExpression operand, long estimate,
+                                         boolean keep, PhotoRepository repository) {
+            if (matches.size() < estimate) {
+                return ParallelScanner.getInstance().filter(matches, photo -> operand.matches(photo) == keep);
+            }
+            if (keep) {
+                matches.retainAll(operand.run(repository));
+            } else {
+                matches.removeAll(operand.run(repository));
+            }
+            return matches;
+        }
+
+        // Checks the index's copies of the photos left in the same way, as the library itself may be changing
+        private static PostingBitmap narrow(PostingBitmap matches, QueryExpression operand, long estimate,
+                                            boolean keep, MemoryPhotoRepository repository) {
+            if (matches.cardinality() < estimate) {
+                int[] ordinals = new int[matches.cardinality()];
+                Photo[] copies = new Photo[ordinals.length];
+                int[] filled = new int[1];
+                matches.forEach(ordinal -> {
+                    ordinals[filled[0]] = ordinal;
+                    copies[filled[0]++] = repository.copyAt(ordinal);
+                });
+                boolean[] matched = ParallelScanner.getInstance()
+                        .check(copies, photo -> operand.matches(photo) == keep);
+                PostingBitmap kept = new PostingBitmap();
+                for (int i = 0; i < ordinals.length; i++) {
+                    if (matched[i]) {
+                        kept.add(ordinals[i]);
+                    }
+                }
+                return kept;
+            }
+            if (keep) {
+                matches.and(operand.evaluate(repository));
+            } else {
+                matches.andNot(operand.evaluate(repository));
+            }
+            return matches;
+        }
+
+        @Override
+        public boolean matches(Photo photo) {
+            for (QueryExpression operand : operands) {
+                if (!operand.matches(photo)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int relevance(Photo photo) {
+            int relevance = 0;
+            for (QueryExpression operand : operands) {
+                relevance += operand.relevance(photo);
+            }
+            return relevance;
+        }
+
+        @Override
+        long estimate(PhotoRepository repository) {
+            long estimate = Long.MAX_VALUE;
+            for (QueryExpression operand : operands) {
+                if (!(operand instanceof Not)) {
+                    estimate = Math.min(estimate, operand.estimate(repository));
+                }
+            }
+            return estimate;
+        }
+
+        @Override
+        boolean narrows(QueryExpression earlier, boolean negated) {
+            return earlier instanceof And && narrowsAll(operands, ((And) earlier).operands, negated);
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            for (int i = 0; i < operands.size(); i++) {
+                if (i > 0) {
+                    out.append(" AND ");
+                }
+                appendOperand(out, operands.get(i));
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            // The order of the operands does not change the results
+            return obj instanceof And && operandSet.equals(((And) obj).operandSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return operandSet.hashCode();
+        }
+    }
+
+    /**
+     * The order in which an AND looks up its operands: the included ones from the most to the least
+     * selective, then the excluded ones. Excluded operands that match nothing are left out.
+     */
+    private static class Plan {
+        final List<QueryExpression> included = new ArrayList<>();
+        final List<QueryExpression> excluded = new ArrayList<>();
+        long[] estimates;
+        long[] excludedEstimates;
+        boolean nothingMatches = false;
+
+        Plan(List<QueryExpression> operands, PhotoRepository repository) {
+            List<QueryExpression> positive = new ArrayList<>();
+            List<Long> positiveEstimates = new ArrayList<>();
+            List<Long> negativeEstimates = new ArrayList<>();
+            for (QueryExpression operand : operands) {
+                if (operand instanceof Not) {
+                    QueryExpression negated = ((Not) operand).operand;
+                    long estimate = negated.estimate(repository);
+                    if (estimate > 0) {
+                        excluded.add(negated);
+                        negativeEstimates.add(estimate);
+                    }
+                } else {
+                    long estimate = operand.estimate(repository);
+                    if (estimate == 0) {
+                        nothingMatches = true; // Nothing can match every operand
+                        return;
+                    }
+                    positive.add(operand);
+                    positiveEstimates.add(estimate);
+                }
+            }
+            if (positive.isEmpty()) {
+                nothingMatches = true;
+                return;
+            }
+            Integer[] order = new Integer[positive.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(positiveEstimates.get(a), positiveEstimates.get(b)));
+            estimates = new long[order.length];
+            for (int i = 0; i < order.length; i++) {
+                included.add(positive.get(order[i]));
+                estimates[i] = positiveEstimates.get(order[i]);
+            }
+            excludedEstimates = new long[excluded.size()];
+            for (int i = 0; i < excludedEstimates.length; i++) {
+                excludedEstimates[i] = negativeEstimates.get(i);
+            }
+        }
+    }
+
+    private static class Or extends QueryExpression {
+        final List<QueryExpression> operands;
+
+        final Set<QueryExpression> operandSet;
+
+        Or(List<QueryExpression> operands) {
+            this.operands = Collections.unmodifiableList(operands);
+            this.operandSet = new HashSet<>(operands);
+        }
+
+        @Override
+        Set<Photo> plan(PhotoRepository repository) {
+            Set<Photo> matches = new LinkedHashSet<>();
+            for (QueryExpression operand : operands) {
+                matches.addAll(operand.run(repository));
+            }
+            return matches;
+        }
+
+        @Override
+        PostingBitmap evaluate(MemoryPhotoRepository repository) {
+            PostingBitmap matches = operands.get(0).evaluate(repository);
+            for (int i = 1; i < operands.size(); i++) {
+                matches.or(operands.get(i).evaluate(repository));
+            }
+            return matches;
+        }
+
+        @Override
+        public boolean matches(Photo photo) {
+            for (QueryExpression operand : operands) {
+                if (operand.matches(photo)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int relevance(Photo photo) {
+            // Photos matching more of the alternatives come first
+            int relevance = 0;
+            for (QueryExpression operand : operands) {
+                relevance += operand.relevance(photo);
+            }
+            return relevance;
+        }
+
+        @Override
+        long estimate(PhotoRepository repository) {
+            long estimate = 0;
+            for (QueryExpression operand : operands) {
+                estimate += operand.estimate(repository);
+            }
+            return estimate;
+        }
+
+        @Override
+        boolean narrows(QueryExpression earlier, boolean negated) {
+            return earlier instanceof Or && narrowsAll(operands, ((Or) earlier).operands, negated);
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            for (int i = 0; i < operands.size(); i++) {
+                if (i > 0) {
+                    out.append(" OR ");
+                }
+                operands.get(i).appendTo(out);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            // The order of the operands does not change the results
+            return obj instanceof Or && operandSet.equals(((Or) obj).operandSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 + operandSet.hashCode();
+        }
+    }
+
+    private static class Not extends QueryExpression {
+        final QueryExpression operand;
+
+        Not(QueryExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        Set<Photo> plan(PhotoRepository repository) {
+            throw new IllegalStateException("NOT can only exclude photos from an AND");
+        }
+
+        @Override
+        PostingBitmap evaluate(MemoryPhotoRepository repository) {
+            throw new IllegalStateException("NOT can only exclude photos from an AND");
+        }
+
+        @Override
+        public boolean matches(Photo photo) {
+            return !operand.matches(photo);
+        }
+
+        @Override
+        public int relevance(Photo photo) {
+            return 0;
+        }
+
+        @Override
+        long estimate(PhotoRepository repository) {
+            throw new IllegalStateException("NOT can only exclude photos from an AND");
+        }
+
+        @Override
+        boolean narrows(QueryExpression earlier, boolean negated) {
+            return earlier instanceof Not && operand.narrows(((Not) earlier).operand, !negated);
+        }
+
+        @Override
+        void appendTo(StringBuilder out) {
+            out.append("NOT ");
+            appendOperand(out, operand);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Not && operand.equals(((Not) obj).operand);
+        }
+
+        @Override
+        public int hashCode() {
+            return -operand.hashCode();
+        }
+    }
+
+    /**
+     * Checks whether an expression is a NOT, which may only be an operand of an AND.
+     *
+     * @param expression the expression to check
+     * @return true if the expression is negated, false otherwise
+     */
+    static boolean isNegated(QueryExpression expression) {
+        return expression instanceof Not;
+    }
+
+    private static boolean narrowsAll(List<QueryExpression> operands, List<QueryExpression> earlier,
+                                      boolean negated) {
+        if (operands.size() != earlier.size()) {
+            return false;
+        }
+        for (int i = 0; i < operands.size(); i++) {
+            if (!operands.get(i).narrows(earlier.get(i), negated)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendOperand(StringBuilder out, QueryExpression operand) {
+        if (operand instanceof And || operand instanceof Or) {
+            out.append('(');
+            operand.appendTo(out);
+            out.append(')');
+        } else {
+            operand.appendTo(out);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.jsrr.android_app93;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code QueryParser} class reads a typed tag query into a {@link QueryExpression}.
+ * A term is a tag type and the beginning of a value separated by a colon, such as {@code person:al}
+ * or {@code location:"new york"}. A value starting with {@code *} is found anywhere in the tag, so
+ * {@code location:*york} matches "New York". The type {@code caption} searches caption words
+ * instead of tags, so {@code caption:"sunny be"} matches captions with a word starting with "sunny"
+ * and one starting with "be". Terms are combined with AND, OR and NOT in any case,
+ * AND binds tighter than OR, parentheses group, and terms next to each other are joined by AND.
+ * NOT may only exclude photos from an AND that includes some, as in
+ * {@code person:alice AND NOT person:bob}.
+ *
+ * <p>Features of the {@code QueryParser} class include:
+ * <ul>
+ *   <li>Reading quoted and unquoted term values, to match at the start or anywhere</li>
+ *   <li>Reading caption terms alongside tag terms</li>
+ *   <li>Reporting the position of a mistake in the query</li>
+ *   <li>Recognising text that is meant as a typed query</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class QueryParser {
+    private static final String CAPTION = "caption";
+
+    private final String text;
+    private int position = 0;
+
+    private QueryParser(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Checks whether search text is a typed query rather than a single tag value.
+     *
+     * @param text the search text
+     * @return true if the text contains a term, false otherwise
+     */
+    public static boolean isQuery(String text) {
+        return text.indexOf(':') >= 0;
+    }
+
+    /**
+     * Reads a typed query.
+     *
+     * @param text the query text
+     * @return the query
+     * @throws ParseException if the text is not a valid query; the offset is where the mistake is
+     */
+    public static QueryExpression parse(String text) throws ParseException {
+        QueryParser parser = new QueryParser(text);
+        QueryExpression expression = parser.parseOr();
+        parser.skipSpaces();
+        if (!parser.atEnd()) {
+            throw new ParseException("Unexpected \"" + parser.text.charAt(parser.position) + "\"", parser.position);
+        }
+        return expression;
+    }
+
+    private QueryExpression parseOr() throws ParseException {
+        List<QueryExpression> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while (acceptKeyword("OR")) {
+            operands.add(parseAnd());
+        }
+        return QueryExpression.or(operands);
+    }
+
+    private QueryExpression parseAnd() throws ParseException {
+        List<QueryExpression> operands = new ArrayList<>();
+        int firstNot = -1;
+        boolean included = false;
+        while (true) {
+            skipSpaces();
+            int start = position;
+            QueryExpression operand = parseUnary();
+            if (QueryExpression.isNegated(operand)) {
+                firstNot = firstNot < 0 ? start : firstNot;
+            } else {
+                included = true;
+            }
+            operands.add(operand);
+
+            // Terms next to each other are joined by AND
+            if (!acceptKeyword("AND") && !startsOperand()) {
+                break;
+            }
+        }
+        if (!included) {
+            throw new ParseException("NOT needs a tag to exclude from, as in person:alice AND NOT person:bob", firstNot);
+        }
+        return QueryExpression.and(operands);
+    }
+
+    private QueryExpression parseUnary() throws ParseException {
+        skipSpaces();
+        if (acceptKeyword("NOT")) {
+            return QueryExpression.not(parseUnary());
+        }
+        if (accept('(')) {
+            QueryExpression expression = parseOr();
+            skipSpaces();
+            if (!accept(')')) {
+                throw new ParseException("Missing \")\"", position);
+            }
+            return expression;
+        }
+        return parseTerm();
+    }
+
+    private QueryExpression parseTerm() throws ParseException {
+        int start = position;
+        String word = readWord();
+        int colon = word.indexOf(':');
+        if (colon <= 0) {
+            String found;
+            if (!word.isEmpty()) {
+                found = "\"" + word + "\"";
+            } else {
+                found = atEnd() ? "the end" : "\"" + text.charAt(position) + "\"";
+            }
+            throw new ParseException("Expected a tag like person:alice but found " + found, start);
+        }
+        String value = word.substring(colon + 1);
+        boolean anywhere = value.startsWith("*");
+        if (anywhere) {
+            value = value.substring(1);
+        }
+        if (value.isEmpty() && accept('"')) {
+            // A quoted value may contain spaces; a quote left open runs to the end while typing
+            int close = text.indexOf('"', position);
+            int end = close < 0 ? text.length() : close;
+            value = text.substring(position, end);
+            position = close < 0 ? end : end + 1;
+        }
+        String tagType = word.substring(0, colon);
+        if (tagType.equalsIgnoreCase(CAPTION)) {
+            if (anywhere) {
+                throw new ParseException("Captions are searched by the beginning of their words", start + colon + 1);
+            }
+            return QueryExpression.caption(value);
+        }
+        return anywhere ? QueryExpression.contains(tagType, value) : QueryExpression.term(tagType, value);
+    }
+
+    private String readWord() {
+        int start = position;
+        while (!atEnd() && !isDelimiter(text.charAt(position))) {
+            position++;
+        }
+        return text.substring(start, position);
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        skipSpaces();
+        if (atKeyword(keyword)) {
+            position += keyword.length();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean atKeyword(String keyword) {
+        int end = position + keyword.length();
+        return text.regionMatches(true, position, keyword, 0, keyword.length())
+                && (end == text.length() || isDelimiter(text.charAt(end)));
+    }
+
+    private boolean startsOperand() {
+        skipSpaces();
+        return !atEnd() && text.charAt(position) != ')' && !atKeyword("OR");
+    }
+
+    private boolean accept(char c) {
+        if (!atEnd() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces() {
+        while (!atEnd() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean atEnd() {
+        return position >= text.length();
+    }
+
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+    }
+}
@@ -0,0 +1,123 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The {@code RankedResults} class hands out the results of a search one page at a time, best first.
+ * Photos are ranked by their {@link PhotoQuery#relevance}, so an exact tag match comes before a
+ * prefix match, which comes before text found inside a tag, and then by date, newest first.
+ *
+ * <p>Sorting every result before showing any would cost as much for a one-letter query matching the
+ * whole library as for showing it all. Instead the results are arranged into a binary heap, which
+ * takes linear time, and each page is taken off the top of the heap. The first page is ready almost
+ * at once, and later pages are only ranked if the user scrolls to them.
+ *
+ * <p>Ranking runs on the search thread, so the results must be the detached copies a
+ * {@link PhotoRepository} finds, never photos of the library that the main thread may be changing.
+ *
+ * <p>Features of the {@code RankedResults} class include:
+ * <ul>
+ *   <li>Scoring every result once</li>
+ *   <li>Taking the next best page of results</li>
+ *   <li>Telling whether more results are left</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class RankedResults {
+    private final Photo[] photos;
+    private final int[] relevance;
+    private final long[] dates;
+    // A binary heap of positions in the arrays above, with the best photo at the top
+    private final int[] heap;
+    private int remaining;
+
+    /**
+     * Ranks the results of a search.
+     *
+     * @param results the copies of the matching photos, which must not change
+     * @param query   the query the photos match, or null to rank them by date only
+     */
+    public RankedResults(Collection<Photo> results, PhotoQuery query) {
+        photos = results.toArray(new Photo[0]);
+        relevance = new int[photos.length];
+        dates = new long[photos.length];
+        heap = new int[photos.length];
+        for (int i = 0; i < photos.length; i++) {
+            relevance[i] = query == null ? 0 : query.relevance(photos[i]);
+            dates[i] = photos[i].getDate();
+            heap[i] = i;
+        }
+        remaining = photos.length;
+        for (int i = remaining / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Takes the next best results off the heap.
+     *
+     * @param size the largest number of results to take
+     * @return a new list of the results, best first, which is empty once every result was taken
+     */
+    public synchronized List<Photo> nextPage(int size) {
+        List<Photo> page = new ArrayList<>(Math.min(size, remaining));
+        while (page.size() < size && remaining > 0) {
+            page.add(photos[heap[0]]);
+            heap[0] = heap[--remaining];
+            siftDown(0);
+        }
+        return page;
+    }
+
+    /**
+     * Checks whether some results have not been taken yet.
+     *
+     * @return true if more results are left, false otherwise
+     */
+    public synchronized boolean hasMore() {
+        return remaining > 0;
+    }
+
+    /**
+     * Returns the number of results of the search, taken or not.
+     *
+     * @return the number of results
+     */
+    public int size() {
+        return photos.length;
+    }
+
+    private void siftDown(int index) {
+        int photo = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= remaining) {
+                break;
+            }
+            if (child + 1 < remaining && isBetter(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!isBetter(heap[child], photo)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = photo;
+    }
+
+    // More relevant first, then newer, then by path so the order never depends on the set
+    private boolean isBetter(int a, int b) {
+        if (relevance[a] != relevance[b]) {
+            return relevance[a] > relevance[b];
+        }
+        if (dates[a] != dates[b]) {
+            return dates[a] > dates[b];
+        }
+        return photos[a].getPathName().compareTo(photos[b].getPathName()) < 0;
+    }
+}
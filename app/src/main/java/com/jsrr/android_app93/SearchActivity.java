@@ -4,14 +4,14 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
-import android.widget.EditText;
+import android.widget.AutoCompleteTextView;
+import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.TextView;
@@ -24,28 +24,40 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.io.Serializable;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 public class SearchActivity extends AppCompatActivity {
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    // Results shown at first and added each time the grid nears its end, a multiple of the 3 columns
+    private static final int PAGE_SIZE = 60;
 
-    private EditText searchEditText;
+    private AutoCompleteTextView searchEditText;
     private RecyclerView resultsRecyclerView;
     private SearchResultsAdapter searchResultsAdapter;
     private List<Photo> searchResults;
     private Spinner tagTypeSpinner;
     private String selectedTagType = "Location"; // Default selection
-    private EditText secondSearchEditText;
+    private AutoCompleteTextView secondSearchEditText;
     private Spinner secondTagTypeSpinner;
     private RadioGroup logicalOperatorGroup;
+    private CheckBox anywhereCheckBox;
+    private final SearchExecutor searchExecutor = new SearchExecutor(SEARCH_DEBOUNCE_MS, PAGE_SIZE);
+    // Only used on the search thread
+    private final SearchHistory searchHistory = new SearchHistory(QueryCache.getInstance());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_search);
 
+        // Wait for the albums, which may still be loading or not loaded at all after a restore
+        Data.loadData(this);
+
         // Set up the action bar with back button
         ActionBar actionBar = getSupportActionBar();
         if (actionBar != null) {
@@ -57,6 +69,7 @@ public class SearchActivity extends AppCompatActivity {
         secondSearchEditText = findViewById(R.id.second_search_edit_text);
         secondTagTypeSpinner = findViewById(R.id.second_tag_type_spinner);
         logicalOperatorGroup = findViewById(R.id.logical_operator_group);
+        anywhereCheckBox = findViewById(R.id.anywhere_check_box);
         searchEditText = findViewById(R.id.search_edit_text);
         resultsRecyclerView = findViewById(R.id.search_results_recycler_view);
         tagTypeSpinner = findViewById(R.id.tag_type_spinner);
@@ -65,11 +78,56 @@ public class SearchActivity extends AppCompatActivity {
         setupTagTypeSpinner(tagTypeSpinner);
         setupTagTypeSpinner(secondTagTypeSpinner);
 
+        // Suggest the most frequent values of the selected tag type while typing
+        TagSuggestionAdapter suggestions = new TagSuggestionAdapter(this, Data.getSuggester(), selectedTagType);
+        TagSuggestionAdapter secondSuggestions = new TagSuggestionAdapter(this, Data.getSuggester(),
+                secondTagTypeSpinner.getSelectedItem().toString());
+        searchEditText.setAdapter(suggestions);
+        secondSearchEditText.setAdapter(secondSuggestions);
+        tagTypeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                String tagType = parent.getItemAtPosition(position).toString();
+                if (!tagType.equals(selectedTagType)) {
+                    selectedTagType = tagType;
+                    suggestions.setTagType(tagType);
+                    searchPhotos(searchEditText.getText().toString(), false);
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Not needed
+            }
+        });
+        secondTagTypeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                secondSuggestions.setTagType(parent.getItemAtPosition(position).toString());
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Not needed
+            }
+        });
+
         // Set up RecyclerView
         resultsRecyclerView.setLayoutManager(new GridLayoutManager(this, 3));
         searchResults = new ArrayList<>();
         searchResultsAdapter = new SearchResultsAdapter(searchResults);
         resultsRecyclerView.setAdapter(searchResultsAdapter);
+        resultsRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                // Rank the next page once the last page is half scrolled through
+                GridLayoutManager layout = (GridLayoutManager) recyclerView.getLayoutManager();
+                if (dy > 0 && layout != null
+                        && layout.findLastVisibleItemPosition() >= searchResults.size() - PAGE_SIZE / 2) {
+                    searchExecutor.loadMore(SearchActivity.this::showMoreResults);
+                }
+            }
+        });
 
         // Set up search text listener
         searchEditText.addTextChangedListener(new TextWatcher() {
@@ -85,7 +143,7 @@ public class SearchActivity extends AppCompatActivity {
 
             @Override
             public void afterTextChanged(Editable s) {
-                searchPhotos(s.toString());
+                searchPhotos(s.toString(), true);
             }
         });
 
@@ -105,14 +163,19 @@ public class SearchActivity extends AppCompatActivity {
             public void afterTextChanged(Editable s) {
                 // Only trigger search if not in "NEITHER" mode
                 if (logicalOperatorGroup.getCheckedRadioButtonId() != R.id.neither_radio) {
-                    searchPhotos(searchEditText.getText().toString());
+                    searchPhotos(searchEditText.getText().toString(), true);
                 }
             }
         });
 
         // Setup radio group listener to update search when changing operators
         logicalOperatorGroup.setOnCheckedChangeListener((group, checkedId) -> {
-            searchPhotos(searchEditText.getText().toString());
+            searchPhotos(searchEditText.getText().toString(), false);
+        });
+
+        // Finding the text anywhere in tag values uses the trigram index instead of the prefix index
+        anywhereCheckBox.setOnCheckedChangeListener((button, isChecked) -> {
+            searchPhotos(searchEditText.getText().toString(), false);
         });
     }
 
@@ -126,43 +189,61 @@ public class SearchActivity extends AppCompatActivity {
         spinner.setAdapter(adapter);
     }
 
-    private void searchPhotos(String primaryQuery) {
-        String secondaryQuery = secondSearchEditText.getText().toString().toLowerCase().trim();
+    private void searchPhotos(String primaryQuery, boolean debounce) {
+        String secondaryQuery = secondSearchEditText.getText().toString();
         String secondTagType = secondTagTypeSpinner.getSelectedItem().toString();
 
-        int selectedRadioButtonId = logicalOperatorGroup.getCheckedRadioButtonId();
-        boolean isAndSearch = selectedRadioButtonId == R.id.and_radio;
-        boolean isOrSearch = selectedRadioButtonId == R.id.or_radio;
-        boolean isNeitherSearch = selectedRadioButtonId == R.id.neither_radio;
-
-        String primaryTagType = selectedTagType;
-        String primaryQueryLower = primaryQuery.toLowerCase().trim();
+        PhotoQuery photoQuery;
+        if (QueryParser.isQuery(primaryQuery)) {
+            // A typed query such as "person:alice AND NOT location:nj" replaces the other fields
+            try {
+                photoQuery = QueryParser.parse(primaryQuery);
+                searchEditText.setError(null);
+            } catch (ParseException e) {
+                searchExecutor.cancel();
+                searchEditText.setError(e.getMessage());
+                return;
+            }
+        } else {
+            // In "NEITHER" mode only the primary query is considered
+            int selectedRadioButtonId = logicalOperatorGroup.getCheckedRadioButtonId();
+            TagQuery.Operator operator;
+            if (selectedRadioButtonId == R.id.and_radio) {
+                operator = TagQuery.Operator.AND;
+            } else if (selectedRadioButtonId == R.id.or_radio) {
+                operator = TagQuery.Operator.OR;
+            } else if (selectedRadioButtonId == R.id.neither_radio) {
+                operator = TagQuery.Operator.SINGLE;
+            } else {
+                operator = TagQuery.Operator.NONE;
+            }
+            photoQuery = new TagQuery(selectedTagType, primaryQuery, operator, secondTagType, secondaryQuery,
+                    anywhereCheckBox.isChecked());
+        }
 
-        searchResults.clear();
+        // The lookups run on the search thread; only the best page of results comes back to the UI,
+        // and further pages are ranked as the grid scrolls.
+        // Recent results kept in the history are reused while the query is typed or deleted,
+        // and searches run before, even by an earlier search screen, come from the query cache.
+        PhotoRepository repository = Data.getRepository();
+        long generation = Data.getSearchGeneration();
+        Callable<Set<Photo>> query = () -> searchHistory.search(photoQuery, repository, generation);
+        if (debounce) {
+            searchExecutor.submit(query, photoQuery, this::showResults);
+        } else {
+            searchExecutor.submitNow(query, photoQuery, this::showResults);
+        }
+    }
 
-        for (Album album : Data.getAlbums()) {
-            for (Photo photo : album.getPhotos()) {
-                boolean matchesPrimary = hasMatchingTag(photo, primaryTagType, primaryQueryLower);
-                boolean matchesSecondary = hasMatchingTag(photo, secondTagType, secondaryQuery);
-
-                boolean shouldInclude = false;
-
-                if (isNeitherSearch) {
-                    // Only consider the primary query
-                    shouldInclude = matchesPrimary;
-                } else if (isAndSearch) {
-                    // Must match both queries
-                    shouldInclude = matchesPrimary && matchesSecondary;
-                } else if (isOrSearch) {
-                    // Must match at least one query
-                    shouldInclude = matchesPrimary || matchesSecondary;
-                }
+    private void showMoreResults(List<Photo> page) {
+        int start = searchResults.size();
+        searchResults.addAll(page);
+        searchResultsAdapter.notifyItemRangeInserted(start, page.size());
+    }
 
-                if (shouldInclude && !searchResults.contains(photo)) {
-                    searchResults.add(photo);
-                }
-            }
-        }
+    private void showResults(List<Photo> results) {
+        searchResults.clear();
+        searchResults.addAll(results);
 
         searchResultsAdapter.notifyDataSetChanged();
         TextView emptyResultsText = findViewById(R.id.empty_results_text);
@@ -175,24 +256,10 @@ public class SearchActivity extends AppCompatActivity {
         }
     }
 
-    private boolean hasMatchingTag(Photo photo, String tagType, String query) {
-        if (query.isEmpty()) {
-            return false; // Don't match empty queries
-        }
-
-        for (Tag tag : photo.getTags()) {
-            if (tag.getName().equalsIgnoreCase(tagType) &&
-                    tag.getValue().toLowerCase().startsWith(query)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean matchesTagTypeAndQuery(Tag tag, String query) {
-        // Match based on both tag type and query
-        return tag.getName().equals(selectedTagType) &&
-                (query.isEmpty() || tag.getValue().toLowerCase().contains(query));
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchExecutor.shutdown();
     }
 
     @Override
@@ -230,19 +297,9 @@ public class SearchActivity extends AppCompatActivity {
                 holder.photoNameTextView.setText(photo.getCaption());
             }
 
-            // Display the photo thumbnail
+            // Display the photo thumbnail once it is decoded in the background
             if (holder.photoImageView != null) {
-                try {
-                    holder.photoImageView.setImageBitmap(photo.getThumbnail(holder.itemView.getContext()));
-                    if (holder.photoImageView.getDrawable() == null) {
-                        Log.e("SearchActivity", "Failed to load thumbnail for " + photo.getCaption());
-                        // Set a placeholder or default image
-                        holder.photoImageView.setImageResource(android.R.drawable.ic_menu_gallery);
-                    }
-                } catch (Exception e) {
-                    Log.e("SearchActivity", "Error displaying photo: " + e.getMessage());
-                    holder.photoImageView.setImageResource(android.R.drawable.ic_menu_gallery);
-                }
+                ImageLoader.getInstance(holder.itemView.getContext()).load(photo, holder.photoImageView);
             }
 
             // Set click listener to open the photo detail view
@@ -254,6 +311,16 @@ public class SearchActivity extends AppCompatActivity {
             });
         }
 
+        @Override
+        public void onViewRecycled(@NonNull SearchResultViewHolder holder) {
+            super.onViewRecycled(holder);
+            // Stop decoding for a cell scrolled away
+            if (holder.photoImageView != null) {
+                ImageLoader.getInstance(holder.itemView.getContext()).cancel(holder.photoImageView);
+                holder.photoImageView.setImageBitmap(null);
+            }
+        }
+
         @Override
         public int getItemCount() {
             return photos.size();
@@ -0,0 +1,278 @@
+package com.jsrr.android_app93;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * The {@code SearchExecutor} class runs photo searches on a background thread.
+ * A search only starts once input has been quiet for a short delay, a newer search cancels the one
+ * still running, and only the results of the newest search are delivered, on the main thread.
+ * Results are ranked by {@link RankedResults} and delivered a page at a time: the first page as
+ * soon as the search is done, and each further page when {@link #loadMore} asks for it.
+ *
+ * <p>Features of the {@code SearchExecutor} class include:
+ * <ul>
+ *   <li>Debouncing searches while the user is typing</li>
+ *   <li>Cancelling stale searches and dropping their results</li>
+ *   <li>Delivering results to the main thread in order</li>
+ *   <li>Measuring search latency</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class SearchExecutor {
+    private static final String TAG = "SearchExecutor";
+
+    private final long debounceMs;
+    private final int pageSize;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only touched on the main thread
+    private long generation = 0;
+    private Runnable pendingStart;
+    private Future<?> inFlight;
+    private int completedCount = 0;
+    private int cancelledCount = 0;
+    private long lastQueryMs = 0;
+    private long lastLatencyMs = 0;
+    // The results of the last delivered search, and the generation they belong to
+    private RankedResults results;
+    private long resultsGeneration = -1;
+    private boolean loadingMore = false;
+
+    /**
+     * Constructs a {@code SearchExecutor} with the given quiet period that delivers all results at once.
+     *
+     * @param debounceMs how long input must be quiet before a search starts, in milliseconds
+     */
+    public SearchExecutor(long debounceMs) {
+        this(debounceMs, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a {@code SearchExecutor} with the given quiet period that delivers pages of results.
+     *
+     * @param debounceMs how long input must be quiet before a search starts, in milliseconds
+     * @param pageSize   the number of results in each page
+     */
+    public SearchExecutor(long debounceMs, int pageSize) {
+        this.debounceMs = debounceMs;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Schedules a search after the quiet period, replacing any search not yet delivered.
+     * Must be called on the main thread.
+     *
+     * @param query    the search to run on the background thread
+     * @param callback receives the results on the main thread
+     */
+    public void submit(Callable<Set<Photo>> query, Consumer<List<Photo>> callback) {
+        submit(query, null, callback);
+    }
+
+    /**
+     * Schedules a search after the quiet period, replacing any search not yet delivered.
+     * Must be called on the main thread.
+     *
+     * @param query    the search to run on the background thread
+     * @param ranking  the query whose relevance ranks the results, or null to rank them by date
+     * @param callback receives the first page of results on the main thread
+     */
+    public void submit(Callable<Set<Photo>> query, PhotoQuery ranking, Consumer<List<Photo>> callback) {
+        schedule(query, ranking, callback, debounceMs);
+    }
+
+    /**
+     * Starts a search right away, for changes that are not typing, such as a new operator.
+     * Must be called on the main thread.
+     *
+     * @param query    the search to run on the background thread
+     * @param callback receives the results on the main thread
+     */
+    public void submitNow(Callable<Set<Photo>> query, Consumer<List<Photo>> callback) {
+        submitNow(query, null, callback);
+    }
+
+    /**
+     * Starts a search right away, for changes that are not typing, such as a new operator.
+     * Must be called on the main thread.
+     *
+     * @param query    the search to run on the background thread
+     * @param ranking  the query whose relevance ranks the results, or null to rank them by date
+     * @param callback receives the first page of results on the main thread
+     */
+    public void submitNow(Callable<Set<Photo>> query, PhotoQuery ranking, Consumer<List<Photo>> callback) {
+        schedule(query, ranking, callback, 0);
+    }
+
+    /**
+     * Ranks the next page of the results last delivered on the background thread, unless every
+     * result was delivered, a page is already being ranked, or a newer search was requested.
+     * Must be called on the main thread.
+     *
+     * @param callback receives the page on the main thread
+     */
+    public void loadMore(Consumer<List<Photo>> callback) {
+        if (!hasMore() || loadingMore) {
+            return;
+        }
+        loadingMore = true;
+        RankedResults ranked = results;
+        long current = generation;
+        executor.submit(() -> {
+            List<Photo> page = ranked.nextPage(pageSize);
+            mainHandler.post(() -> {
+                if (current == generation) {
+                    loadingMore = false;
+                    callback.accept(page);
+                }
+            });
+        });
+    }
+
+    /**
+     * Checks whether the newest search has results that were not delivered yet.
+     * Must be called on the main thread.
+     *
+     * @return true if {@link #loadMore} would deliver another page, false otherwise
+     */
+    public boolean hasMore() {
+        return results != null && resultsGeneration == generation && results.hasMore();
+    }
+
+    /**
+     * Cancels the pending and running searches. Their results are never delivered.
+     */
+    public void cancel() {
+        generation++;
+        results = null;
+        loadingMore = false;
+        if (pendingStart != null) {
+            mainHandler.removeCallbacks(pendingStart);
+            pendingStart = null;
+        }
+        cancelInFlight();
+    }
+
+    /**
+     * Cancels all searches and stops the background thread.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void schedule(Callable<Set<Photo>> query, PhotoQuery ranking, Consumer<List<Photo>> callback,
+                          long delayMs) {
+        long current = ++generation;
+        long requested = SystemClock.elapsedRealtime();
+        if (pendingStart != null) {
+            mainHandler.removeCallbacks(pendingStart);
+        }
+        pendingStart = () -> start(current, requested, query, ranking, callback);
+        mainHandler.postDelayed(pendingStart, delayMs);
+    }
+
+    private void start(long current, long requested, Callable<Set<Photo>> query, PhotoQuery ranking,
+                       Consumer<List<Photo>> callback) {
+        pendingStart = null;
+        cancelInFlight();
+        inFlight = executor.submit(() -> {
+            long start = SystemClock.elapsedRealtime();
+            RankedResults ranked;
+            List<Photo> firstPage;
+            try {
+                ranked = new RankedResults(query.call(), ranking);
+                firstPage = ranked.nextPage(pageSize);
+            } catch (InterruptedException e) {
+                return; // Cancelled by a newer search
+            } catch (Exception e) {
+                Log.e(TAG, "Search failed: " + e.getMessage(), e);
+                return;
+            }
+            long queryMs = SystemClock.elapsedRealtime() - start;
+            if (!Thread.currentThread().isInterrupted()) {
+                mainHandler.post(() -> deliver(current, requested, queryMs, ranked, firstPage, callback));
+            }
+        });
+    }
+
+    private void deliver(long current, long requested, long queryMs, RankedResults ranked, List<Photo> firstPage,
+                         Consumer<List<Photo>> callback) {
+        if (current != generation) {
+            return; // A newer search was requested while this one ran
+        }
+        inFlight = null;
+        results = ranked;
+        resultsGeneration = current;
+        loadingMore = false;
+        completedCount++;
+        lastQueryMs = queryMs;
+        lastLatencyMs = SystemClock.elapsedRealtime() - requested;
+        Log.d(TAG, "Search found " + ranked.size() + " photos in " + queryMs + " ms ("
+                + lastLatencyMs + " ms after the request)");
+        callback.accept(firstPage);
+    }
+
+    private void cancelInFlight() {
+        if (inFlight != null && !inFlight.isDone()) {
+            inFlight.cancel(true);
+            cancelledCount++;
+        }
+        inFlight = null;
+    }
+
+    /**
+     * Returns the number of searches whose results were delivered.
+     *
+     * @return the number of completed searches
+     */
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Returns the number of searches cancelled while running.
+     *
+     * @return the number of cancelled searches
+     */
+    public int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * Returns the time the most recent delivered search spent on the background thread.
+     *
+     * @return the query time in milliseconds
+     */
+    public long getLastQueryMs() {
+        return lastQueryMs;
+    }
+
+    /**
+     * Returns the time from the request of the most recent delivered search until its results
+     * arrived, including the quiet period.
+     *
+     * @return the latency in milliseconds
+     */
+    public long getLastLatencyMs() {
+        return lastLatencyMs;
+    }
+}
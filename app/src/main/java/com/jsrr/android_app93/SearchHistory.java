@@ -0,0 +1,138 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * The {@code SearchHistory} class keeps the results of the most recent searches so that the next
+ * search can reuse them. Deleting a character finds its results already on the stack, and unless
+ * the repository finds prefixes faster itself, typing another character only filters the previous
+ * results, on all cores with the {@link ParallelScanner}, instead of searching the whole library.
+ * Anything else is looked up in the {@link QueryCache} the history was given, if any, before the
+ * library is searched. Results are only reused while the search generation they were computed at
+ * is current.
+ *
+ * <p>Used by one search thread at a time, so it is not synchronized.
+ *
+ * <p>Features of the {@code SearchHistory} class include:
+ * <ul>
+ *   <li>Returning the results of a repeated query from the stack</li>
+ *   <li>Refining the results of a query the new one narrows</li>
+ *   <li>Counting how each search was answered</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class SearchHistory {
+    private static final int MAX_ENTRIES = 16;
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private final QueryCache cache;
+    private long generation = -1;
+    private int reusedCount = 0;
+    private int refinedCount = 0;
+    private int fullCount = 0;
+
+    private static class Entry {
+        final PhotoQuery query;
+        final Set<Photo> results;
+
+        Entry(PhotoQuery query, Set<Photo> results) {
+            this.query = query;
+            this.results = results;
+        }
+    }
+
+    /**
+     * Constructs a {@code SearchHistory} that searches the repository directly.
+     */
+    public SearchHistory() {
+        this(null);
+    }
+
+    /**
+     * Constructs a {@code SearchHistory} that looks up the queries it cannot answer in a cache.
+     *
+     * @param cache the cache shared with other searches, or null to search the repository directly
+     */
+    public SearchHistory(QueryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Answers a query from the stack if possible, otherwise by refining earlier results or by
+     * searching the repository through the cache.
+     *
+     * @param query          the query to answer
+     * @param repository     the repository to search when nothing can be reused
+     * @param generation the current search generation, from {@link Data#getSearchGeneration()}
+     * @return the matching photos, which must not be modified
+     */
+    public Set<Photo> search(PhotoQuery query, PhotoRepository repository, long generation) {
+        if (generation != this.generation) {
+            entries.clear();
+            this.generation = generation;
+        }
+
+        boolean refine = repository.prefersRefinement();
+        Entry narrowest = null;
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.query.equals(query)) {
+                // Move it to the top so backspacing through a query keeps hitting the stack
+                it.remove();
+                entries.push(entry);
+                reusedCount++;
+                return Collections.unmodifiableSet(entry.results);
+            }
+            if (refine && query.narrows(entry.query) && (narrowest == null || entry.results.size() < narrowest.results.size())) {
+                narrowest = entry;
+            }
+        }
+
+        Set<Photo> results;
+        if (narrowest != null) {
+            results = ParallelScanner.getInstance().filter(narrowest.results, query::matches);
+            refinedCount++;
+        } else {
+            results = cache != null ? cache.search(query, repository, generation) : query.run(repository);
+            fullCount++;
+        }
+        entries.push(new Entry(query, results));
+        if (entries.size() > MAX_ENTRIES) {
+            entries.removeLast();
+        }
+        return Collections.unmodifiableSet(results);
+    }
+
+    /**
+     * Returns the number of searches answered from the stack.
+     *
+     * @return the number of reused results
+     */
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Returns the number of searches answered by filtering earlier results.
+     *
+     * @return the number of refined results
+     */
+    public int getRefinedCount() {
+        return refinedCount;
+    }
+
+    /**
+     * Returns the number of searches that had to search the repository or the cache.
+     *
+     * @return the number of full searches
+     */
+    public int getFullCount() {
+        return fullCount;
+    }
+}
@@ -0,0 +1,331 @@
+package com.jsrr.android_app93;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code ShardStore} class keeps each album in its own shard file, listed by a small manifest.
+ * A compaction only rewrites the shards of albums that changed since they were last written,
+ * and loading decodes the shards in parallel.
+ *
+ * <p>The manifest holds the snapshot sequence and, per album, its name, photo count and shard file name.
+ * Replacing the manifest is the commit point of a compaction: new shards are written under new names
+ * first, and shards no longer listed are deleted afterwards.
+ *
+ * <p>Features of the {@code ShardStore} class include:
+ * <ul>
+ *   <li>Tracking which albums changed since their shard was written</li>
+ *   <li>Writing dirty shards and the manifest</li>
+ *   <li>Loading the manifest and decoding shards on a bounded thread pool</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class ShardStore implements LibraryListener {
+    private static final int MAGIC = 0x414C4D46; // "ALMF"
+    private static final int VERSION = 1;
+    private static final String SHARD_SUFFIX = ".shard";
+
+    public static final String manifestFile = "albums.manifest";
+    public static final String shardDirectory = "albums";
+
+    private static final ExecutorService decoder = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), r -> {
+                Thread thread = new Thread(r, "ShardDecoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final File manifest;
+    private final File directory;
+    private final Map<Album, String> shardFiles = new IdentityHashMap<>();
+    private final Set<Album> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    private volatile boolean rewriteAll = false;
+
+    /**
+     * Constructs a {@code ShardStore} that keeps its files in the given directory.
+     *
+     * @param filesDir the directory holding the manifest and the shard directory
+     */
+    public ShardStore(File filesDir) {
+        this.manifest = new File(filesDir, manifestFile);
+        this.directory = new File(filesDir, shardDirectory);
+    }
+
+    /**
+     * One compaction: the manifest to write and the copies of the albums whose shards must be rewritten.
+     */
+    public static class Plan {
+        private final long sequence;
+        private final List<String> names = new ArrayList<>();
+        private final List<Integer> photoCounts = new ArrayList<>();
+        private final List<String> files = new ArrayList<>();
+        private final List<Album> copies = new ArrayList<>();
+
+        Plan(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Returns the number of shards this plan rewrites.
+         *
+         * @return the number of dirty shards
+         */
+        public int getShardWriteCount() {
+            int count = 0;
+            for (Album copy : copies) {
+                if (copy != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public void onAlbumAdded(Album album) {
+        dirty.add(album);
+    }
+
+    @Override
+    public void onAlbumRemoved(Album album) {
+        dirty.remove(album);
+        shardFiles.remove(album);
+    }
+
+    @Override
+    public void onPhotoAdded(Album album, Photo photo) {
+        dirty.add(album);
+    }
+
+    @Override
+    public void onPhotoRemoved(Album album, Photo photo) {
+        dirty.add(album);
+    }
+
+    @Override
+    public void onTagAdded(Album album, Photo photo, Tag tag) {
+        dirty.add(album);
+    }
+
+    @Override
+    public void onTagRemoved(Album album, Photo photo, Tag tag) {
+        dirty.add(album);
+    }
+
+    @Override
+    public void onCaptionChanged(Album album, Photo photo, String oldCaption) {
+        dirty.add(album);
+    }
+
+    /**
+     * Checks whether a manifest has been written.
+     *
+     * @return true if the store exists, false otherwise
+     */
+    public boolean exists() {
+        return manifest.exists();
+    }
+
+    /**
+     * Makes the next compaction rewrite the shards of the given albums, for example albums changed
+     * by replaying the journal, whose changes no listener has seen.
+     *
+     * @param albums the albums whose shards are out of date
+     */
+    public void markDirty(Collection<Album> albums) {
+        dirty.addAll(albums);
+    }
+
+    /**
+     * Forces the next compaction to rewrite every shard, for example after a failed write.
+     */
+    public void requestRewriteAll() {
+        rewriteAll = true;
+    }
+
+    /**
+     * Decides which shards to rewrite and copies those albums. Runs on the main thread, so the
+     * copies are consistent with the albums at the time of the save. Renaming an album only changes
+     * the manifest, so it does not make its shard dirty.
+     *
+     * @param albums   the albums of the library
+     * @param sequence the sequence number of the new snapshot
+     * @return the plan for the writer thread
+     */
+    public Plan capture(Set<Album> albums, long sequence) {
+        Plan plan = new Plan(sequence);
+        boolean rewrite = rewriteAll;
+        rewriteAll = false;
+        int shardNumber = 0;
+        Map<Album, String> written = new IdentityHashMap<>();
+        for (Album album : albums) {
+            String file = shardFiles.get(album);
+            Album copy = null;
+            // An album that was never decoded cannot have changed, and its current shard must survive
+            if (file == null || dirty.contains(album) || (rewrite && album.getPendingBody() == null)) {
+                file = sequence + "-" + (shardNumber++) + SHARD_SUFFIX;
+                copy = album.copy();
+            }
+            written.put(album, file);
+            plan.names.add(album.getName());
+            plan.photoCounts.add(album.getPhotoCount());
+            plan.files.add(file);
+            plan.copies.add(copy);
+        }
+        shardFiles.clear();
+        shardFiles.putAll(written);
+        dirty.clear();
+        return plan;
+    }
+
+    /**
+     * Writes the dirty shards of a plan, then the manifest, then deletes shards that are no longer listed.
+     * Runs on the writer thread.
+     *
+     * @param plan the plan made by {@link #capture}
+     * @throws IOException if a file cannot be written
+     */
+    public void write(Plan plan) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        for (int i = 0; i < plan.files.size(); i++) {
+            File shard = new File(directory, plan.files.get(i));
+            Album copy = plan.copies.get(i);
+            if (copy != null) {
+                StoreCodec.writeShard(copy, shard);
+            } else if (!shard.exists()) {
+                throw new IOException("Missing shard " + shard.getName());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        StoreCodec.writeVarint(out, VERSION);
+        out.writeLong(plan.sequence);
+        StoreCodec.writeVarint(out, plan.files.size());
+        for (int i = 0; i < plan.files.size(); i++) {
+            writeString(out, plan.names.get(i));
+            StoreCodec.writeVarint(out, plan.photoCounts.get(i));
+            writeString(out, plan.files.get(i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        File tempFile = new File(manifest.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            bytes.writeTo(fileOut);
+            fileOut.getFD().sync();
+        }
+        if (!tempFile.renameTo(manifest)) {
+            throw new IOException("Could not replace " + manifestFile);
+        }
+
+        Set<String> listed = new HashSet<>(plan.files);
+        File[] existing = directory.listFiles();
+        if (existing != null) {
+            for (File file : existing) {
+                if (!listed.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the manifest. The albums keep their photos in their shard files until they are used
+     * or {@link #preload} decodes them.
+     *
+     * @return the albums and sequence number
+     * @throws IOException if the manifest is damaged
+     */
+    public StoreCodec.Snapshot load() throws IOException {
+        byte[] bytes = new byte[(int) manifest.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(manifest))) {
+            in.readFully(bytes);
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 4);
+            if (buffer.getInt(bytes.length - 4) != (int) crc.getValue()) {
+                throw new IOException("Manifest checksum mismatch");
+            }
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an album manifest");
+            }
+            int version = StoreCodec.readVarint(buffer);
+            if (version != VERSION) {
+                throw new IOException("Unsupported manifest version " + version);
+            }
+            long sequence = buffer.getLong();
+            int albumCount = StoreCodec.readVarint(buffer);
+            Set<Album> albums = new HashSet<>();
+            shardFiles.clear();
+            dirty.clear();
+            for (int i = 0; i < albumCount; i++) {
+                String name = readString(buffer);
+                int photoCount = StoreCodec.readVarint(buffer);
+                String file = readString(buffer);
+                Album album = new Album(name, photoCount, new StoreCodec.AlbumBody(new File(directory, file)));
+                albums.add(album);
+                shardFiles.put(album, file);
+            }
+            return new StoreCodec.Snapshot(albums, sequence);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt album manifest: " + e, e);
+        }
+    }
+
+    /**
+     * Decodes the shards of the given albums on a bounded thread pool. An album that is used before
+     * its shard has been decoded waits for it, or decodes it itself if the pool has not reached it yet.
+     *
+     * @param albums the albums to decode
+     * @return one future per album that still had to be decoded
+     */
+    public static List<Future<?>> preload(Collection<Album> albums) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Album album : albums) {
+            if (album.getPendingBody() != null) {
+                futures.add(decoder.submit(album::getPhotos));
+            }
+        }
+        return futures;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        StoreCodec.writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[StoreCodec.readVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,556 @@
+package com.jsrr.android_app93;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code SqlitePhotoRepository} class keeps the album library in a SQLite database with
+ * normalized album, photo, album_photo, tag and caption_word tables. It is used instead of the
+ * shard files when {@code use_sqlite_store} is set, which suits very large libraries.
+ *
+ * <p>The albums in {@link Data} stay the working copy of the library. Every change reported to
+ * this listener becomes a small transaction on a background thread, so nothing is ever rewritten
+ * in bulk, and tag searches are indexed lookups on (tag name, lowercase value), as caption searches
+ * are on the folded words of each caption. If a transaction fails, the database no longer matches the
+ * albums, so the next change or flush rewrites the whole library from the albums instead, and the
+ * failure is reported by {@link #flush}.
+ * Each photo of an album has its own photo row, since the same picture may be added to two albums
+ * with different captions and tags.
+ *
+ * <p>Features of the {@code SqlitePhotoRepository} class include:
+ * <ul>
+ *   <li>Creating the schema and its indexes</li>
+ *   <li>Writing each change to the library as a single-row transaction</li>
+ *   <li>Rewriting the whole library after a failed write</li>
+ *   <li>Loading the albums and importing a library kept in files</li>
+ *   <li>Finding and counting photos by tag prefix with an index range scan</li>
+ *   <li>Finding and counting photos by text anywhere in a tag value</li>
+ *   <li>Finding and counting photos by the beginning of a caption word</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class SqlitePhotoRepository extends SQLiteOpenHelper implements PhotoRepository, LibraryListener {
+    private static final String TAG = "SqlitePhotoRepository";
+    // Version 2 added the caption_word table, version 3 the date each photo was added
+    private static final int DATABASE_VERSION = 3;
+    // The largest code point, so every value starting with a prefix sorts below prefix + MAX_CHAR
+    private static final String MAX_CHAR = "\uDBFF\uDFFF";
+
+    public static final String databaseFile = "albums.db";
+
+    private static SqlitePhotoRepository instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private volatile boolean resyncRequested = false;
+    private volatile SQLException writeFailure = null;
+
+    /**
+     * Constructs a {@code SqlitePhotoRepository} on the given database file.
+     *
+     * @param context any context of the app
+     * @param name    the database file name, or null for a database held in memory
+     */
+    SqlitePhotoRepository(Context context, String name) {
+        super(context.getApplicationContext(), name, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Returns the repository shared by the whole app, creating it on first use.
+     *
+     * @param context any context of the app
+     * @return the shared repository
+     */
+    public static synchronized SqlitePhotoRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new SqlitePhotoRepository(context, databaseFile);
+        }
+        return instance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE album ("
+                + "id INTEGER PRIMARY KEY, "
+                + "name TEXT NOT NULL UNIQUE)");
+        db.execSQL("CREATE TABLE photo ("
+                + "id INTEGER PRIMARY KEY, "
+                + "path TEXT NOT NULL, "
+                + "caption TEXT, "
+                + "added INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE album_photo ("
+                + "album_id INTEGER NOT NULL REFERENCES album(id) ON DELETE CASCADE, "
+                + "photo_id INTEGER NOT NULL REFERENCES photo(id) ON DELETE CASCADE, "
+                + "PRIMARY KEY (album_id, photo_id)) WITHOUT ROWID");
+        db.execSQL("CREATE TABLE tag ("
+                + "photo_id INTEGER NOT NULL REFERENCES photo(id) ON DELETE CASCADE, "
+                + "name TEXT NOT NULL COLLATE NOCASE, "
+                + "value TEXT NOT NULL, "
+                + "value_lower TEXT NOT NULL, "
+                + "PRIMARY KEY (photo_id, name, value_lower)) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX photo_path ON photo(path)");
+        db.execSQL("CREATE INDEX album_photo_photo ON album_photo(photo_id)");
+        db.execSQL("CREATE INDEX tag_lookup ON tag(name, value_lower)");
+        createCaptionWords(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createCaptionWords(db);
+            try (Cursor cursor = db.rawQuery("SELECT id, caption FROM photo WHERE caption IS NOT NULL", null)) {
+                while (cursor.moveToNext()) {
+                    insertCaptionWords(db, cursor.getLong(0), cursor.getString(1));
+                }
+            }
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE photo ADD COLUMN added INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+
+    // The folded words of each caption, so caption searches are index range scans like tag searches
+    private static void createCaptionWords(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE caption_word ("
+                + "photo_id INTEGER NOT NULL REFERENCES photo(id) ON DELETE CASCADE, "
+                + "word TEXT NOT NULL, "
+                + "PRIMARY KEY (photo_id, word)) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX caption_word_lookup ON caption_word(word)");
+    }
+
+    @Override
+    public void onAlbumAdded(Album album) {
+        Album copy = album.copy();
+        execute("add album " + copy.getName(), db -> insertAlbum(db, copy));
+    }
+
+    @Override
+    public void onAlbumRemoved(Album album) {
+        String name = album.getName();
+        execute("remove album " + name, db -> {
+            db.execSQL("DELETE FROM photo WHERE id IN (SELECT ap.photo_id FROM album_photo ap "
+                    + "JOIN album a ON a.id = ap.album_id WHERE a.name = ?)", new Object[]{name});
+            db.delete("album", "name = ?", new String[]{name});
+        });
+    }
+
+    @Override
+    public void onAlbumRenamed(Album album, String oldName) {
+        String name = album.getName();
+        execute("rename album " + oldName, db -> {
+            ContentValues values = new ContentValues();
+            values.put("name", name);
+            db.update("album", values, "name = ?", new String[]{oldName});
+        });
+    }
+
+    @Override
+    public void onPhotoAdded(Album album, Photo photo) {
+        String albumName = album.getName();
+        Photo copy = photo.copy();
+        execute("add photo " + copy.getPathName(), db -> {
+            long albumId = albumId(db, albumName);
+            if (albumId >= 0) {
+                insertPhoto(db, albumId, copy);
+            }
+        });
+    }
+
+    @Override
+    public void onPhotoRemoved(Album album, Photo photo) {
+        String albumName = album.getName();
+        String path = photo.getPathName();
+        execute("remove photo " + path, db -> {
+            long photoId = photoId(db, albumName, path);
+            if (photoId >= 0) {
+                db.delete("photo", "id = ?", new String[]{Long.toString(photoId)});
+            }
+        });
+    }
+
+    @Override
+    public void onTagAdded(Album album, Photo photo, Tag tag) {
+        String albumName = album.getName();
+        String path = photo.getPathName();
+        execute("add tag " + tag, db -> {
+            long photoId = photoId(db, albumName, path);
+            if (photoId >= 0) {
+                insertTag(db, photoId, tag);
+            }
+        });
+    }
+
+    @Override
+    public void onTagRemoved(Album album, Photo photo, Tag tag) {
+        String albumName = album.getName();
+        String path = photo.getPathName();
+        execute("remove tag " + tag, db -> {
+            long photoId = photoId(db, albumName, path);
+            if (photoId >= 0) {
+                db.delete("tag", "photo_id = ? AND name = ? AND value_lower = ?", new String[]{
+                        Long.toString(photoId), tag.getName(), tag.getValue().toLowerCase()});
+            }
+        });
+    }
+
+    @Override
+    public void onCaptionChanged(Album album, Photo photo, String oldCaption) {
+        String albumName = album.getName();
+        String path = photo.getPathName();
+        String caption = photo.getCaption();
+        execute("set caption of " + path, db -> {
+            long photoId = photoId(db, albumName, path);
+            if (photoId >= 0) {
+                ContentValues values = new ContentValues();
+                values.put("caption", caption);
+                db.update("photo", values, "id = ?", new String[]{Long.toString(photoId)});
+                db.delete("caption_word", "photo_id = ?", new String[]{Long.toString(photoId)});
+                insertCaptionWords(db, photoId, caption);
+            }
+        });
+    }
+
+    /**
+     * Writes the given albums to the database in one transaction, for example when a library
+     * kept in files is moved into the database. The albums are copied on the calling thread.
+     *
+     * @param albums the albums to add
+     * @return a future that completes once the albums have been written
+     */
+    public Future<?> importAlbums(Set<Album> albums) {
+        List<Album> copies = new ArrayList<>();
+        for (Album album : albums) {
+            copies.add(album.copy());
+        }
+        return submit("import " + copies.size() + " albums", db -> {
+            for (Album copy : copies) {
+                insertAlbum(db, copy);
+            }
+        });
+    }
+
+    /**
+     * Returns a future that completes once every change reported so far has been written. If a
+     * write failed since the last flush, the library is rewritten first and the future fails with
+     * the error. Must be called on the main thread.
+     *
+     * @return a future for the latest write
+     */
+    public Future<?> flush() {
+        if (resyncRequested && Data.isLoaded()) {
+            resync(Data.getAlbums());
+        }
+        return executor.submit(() -> {
+            SQLException failure = writeFailure;
+            writeFailure = null;
+            if (failure != null) {
+                throw new IOException("Could not save changes to the database", failure);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Checks whether a write failed and the library must be rewritten from the albums.
+     *
+     * @return true if a rewrite is pending, false otherwise
+     */
+    public boolean isResyncRequested() {
+        return resyncRequested;
+    }
+
+    /**
+     * Replaces everything in the database with the given albums in one transaction, so the database
+     * matches them again after a failed write. The albums are copied on the calling thread.
+     *
+     * @param albums the albums of the library
+     * @return a future that completes once the albums have been written
+     */
+    Future<?> resync(Set<Album> albums) {
+        resyncRequested = false;
+        List<Album> copies = new ArrayList<>();
+        for (Album album : albums) {
+            copies.add(album.copy());
+        }
+        Log.w(TAG, "Rewriting " + copies.size() + " albums after a failed write");
+        return submit("rewrite " + copies.size() + " albums", db -> {
+            // Deleting the photos and albums cascades to every other table
+            db.delete("photo", null, null);
+            db.delete("album", null, null);
+            for (Album copy : copies) {
+                insertAlbum(db, copy);
+            }
+        });
+    }
+
+    /**
+     * Reads every album with its photos and tags. The albums are not attached to the library.
+     *
+     * @return the albums in the database
+     */
+    public Set<Album> loadAlbums() {
+        SQLiteDatabase db = getReadableDatabase();
+        Map<String, Album> albums = new LinkedHashMap<>();
+        Map<Long, Photo> photos = new HashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT a.name, p.id, p.path, p.caption, p.added FROM album a "
+                + "LEFT JOIN album_photo ap ON ap.album_id = a.id "
+                + "LEFT JOIN photo p ON p.id = ap.photo_id", null)) {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(0);
+                Album album = albums.get(name);
+                if (album == null) {
+                    album = new Album(name);
+                    albums.put(name, album);
+                }
+                if (!cursor.isNull(1)) {
+                    Photo photo = new Photo(cursor.getString(3), cursor.getString(2));
+                    photo.setDate(cursor.getLong(4));
+                    photos.put(cursor.getLong(1), photo);
+                    album.addPhoto(photo);
+                }
+            }
+        }
+        try (Cursor cursor = db.rawQuery("SELECT photo_id, name, value FROM tag", null)) {
+            while (cursor.moveToNext()) {
+                Photo photo = photos.get(cursor.getLong(0));
+                if (photo != null) {
+                    photo.addTag(new Tag(cursor.getString(1), cursor.getString(2)));
+                }
+            }
+        }
+        return new HashSet<>(albums.values());
+    }
+
+    /**
+     * Finds the photos with a matching tag using the {@code tag_lookup} index. The photos returned
+     * are copies that carry their caption and tags but are not part of the library.
+     *
+     * @param tagType     the tag type, such as "Location" or "Person"
+     * @param valuePrefix the lowercase beginning of the tag value
+     * @return a new modifiable set of the matching photos
+     */
+    @Override
+    public Set<Photo> findPhotosByTag(String tagType, String valuePrefix) {
+        if (valuePrefix.isEmpty()) {
+            return new LinkedHashSet<>();
+        }
+        return findPhotosIn("SELECT photo_id FROM tag WHERE name = ? AND value_lower >= ? AND value_lower < ?",
+                tagType, valuePrefix, valuePrefix + MAX_CHAR);
+    }
+
+    @Override
+    public int countPhotosByTag(String tagType, String valuePrefix) {
+        if (valuePrefix.isEmpty()) {
+            return 0;
+        }
+        // Counted from the tag_lookup index alone, without visiting photo rows
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM tag "
+                + "WHERE name = ? AND value_lower >= ? AND value_lower < ?",
+                new String[]{tagType, valuePrefix, valuePrefix + MAX_CHAR})) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    /**
+     * Finds the photos with a tag whose value contains the text. A pattern with a leading wildcard
+     * cannot use the {@code tag_lookup} index, so only the tags of the one type are scanned.
+     *
+     * @param tagType the tag type, such as "Location" or "Person"
+     * @param text    the lowercase text to find in the tag value
+     * @return a new modifiable set of the matching photos
+     */
+    @Override
+    public Set<Photo> findPhotosContaining(String tagType, String text) {
+        if (text.isEmpty()) {
+            return new LinkedHashSet<>();
+        }
+        return findPhotosIn("SELECT photo_id FROM tag WHERE name = ? AND value_lower LIKE ? ESCAPE '\\'",
+                tagType, likePattern(text));
+    }
+
+    @Override
+    public int countPhotosContaining(String tagType, String text) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM tag "
+                + "WHERE name = ? AND value_lower LIKE ? ESCAPE '\\'",
+                new String[]{tagType, likePattern(text)})) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    // Matches the text anywhere, with the wildcards of LIKE taken literally
+    private static String likePattern(String text) {
+        return "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Finds the photos with a caption word starting with the prefix using the
+     * {@code caption_word_lookup} index.
+     *
+     * @param wordPrefix the folded beginning of a caption word
+     * @return a new modifiable set of the matching photos
+     */
+    @Override
+    public Set<Photo> findPhotosByCaption(String wordPrefix) {
+        if (wordPrefix.isEmpty()) {
+            return new LinkedHashSet<>();
+        }
+        return findPhotosIn("SELECT photo_id FROM caption_word WHERE word >= ? AND word < ?",
+                wordPrefix, wordPrefix + MAX_CHAR);
+    }
+
+    @Override
+    public int countPhotosByCaption(String wordPrefix) {
+        if (wordPrefix.isEmpty()) {
+            return 0;
+        }
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM caption_word "
+                + "WHERE word >= ? AND word < ?", new String[]{wordPrefix, wordPrefix + MAX_CHAR})) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    // Reads the photos whose ids the subquery selects, with all their tags; photos without tags
+    // are read too, since a caption search may find them
+    private Set<Photo> findPhotosIn(String photoIds, String... args) {
+        Map<Long, Photo> photos = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT p.id, p.path, p.caption, p.added, t.name, t.value "
+                + "FROM photo p LEFT JOIN tag t ON t.photo_id = p.id WHERE p.id IN (" + photoIds + ")", args)) {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                Photo photo = photos.get(id);
+                if (photo == null) {
+                    photo = new Photo(cursor.getString(2), cursor.getString(1));
+                    photo.setDate(cursor.getLong(3));
+                    photos.put(id, photo);
+                }
+                if (!cursor.isNull(4)) {
+                    photo.addTag(new Tag(cursor.getString(4), cursor.getString(5)));
+                }
+            }
+        }
+        // A picture in several albums has several photo rows but is one search result
+        return new LinkedHashSet<>(photos.values());
+    }
+
+    /**
+     * Writes one change, or the whole library if an earlier write failed. Listeners are notified
+     * after the albums have changed, so rewriting them includes the change.
+     */
+    private Future<?> execute(String description, Change change) {
+        if (resyncRequested && Data.isLoaded()) {
+            return resync(Data.getAlbums());
+        }
+        return submit(description, change);
+    }
+
+    private Future<?> submit(String description, Change change) {
+        return executor.submit(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                change.apply(db);
+                db.setTransactionSuccessful();
+            } catch (SQLException e) {
+                Log.e(TAG, "Could not " + description + ": " + e.getMessage(), e);
+                writeFailure = e;
+                resyncRequested = true;
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    private static void insertAlbum(SQLiteDatabase db, Album album) {
+        ContentValues values = new ContentValues();
+        values.put("name", album.getName());
+        long albumId = db.insertOrThrow("album", null, values);
+        for (Photo photo : album.getPhotos()) {
+            insertPhoto(db, albumId, photo);
+        }
+    }
+
+    private static void insertPhoto(SQLiteDatabase db, long albumId, Photo photo) {
+        ContentValues values = new ContentValues();
+        values.put("path", photo.getPathName());
+        values.put("caption", photo.getCaption());
+        values.put("added", photo.getDate());
+        long photoId = db.insertOrThrow("photo", null, values);
+        values.clear();
+        values.put("album_id", albumId);
+        values.put("photo_id", photoId);
+        db.insertOrThrow("album_photo", null, values);
+        for (Tag tag : photo.getTags()) {
+            insertTag(db, photoId, tag);
+        }
+        insertCaptionWords(db, photoId, photo.getCaption());
+    }
+
+    private static void insertCaptionWords(SQLiteDatabase db, long photoId, String caption) {
+        ContentValues values = new ContentValues();
+        for (String word : CaptionTokenizer.words(caption)) {
+            values.put("photo_id", photoId);
+            values.put("word", word);
+            db.insertOrThrow("caption_word", null, values);
+        }
+    }
+
+    private static void insertTag(SQLiteDatabase db, long photoId, Tag tag) {
+        ContentValues values = new ContentValues();
+        values.put("photo_id", photoId);
+        values.put("name", tag.getName());
+        values.put("value", tag.getValue());
+        values.put("value_lower", tag.getValue().toLowerCase());
+        db.insertWithOnConflict("tag", null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    private static long albumId(SQLiteDatabase db, String name) {
+        try (Cursor cursor = db.rawQuery("SELECT id FROM album WHERE name = ?", new String[]{name})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    private static long photoId(SQLiteDatabase db, String albumName, String path) {
+        try (Cursor cursor = db.rawQuery("SELECT p.id FROM photo p "
+                + "JOIN album_photo ap ON ap.photo_id = p.id "
+                + "JOIN album a ON a.id = ap.album_id WHERE a.name = ? AND p.path = ?",
+                new String[]{albumName, path})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    private interface Change {
+        void apply(SQLiteDatabase db);
+    }
+}
@@ -0,0 +1,466 @@
+package com.jsrr.android_app93;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code StoreCodec} class encodes and decodes the album library in a compact, versioned binary format.
+ * It replaces Java serialization of {@link Album}, {@link Photo} and {@link Tag}, which writes class
+ * descriptors and repeats every tag name and URI prefix.
+ *
+ * <p>The format starts with a directory of albums so that a store read through a
+ * {@link java.nio.MappedByteBuffer} can list albums without decoding any photos.
+ * All counts, lengths and string references are stored as varints:
+ * <pre>
+ *   magic, version, snapshot sequence (8 bytes), album count
+ *   directory: per album its name, photo count, and the offset, length and CRC32 of its body
+ *   CRC32 of the header and directory
+ *   bodies: per album a string table, then per photo its path prefix, path suffix, caption and tags,
+ *           then per photo the date it was added
+ * </pre>
+ * Each body has its own string table, so an album can be decoded, or copied unchanged into a new
+ * store, on its own. Path names are split after their last {@code '/'} so that URI prefixes shared
+ * by many photos are stored once. Bodies written before dates were kept end after the tags, and their
+ * photos are read with no date.
+ *
+ * <p>The same body encoding is used for the per-album shard files managed by {@link ShardStore}.
+ * Stores written in version 1, which used one string table for the whole library, are still read.
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 2.0
+ */
+public class StoreCodec {
+    static final int MAGIC = 0x414C4253; // "ALBS"
+    static final int VERSION = 2;
+    static final int SHARD_MAGIC = 0x414C5348; // "ALSH"
+    private static final int VERSION_SHARED_TABLE = 1;
+
+    private StoreCodec() {}
+
+    /**
+     * The albums and sequence number read from a store.
+     */
+    public static class Snapshot {
+        public final Set<Album> albums;
+        public final long sequence;
+
+        Snapshot(Set<Album> albums, long sequence) {
+            this.albums = albums;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * The encoded photos of one album, kept undecoded until the album is first used.
+     * A body is either a slice of a single-file store or a shard file that is mapped on first use.
+     */
+    public static class AlbumBody {
+        private final File file;
+        private ByteBuffer buffer;
+        private int crc;
+
+        AlbumBody(ByteBuffer buffer, int crc) {
+            this.file = null;
+            this.buffer = buffer;
+            this.crc = crc;
+        }
+
+        /**
+         * Constructs a body backed by a shard file written with {@link #writeShard}.
+         *
+         * @param file the shard file
+         */
+        AlbumBody(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Maps the shard file if this body has not been read yet.
+         */
+        private synchronized ByteBuffer open() throws IOException {
+            if (buffer == null) {
+                ByteBuffer mapped;
+                try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                if (mapped.remaining() < 8 || mapped.getInt(0) != SHARD_MAGIC) {
+                    throw new IOException("Not an album shard: " + file.getName());
+                }
+                crc = mapped.getInt(mapped.limit() - 4);
+                mapped.position(4).limit(mapped.limit() - 4);
+                buffer = mapped.slice().asReadOnlyBuffer();
+            }
+            return buffer.duplicate();
+        }
+
+        /**
+         * Decodes the photos of the album.
+         *
+         * @return the photos stored in this body
+         * @throws IOException if the body is damaged
+         */
+        public Set<Photo> decode() throws IOException {
+            ByteBuffer in = open();
+            CRC32 check = new CRC32();
+            check.update(in.duplicate());
+            if ((int) check.getValue() != crc) {
+                throw new IOException("Album checksum mismatch");
+            }
+            try {
+                return decodeBody(in);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt album body: " + e, e);
+            }
+        }
+
+        int length() throws IOException {
+            return open().remaining();
+        }
+
+        int crc() throws IOException {
+            open();
+            return crc;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            ByteBuffer in = open();
+            byte[] chunk = new byte[Math.min(in.remaining(), 64 * 1024)];
+            while (in.hasRemaining()) {
+                int count = Math.min(chunk.length, in.remaining());
+                in.get(chunk, 0, count);
+                out.write(chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Writes the photos of one album to its own shard file: a magic number, the encoded body
+     * and the CRC32 of the body. Albums that were never decoded are copied without decoding them.
+     *
+     * @param album the album to write
+     * @param file  the shard file to create
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeShard(Album album, File file) throws IOException {
+        AlbumBody body = album.getPendingBody();
+        if (body == null) {
+            body = encodeBody(album.getPhotos());
+        }
+        try (FileOutputStream fileOut = new FileOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+            out.writeInt(SHARD_MAGIC);
+            body.writeTo(out);
+            out.writeInt(body.crc());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+    }
+
+    /**
+     * Writes the albums to the stream in the binary store format. Albums whose photos were
+     * never decoded are copied over without decoding them.
+     *
+     * @param albums   the albums to write
+     * @param sequence the sequence number of the snapshot
+     * @param stream   the stream to write to, which is not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public static void encode(Set<Album> albums, long sequence, OutputStream stream) throws IOException {
+        List<Album> order = new ArrayList<>(albums);
+        List<AlbumBody> bodies = new ArrayList<>(order.size());
+        for (Album album : order) {
+            AlbumBody body = album.getPendingBody();
+            bodies.add(body != null ? body : encodeBody(album.getPhotos()));
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeInt(MAGIC);
+        writeVarint(headerOut, VERSION);
+        headerOut.writeLong(sequence);
+        writeVarint(headerOut, order.size());
+        int offset = 0;
+        for (int i = 0; i < order.size(); i++) {
+            Album album = order.get(i);
+            AlbumBody body = bodies.get(i);
+            writeString(headerOut, album.getName());
+            writeVarint(headerOut, album.getPhotoCount());
+            // Offsets are relative to the end of the header so they can be computed before it is written
+            headerOut.writeInt(offset);
+            headerOut.writeInt(body.length());
+            headerOut.writeInt(body.crc());
+            offset += body.length();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.toByteArray());
+        headerOut.writeInt((int) crc.getValue());
+
+        BufferedOutputStream out = new BufferedOutputStream(stream, 64 * 1024);
+        header.writeTo(out);
+        for (AlbumBody body : bodies) {
+            body.writeTo(out);
+        }
+        out.flush();
+    }
+
+    private static AlbumBody encodeBody(Set<Photo> photos) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Photo photo : photos) {
+            String pathName = photo.getPathName();
+            int split = pathName.lastIndexOf('/') + 1;
+            intern(pathName.substring(0, split), stringIds, strings);
+            intern(pathName.substring(split), stringIds, strings);
+            if (photo.getCaption() != null) {
+                intern(photo.getCaption(), stringIds, strings);
+            }
+            for (Tag tag : photo.getTags()) {
+                intern(tag.getName(), stringIds, strings);
+                intern(tag.getValue(), stringIds, strings);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeVarint(out, strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+        writeVarint(out, photos.size());
+        for (Photo photo : photos) {
+            String pathName = photo.getPathName();
+            int split = pathName.lastIndexOf('/') + 1;
+            writeVarint(out, stringIds.get(pathName.substring(0, split)));
+            writeVarint(out, stringIds.get(pathName.substring(split)));
+            // Captions are optional, so their references are shifted by one and zero means null
+            writeVarint(out, photo.getCaption() == null ? 0 : stringIds.get(photo.getCaption()) + 1);
+            writeVarint(out, photo.getTags().size());
+            for (Tag tag : photo.getTags()) {
+                writeVarint(out, stringIds.get(tag.getName()));
+                writeVarint(out, stringIds.get(tag.getValue()));
+            }
+        }
+        for (Photo photo : photos) {
+            writeVarlong(out, photo.getDate());
+        }
+        out.flush();
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return new AlbumBody(ByteBuffer.wrap(body).asReadOnlyBuffer(), (int) crc.getValue());
+    }
+
+    /**
+     * Reads the albums written by {@link #encode}. Only the directory is decoded; the photos
+     * of each album stay in the buffer until the album is first used.
+     *
+     * @param buffer the encoded store, read from its position to its limit
+     * @return the albums and sequence number
+     * @throws IOException if the data is not a valid store
+     */
+    public static Snapshot decode(ByteBuffer buffer) throws IOException {
+        try {
+            int start = buffer.position();
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an album store");
+            }
+            int version = readVarint(buffer);
+            if (version == VERSION_SHARED_TABLE) {
+                buffer.position(start);
+                return decodeSharedTable(buffer);
+            }
+            if (version != VERSION) {
+                throw new IOException("Unsupported store version " + version);
+            }
+            long sequence = buffer.getLong();
+            int albumCount = readVarint(buffer);
+            String[] names = new String[albumCount];
+            int[] photoCounts = new int[albumCount];
+            int[] offsets = new int[albumCount];
+            int[] lengths = new int[albumCount];
+            int[] crcs = new int[albumCount];
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < albumCount; i++) {
+                int length = readVarint(buffer);
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                buffer.get(scratch, 0, length);
+                names[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+                photoCounts[i] = readVarint(buffer);
+                offsets[i] = buffer.getInt();
+                lengths[i] = buffer.getInt();
+                crcs[i] = buffer.getInt();
+            }
+            ByteBuffer header = buffer.duplicate();
+            header.position(start).limit(buffer.position());
+            CRC32 crc = new CRC32();
+            crc.update(header);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                throw new IOException("Directory checksum mismatch");
+            }
+
+            int bodyStart = buffer.position();
+            Set<Album> albums = new HashSet<>();
+            for (int i = 0; i < albumCount; i++) {
+                ByteBuffer body = buffer.duplicate();
+                body.position(bodyStart + offsets[i]).limit(bodyStart + offsets[i] + lengths[i]);
+                albums.add(new Album(names[i], photoCounts[i], new AlbumBody(body.slice().asReadOnlyBuffer(), crcs[i])));
+            }
+            return new Snapshot(albums, sequence);
+        } catch (RuntimeException e) {
+            // Truncated buffers and bad offsets surface as runtime exceptions
+            throw new IOException("Corrupt album store: " + e, e);
+        }
+    }
+
+    private static Set<Photo> decodeBody(ByteBuffer buffer) throws IOException {
+        String[] strings = readStringTable(buffer, readVarint(buffer));
+        int photoCount = readVarint(buffer);
+        Photo[] photos = new Photo[photoCount];
+        for (int p = 0; p < photoCount; p++) {
+            photos[p] = readPhoto(buffer, strings);
+        }
+        for (int p = 0; p < photoCount; p++) {
+            photos[p].setDate(buffer.hasRemaining() ? readVarlong(buffer) : 0);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Unexpected data after photos");
+        }
+        return new HashSet<>(Arrays.asList(photos));
+    }
+
+    private static Photo readPhoto(ByteBuffer buffer, String[] strings) throws IOException {
+        String pathName = strings[readVarint(buffer)].concat(strings[readVarint(buffer)]);
+        int captionRef = readVarint(buffer);
+        Photo photo = new Photo(captionRef == 0 ? null : strings[captionRef - 1], pathName);
+        photo.setDate(0);
+        int tagCount = readVarint(buffer);
+        for (int t = 0; t < tagCount; t++) {
+            photo.addTag(new Tag(strings[readVarint(buffer)], strings[readVarint(buffer)]));
+        }
+        return photo;
+    }
+
+    private static String[] readStringTable(ByteBuffer buffer, int stringCount) throws IOException {
+        String[] strings = new String[stringCount];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < stringCount; i++) {
+            int length = readVarint(buffer);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Reads a version 1 store, which has a single string table and a trailing CRC32, eagerly.
+     */
+    private static Snapshot decodeSharedTable(ByteBuffer buffer) throws IOException {
+        int end = buffer.limit() - 4;
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = buffer.duplicate();
+        checked.limit(end);
+        crc.update(checked);
+        if (buffer.getInt(end) != (int) crc.getValue()) {
+            throw new IOException("Store checksum mismatch");
+        }
+
+        buffer.getInt(); // magic
+        readVarint(buffer); // version
+        long sequence = buffer.getLong();
+        int stringCount = readVarint(buffer);
+        int albumCount = readVarint(buffer);
+        readVarint(buffer); // photo count
+        readVarint(buffer); // tag count
+        String[] strings = readStringTable(buffer, stringCount);
+
+        Set<Album> albums = new HashSet<>();
+        for (int a = 0; a < albumCount; a++) {
+            String name = strings[readVarint(buffer)];
+            int photoCount = readVarint(buffer);
+            Set<Photo> photos = new HashSet<>(photoCount * 4 / 3 + 1);
+            for (int p = 0; p < photoCount; p++) {
+                photos.add(readPhoto(buffer, strings));
+            }
+            albums.add(new Album(name, photos));
+        }
+        if (buffer.position() != end) {
+            throw new IOException("Unexpected data after albums");
+        }
+        return new Snapshot(albums, sequence);
+    }
+
+    private static void intern(String string, Map<String, Integer> stringIds, List<String> strings) {
+        if (!stringIds.containsKey(string)) {
+            stringIds.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static void writeVarlong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarlong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
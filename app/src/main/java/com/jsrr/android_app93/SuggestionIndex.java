@@ -0,0 +1,324 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@code SuggestionIndex} class suggests the most frequent values of one tag type that start with a
+ * prefix. The lowercase values are kept in a radix tree, a trie whose chains of single children are
+ * merged into one node, so it has fewer than two nodes per value. Every node keeps the values under
+ * it with the most photos, up to a fixed capacity, so a suggestion only walks down the prefix and
+ * copies the list it finds there.
+ *
+ * <p>A change to the number of photos of a value only affects the lists of the nodes on its path, from
+ * the bottom up. A value that gains a photo moves up each list, or into it, in a few steps. Only
+ * when a value in a list loses a photo is that list rebuilt by merging the lists of the children,
+ * as another value may now take its place. Updates stop at the first list that does not change.
+ *
+ * <p>Features of the {@code SuggestionIndex} class include:
+ * <ul>
+ *   <li>Counting the photos carrying each value as tags are added and removed</li>
+ *   <li>Finding the most frequent values starting with a prefix</li>
+ *   <li>Remembering how each value was first spelled</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class SuggestionIndex {
+    private static final Node[] NO_NODES = new Node[0];
+    // Most photos first, then alphabetically, so suggestions are stable
+    private static final Comparator<Node> BY_FREQUENCY = (a, b) -> a.count != b.count
+            ? Integer.compare(b.count, a.count) : a.value.compareTo(b.value);
+
+    private final int capacity;
+    private final Node root = new Node("");
+    private int size = 0;
+
+    private static class Node {
+        // The characters on the edge from the parent, and the children sorted by their first character
+        String label;
+        Node[] children = NO_NODES;
+        // Set when a value ends at this node
+        String value = null;
+        String spelling = null;
+        int count = 0;
+        // The most frequent values ending at or below this node
+        Node[] top = NO_NODES;
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Constructs an empty {@code SuggestionIndex}.
+     *
+     * @param capacity the largest number of suggestions kept for each prefix
+     */
+    public SuggestionIndex(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Counts one more photo carrying a value.
+     *
+     * @param value    the lowercase tag value
+     * @param spelling the value as it was typed, suggested while the value is in the index
+     */
+    public void add(String value, String spelling) {
+        if (!value.isEmpty()) {
+            add(root, value, 0, spelling);
+        }
+    }
+
+    /**
+     * Counts one less photo carrying a value. A value left without photos is removed.
+     *
+     * @param value the lowercase tag value
+     */
+    public void remove(String value) {
+        if (!value.isEmpty()) {
+            remove(root, value, 0);
+        }
+    }
+
+    /**
+     * Finds the values starting with a prefix that the most photos carry.
+     *
+     * @param prefix the lowercase prefix, where an empty prefix matches every value
+     * @param limit  the largest number of suggestions, no more than the capacity is used
+     * @return a new list of the values as first spelled, most frequent first
+     */
+    public List<String> suggest(String prefix, int limit) {
+        Node node = root;
+        int depth = 0;
+        while (depth < prefix.length()) {
+            node = child(node, prefix.charAt(depth));
+            if (node == null) {
+                return new ArrayList<>();
+            }
+            // The prefix may end in the middle of the label
+            int length = Math.min(node.label.length(), prefix.length() - depth);
+            if (!node.label.regionMatches(0, prefix, depth, length)) {
+                return new ArrayList<>();
+            }
+            depth += length;
+        }
+        int count = Math.min(limit, node.top.length);
+        List<String> suggestions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            suggestions.add(node.top[i].spelling);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns the number of photos carrying a value.
+     *
+     * @param value the lowercase tag value
+     * @return the number of photos, or 0 if the value is not in the index
+     */
+    public int count(String value) {
+        Node node = root;
+        int depth = 0;
+        while (depth < value.length()) {
+            node = child(node, value.charAt(depth));
+            if (node == null || !value.startsWith(node.label, depth)) {
+                return 0;
+            }
+            depth += node.label.length();
+        }
+        return node.count;
+    }
+
+    /**
+     * Returns the number of distinct values.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    // Returns the node of the value while the lists above still need updating, null once they do not
+    private Node add(Node node, String value, int depth, String spelling) {
+        Node changed;
+        if (depth == value.length()) {
+            if (node.count++ == 0) {
+                node.value = value;
+                node.spelling = spelling;
+                size++;
+            }
+            changed = node;
+        } else {
+            int index = childIndex(node, value.charAt(depth));
+            if (index < 0) {
+                Node leaf = new Node(value.substring(depth));
+                changed = add(leaf, value, value.length(), spelling);
+                insertChild(node, -index - 1, leaf);
+            } else {
+                Node child = node.children[index];
+                int common = commonLength(child.label, value, depth);
+                if (common < child.label.length()) {
+                    // Split the edge where the value leaves it
+                    Node middle = new Node(child.label.substring(0, common));
+                    child.label = child.label.substring(common);
+                    middle.children = new Node[]{child};
+                    middle.top = child.top;
+                    node.children[index] = middle;
+                    child = middle;
+                }
+                changed = add(child, value, depth + common, spelling);
+            }
+        }
+        return changed != null && raise(node, changed) ? changed : null;
+    }
+
+    private Node remove(Node node, String value, int depth) {
+        Node changed;
+        if (depth == value.length()) {
+            if (node.count == 0) {
+                return null;
+            }
+            if (--node.count == 0) {
+                node.value = null;
+                node.spelling = null;
+                size--;
+            }
+            changed = node;
+        } else {
+            int index = childIndex(node, value.charAt(depth));
+            if (index < 0 || !value.startsWith(node.children[index].label, depth)) {
+                return null;
+            }
+            Node child = node.children[index];
+            changed = remove(child, value, depth + child.label.length());
+            if (child.value == null && child.children.length == 0) {
+                removeChild(node, index);
+            } else if (child.value == null && child.children.length == 1) {
+                // Merge a node left with a single child into it
+                Node grandchild = child.children[0];
+                grandchild.label = child.label + grandchild.label;
+                node.children[index] = grandchild;
+            }
+        }
+        return changed != null && lower(node, changed) ? changed : null;
+    }
+
+    /**
+     * Moves a value that gained a photo up the list of a node, or into it when it now beats the last
+     * value. Lists may be shared by a node split in two, so a changed list is always a new array.
+     * Returns false when the list did not change, nor any list above it, since a list only holds
+     * values from the lists of its children.
+     */
+    private boolean raise(Node node, Node changed) {
+        Node[] top = node.top;
+        int index = indexOf(top, changed);
+        if (index < 0) {
+            if (top.length == capacity && (capacity == 0 || BY_FREQUENCY.compare(changed, top[capacity - 1]) >= 0)) {
+                return false;
+            }
+            // Take the last place, dropping the value there if the list is full
+            top = Arrays.copyOf(top, Math.min(capacity, top.length + 1));
+            index = top.length - 1;
+        } else {
+            top = top.clone();
+        }
+        while (index > 0 && BY_FREQUENCY.compare(changed, top[index - 1]) < 0) {
+            top[index] = top[index - 1];
+            index--;
+        }
+        top[index] = changed;
+        node.top = top;
+        return true;
+    }
+
+    /**
+     * Rebuilds the list of a node when a value in it lost a photo, since a value below it may now
+     * take its place. Returns false when the value was not in the list, which then did not change.
+     */
+    private boolean lower(Node node, Node changed) {
+        if (indexOf(node.top, changed) < 0) {
+            return false;
+        }
+        rebuildTop(node);
+        return true;
+    }
+
+    /**
+     * Rebuilds the list of a node from its own value and the lists of its children.
+     */
+    private void rebuildTop(Node node) {
+        List<Node> candidates = new ArrayList<>();
+        if (node.value != null) {
+            candidates.add(node);
+        }
+        for (Node child : node.children) {
+            Collections.addAll(candidates, child.top);
+        }
+        candidates.sort(BY_FREQUENCY);
+        if (candidates.size() > capacity) {
+            candidates = candidates.subList(0, capacity);
+        }
+        node.top = candidates.toArray(NO_NODES);
+    }
+
+    private static int indexOf(Node[] nodes, Node node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Node child(Node node, char first) {
+        int index = childIndex(node, first);
+        return index < 0 ? null : node.children[index];
+    }
+
+    private static int childIndex(Node node, char first) {
+        int low = 0;
+        int high = node.children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char c = node.children[middle].label.charAt(0);
+            if (c < first) {
+                low = middle + 1;
+            } else if (c > first) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private static void insertChild(Node node, int index, Node child) {
+        Node[] children = new Node[node.children.length + 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        children[index] = child;
+        System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+        node.children = children;
+    }
+
+    private static void removeChild(Node node, int index) {
+        Node[] children = new Node[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        System.arraycopy(node.children, index + 1, children, index, children.length - index);
+        node.children = children;
+    }
+
+    private static int commonLength(String label, String value, int depth) {
+        int length = Math.min(label.length(), value.length() - depth);
+        int common = 0;
+        while (common < length && label.charAt(common) == value.charAt(depth + common)) {
+            common++;
+        }
+        return common;
+    }
+}
@@ -0,0 +1,203 @@
+package com.jsrr.android_app93;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The {@code TagQuery} class describes one search of {@link SearchActivity}: a primary tag prefix,
+ * optionally combined with a secondary tag prefix by AND or OR. Prefixes are stored in lowercase,
+ * so two queries the user typed differently but that match the same photos are equal. When the
+ * query matches anywhere, both fields are found anywhere in the tag values instead of at the start.
+ *
+ * <p>Features of the {@code TagQuery} class include:
+ * <ul>
+ *   <li>Running the query against a {@link PhotoRepository}</li>
+ *   <li>Checking whether a single photo matches</li>
+ *   <li>Recognising a query whose results are a subset of another's</li>
+ *   <li>Scoring how closely a photo matches, for ranking results</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class TagQuery implements PhotoQuery {
+
+    /**
+     * How the secondary prefix is combined with the primary one.
+     */
+    public enum Operator {
+        /** Only the primary prefix is used. */
+        SINGLE,
+        /** Photos must match both prefixes. */
+        AND,
+        /** Photos must match at least one prefix. */
+        OR,
+        /** No operator is selected, so nothing matches. */
+        NONE
+    }
+
+    private final String primaryType;
+    private final String primaryPrefix;
+    private final Operator operator;
+    private final String secondaryType;
+    private final String secondaryPrefix;
+    private final boolean anywhere;
+
+    /**
+     * Constructs a {@code TagQuery}. The prefixes are trimmed and lowercased; the secondary part
+     * is ignored unless the operator is AND or OR.
+     *
+     * @param primaryType     the primary tag type
+     * @param primaryPrefix   the beginning of the primary tag value
+     * @param operator        how the secondary prefix is combined
+     * @param secondaryType   the secondary tag type
+     * @param secondaryPrefix the beginning of the secondary tag value
+     */
+    public TagQuery(String primaryType, String primaryPrefix, Operator operator,
+                    String secondaryType, String secondaryPrefix) {
+        this(primaryType, primaryPrefix, operator, secondaryType, secondaryPrefix, false);
+    }
+
+    /**
+     * Constructs a {@code TagQuery} that matches its text at the start of tag values or anywhere in
+     * them. The texts are trimmed and lowercased; the secondary part is ignored unless the operator
+     * is AND or OR.
+     *
+     * @param primaryType   the primary tag type
+     * @param primaryText   the primary text
+     * @param operator      how the secondary text is combined
+     * @param secondaryType the secondary tag type
+     * @param secondaryText the secondary text
+     * @param anywhere      true to find the texts anywhere in tag values, false to match their start
+     */
+    public TagQuery(String primaryType, String primaryText, Operator operator,
+                    String secondaryType, String secondaryText, boolean anywhere) {
+        boolean combined = operator == Operator.AND || operator == Operator.OR;
+        this.primaryType = primaryType;
+        this.primaryPrefix = primaryText.toLowerCase().trim();
+        this.operator = operator;
+        this.secondaryType = combined ? secondaryType : "";
+        this.secondaryPrefix = combined ? secondaryText.toLowerCase().trim() : "";
+        this.anywhere = anywhere;
+    }
+
+    /**
+     * Finds the matching photos with the indexes of a repository. AND and OR searches run like a
+     * typed {@link QueryExpression}, so the more selective field of an AND is looked up first.
+     *
+     * @param repository the repository to search
+     * @return a new modifiable set of the matching photos
+     */
+    @Override
+    public Set<Photo> run(PhotoRepository repository) {
+        switch (operator) {
+            case SINGLE:
+                return anywhere
+                        ? repository.findPhotosContaining(primaryType, primaryPrefix)
+                        : repository.findPhotosByTag(primaryType, primaryPrefix);
+            case AND:
+                return QueryExpression.and(Arrays.asList(
+                        term(primaryType, primaryPrefix), term(secondaryType, secondaryPrefix))).run(repository);
+            case OR:
+                return QueryExpression.or(Arrays.asList(
+                        term(primaryType, primaryPrefix), term(secondaryType, secondaryPrefix))).run(repository);
+            default:
+                return new LinkedHashSet<>();
+        }
+    }
+
+    @Override
+    public boolean matches(Photo photo) {
+        switch (operator) {
+            case SINGLE:
+                return hasTag(photo, primaryType, primaryPrefix);
+            case AND:
+                return hasTag(photo, primaryType, primaryPrefix) && hasTag(photo, secondaryType, secondaryPrefix);
+            case OR:
+                return hasTag(photo, primaryType, primaryPrefix) || hasTag(photo, secondaryType, secondaryPrefix);
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int relevance(Photo photo) {
+        switch (operator) {
+            case SINGLE:
+                return QueryExpression.tagRelevance(photo, primaryType, primaryPrefix);
+            case AND:
+            case OR:
+                return QueryExpression.tagRelevance(photo, primaryType, primaryPrefix)
+                        + QueryExpression.tagRelevance(photo, secondaryType, secondaryPrefix);
+            default:
+                return 0;
+        }
+    }
+
+    private QueryExpression term(String tagType, String text) {
+        return anywhere ? QueryExpression.contains(tagType, text) : QueryExpression.term(tagType, text);
+    }
+
+    private boolean hasTag(Photo photo, String tagType, String text) {
+        return anywhere
+                ? QueryExpression.hasTagContaining(photo, tagType, text)
+                : QueryExpression.hasTag(photo, tagType, text);
+    }
+
+    private boolean narrowsText(String text, String earlier) {
+        return anywhere ? QueryExpression.narrowsSubstring(text, earlier) : QueryExpression.narrowsPrefix(text, earlier);
+    }
+
+    /**
+     * Checks whether every result of this query is also a result of an earlier query, so this query
+     * can be answered by filtering the earlier results. That holds when both use the same tag types
+     * and operator and each prefix only got longer, as when the user types another character.
+     * Text found anywhere narrows when it contains the earlier text.
+     *
+     * @param earlier the earlier query
+     * @return true if this query narrows the earlier one, false otherwise
+     */
+    @Override
+    public boolean narrows(PhotoQuery earlier) {
+        if (!(earlier instanceof TagQuery)) {
+            return false;
+        }
+        TagQuery other = (TagQuery) earlier;
+        return operator == other.operator
+                && anywhere == other.anywhere
+                && primaryType.equals(other.primaryType)
+                && secondaryType.equals(other.secondaryType)
+                && narrowsText(primaryPrefix, other.primaryPrefix)
+                && narrowsText(secondaryPrefix, other.secondaryPrefix);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        TagQuery other = (TagQuery) obj;
+        return operator == other.operator
+                && anywhere == other.anywhere
+                && primaryType.equals(other.primaryType)
+                && primaryPrefix.equals(other.primaryPrefix)
+                && secondaryType.equals(other.secondaryType)
+                && secondaryPrefix.equals(other.secondaryPrefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operator, anywhere, primaryType, primaryPrefix, secondaryType, secondaryPrefix);
+    }
+
+    @Override
+    public String toString() {
+        String separator = anywhere ? ":*" : ":";
+        if (operator == Operator.AND || operator == Operator.OR) {
+            return primaryType + separator + primaryPrefix + " " + operator + " "
+                    + secondaryType + separator + secondaryPrefix;
+        }
+        return operator == Operator.NONE ? "(none)" : primaryType + separator + primaryPrefix;
+    }
+}
@@ -0,0 +1,121 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code TagSuggester} class suggests tag values while the user types them, most frequent first,
+ * so values already in the library are reused instead of being spelled again in a slightly different
+ * way. It keeps a {@link SuggestionIndex} for each tag type, counting the photos that carry each value.
+ *
+ * <p>Like {@link MemoryPhotoRepository}, the indexes are built from the albums when the suggester is
+ * made, on the loader thread, and then kept up to date as a {@link LibraryListener} on the main
+ * thread, whichever store holds the library. Suggestions are requested from the filtering thread of
+ * the text fields, so every method is synchronized, and the albums are never read after the build.
+ *
+ * <p>Features of the {@code TagSuggester} class include:
+ * <ul>
+ *   <li>Building the suggestion indexes from the albums of the library</li>
+ *   <li>Updating the indexes as tags, photos and albums change</li>
+ *   <li>Suggesting the most frequent values of a tag type starting with a prefix</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class TagSuggester implements LibraryListener {
+    /**
+     * The largest number of suggestions given for a prefix.
+     */
+    public static final int MAX_SUGGESTIONS = 8;
+
+    // Lowercase tag type -> its values and the number of photos carrying each
+    private final Map<String, SuggestionIndex> index = new HashMap<>();
+
+    /**
+     * Constructs a {@code TagSuggester} and indexes the tags of the given albums.
+     *
+     * @param albums the albums of the library, which this suggester must be notified of changes to
+     */
+    public TagSuggester(Set<Album> albums) {
+        for (Album album : albums) {
+            for (Photo photo : album.getPhotos()) {
+                addTags(photo);
+            }
+        }
+    }
+
+    /**
+     * Suggests the values of a tag type starting with a prefix, ignoring case.
+     *
+     * @param tagType the tag type
+     * @param prefix  the beginning of the value typed so far
+     * @param limit   the largest number of suggestions, at most {@link #MAX_SUGGESTIONS}
+     * @return a new list of the values, carried by the most photos first
+     */
+    public synchronized List<String> suggest(String tagType, String prefix, int limit) {
+        SuggestionIndex values = index.get(tagType.toLowerCase());
+        return values == null ? new ArrayList<>() : values.suggest(prefix.toLowerCase(), limit);
+    }
+
+    @Override
+    public synchronized void onAlbumAdded(Album album) {
+        for (Photo photo : album.getPhotos()) {
+            addTags(photo);
+        }
+    }
+
+    @Override
+    public synchronized void onAlbumRemoved(Album album) {
+        for (Photo photo : album.getPhotos()) {
+            removeTags(photo);
+        }
+    }
+
+    @Override
+    public synchronized void onPhotoAdded(Album album, Photo photo) {
+        addTags(photo);
+    }
+
+    @Override
+    public synchronized void onPhotoRemoved(Album album, Photo photo) {
+        removeTags(photo);
+    }
+
+    @Override
+    public synchronized void onTagAdded(Album album, Photo photo, Tag tag) {
+        addTag(tag);
+    }
+
+    @Override
+    public synchronized void onTagRemoved(Album album, Photo photo, Tag tag) {
+        removeTag(tag);
+    }
+
+    private void addTags(Photo photo) {
+        for (Tag tag : photo.getTags()) {
+            addTag(tag);
+        }
+    }
+
+    private void removeTags(Photo photo) {
+        for (Tag tag : photo.getTags()) {
+            removeTag(tag);
+        }
+    }
+
+    private void addTag(Tag tag) {
+        index.computeIfAbsent(tag.getName().toLowerCase(), type -> new SuggestionIndex(MAX_SUGGESTIONS))
+                .add(tag.getValue().toLowerCase(), tag.getValue());
+    }
+
+    private void removeTag(Tag tag) {
+        SuggestionIndex values = index.get(tag.getName().toLowerCase());
+        if (values != null) {
+            values.remove(tag.getValue().toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
+import android.widget.Filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code TagSuggestionAdapter} class fills the drop-down of an {@link AutoCompleteTextView} with the
+ * tag values suggested by a {@link TagSuggester} for the text typed so far. Suggestions are looked up
+ * on the filtering thread of the text field, so typing never waits for them. Typed queries such as
+ * "person:alice AND location:nj" get no suggestions.
+ *
+ * <p>Features of the {@code TagSuggestionAdapter} class include:
+ * <ul>
+ *   <li>Suggesting values of the selected tag type</li>
+ *   <li>Changing the tag type while the field is in use</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class TagSuggestionAdapter extends ArrayAdapter<String> {
+    private final TagSuggester suggester;
+    private volatile String tagType;
+
+    /**
+     * Constructs a {@code TagSuggestionAdapter}.
+     *
+     * @param context   the context of the text field
+     * @param suggester the suggester of the library, or null if the library is not loaded
+     * @param tagType   the tag type whose values are suggested
+     */
+    public TagSuggestionAdapter(Context context, TagSuggester suggester, String tagType) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<>());
+        this.suggester = suggester;
+        this.tagType = tagType;
+    }
+
+    /**
+     * Changes the tag type whose values are suggested, from the next filtering on.
+     *
+     * @param tagType the tag type
+     */
+    public void setTagType(String tagType) {
+        this.tagType = tagType;
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<String> suggestions = new ArrayList<>();
+            if (suggester != null && constraint != null && !QueryParser.isQuery(constraint.toString())) {
+                suggestions = suggester.suggest(tagType, constraint.toString(), TagSuggester.MAX_SUGGESTIONS);
+            }
+            FilterResults results = new FilterResults();
+            results.values = suggestions;
+            results.count = suggestions.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            addAll((List<String>) results.values);
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+}
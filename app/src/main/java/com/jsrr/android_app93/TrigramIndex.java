@@ -0,0 +1,153 @@
+package com.jsrr.android_app93;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code TrigramIndex} class finds the lowercase values of one tag type that contain a piece of
+ * text anywhere, not only at the start. Every value is split into its trigrams, the runs of three
+ * characters it contains, and each trigram keeps a {@link PostingBitmap} of the values it occurs in.
+ * A value containing the text must contain every trigram of the text, so intersecting their
+ * postings, smallest first, leaves a few candidates that are then checked with
+ * {@link String#contains}. Text shorter than a trigram is checked against every value.
+ *
+ * <p>Each value is given a dense id, and ids of removed values are reused, as photo ordinals are
+ * by {@link MemoryPhotoRepository}.
+ *
+ * <p>Features of the {@code TrigramIndex} class include:
+ * <ul>
+ *   <li>Adding and removing values</li>
+ *   <li>Finding the values that contain a piece of text</li>
+ * </ul>
+ *
+ * @author [Joseph Scarpulla and Roger Ramirez]
+ * @version 1.0
+ */
+public class TrigramIndex {
+    static final int GRAM_LENGTH = 3;
+
+    // Id -> value, with null for ids freed by removed values, and value -> id
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    // Trigram packed into a long -> the ids of the values containing it
+    private final Map<Long, PostingBitmap> postings = new HashMap<>();
+
+    /**
+     * Adds a value, unless it is already in the index.
+     *
+     * @param value the lowercase tag value
+     */
+    public void add(String value) {
+        if (ids.containsKey(value)) {
+            return;
+        }
+        int id = freeIds.isEmpty() ? values.size() : freeIds.pop();
+        if (id == values.size()) {
+            values.add(value);
+        } else {
+            values.set(id, value);
+        }
+        ids.put(value, id);
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            postings.computeIfAbsent(gramAt(value, i), gram -> new PostingBitmap()).add(id);
+        }
+    }
+
+    /**
+     * Removes a value, if it is in the index.
+     *
+     * @param value the lowercase tag value
+     */
+    public void remove(String value) {
+        Integer id = ids.remove(value);
+        if (id == null) {
+            return;
+        }
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            Long gram = gramAt(value, i);
+            PostingBitmap posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+        values.set(id, null);
+        freeIds.push(id);
+    }
+
+    /**
+     * Finds the values that contain a piece of text. Empty text matches nothing.
+     *
+     * @param text the lowercase text
+     * @return a new list of the matching values, in no particular order
+     */
+    public List<String> find(String text) {
+        List<String> matches = new ArrayList<>();
+        if (text.isEmpty()) {
+            return matches;
+        }
+        if (text.length() < GRAM_LENGTH) {
+            for (String value : values) {
+                if (value != null && value.contains(text)) {
+                    matches.add(value);
+                }
+            }
+            return matches;
+        }
+
+        List<PostingBitmap> grams = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            PostingBitmap posting = postings.get(gramAt(text, i));
+            if (posting == null) {
+                return matches; // No value contains this trigram
+            }
+            if (!grams.contains(posting)) {
+                grams.add(posting);
+            }
+        }
+        grams.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        PostingBitmap candidates = new PostingBitmap(grams.get(0));
+        for (int i = 1; i < grams.size() && !candidates.isEmpty(); i++) {
+            candidates.and(grams.get(i));
+        }
+        // Sharing every trigram does not put them in the right order, so each candidate is checked,
+        // unless the text is a single trigram
+        boolean exact = text.length() == GRAM_LENGTH;
+        candidates.forEach(id -> {
+            String value = values.get(id);
+            if (exact || value.contains(text)) {
+                matches.add(value);
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Returns the number of values in the index.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Returns the number of distinct trigrams in the index.
+     *
+     * @return the number of trigrams
+     */
+    public int gramCount() {
+        return postings.size();
+    }
+
+    private static Long gramAt(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+}
@@ -0,0 +1,63 @@
+package com.jsrr.android_app93;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A {@link PhotoRepository} that scans every tag of the library, as {@code SearchActivity} did
+ * before the indexes. Tests use it as the reference for results and as the cost of a full search.
+ * Like every repository it returns copies of the photos it finds.
+ */
+class ScanPhotoRepository implements PhotoRepository {
+
+    private final Set<Album> albums;
+
+    ScanPhotoRepository(Set<Album> albums) {
+        this.albums = albums;
+    }
+
+    @Override
+    public Set<Photo> findPhotosByTag(String tagType, String valuePrefix) {
+        Set<Photo> matches = new LinkedHashSet<>();
+        if (valuePrefix.isEmpty()) {
+            return matches;
+        }
+        for (Album album : albums) {
+            for (Photo photo : album.getPhotos()) {
+                for (Tag tag : photo.getTags()) {
+                    if (tag.getName().equalsIgnoreCase(tagType)
+                            && tag.getValue().toLowerCase().startsWith(valuePrefix)) {
+                        matches.add(photo.copy());
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public Set<Photo> findPhotosByCaption(String wordPrefix) {
+        Set<Photo> matches = new LinkedHashSet<>();
+        for (Album album : albums) {
+            for (Photo photo : album.getPhotos()) {
+                if (CaptionTokenizer.hasWord(photo.getCaption(), wordPrefix)) {
+                    matches.add(photo.copy());
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public Set<Photo> findPhotosContaining(String tagType, String text) {
+        Set<Photo> matches = new LinkedHashSet<>();
+        for (Album album : albums) {
+            for (Photo photo : album.getPhotos()) {
+                if (QueryExpression.hasTagContaining(photo, tagType, text)) {
+                    matches.add(photo.copy());
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,65 @@
+package com.jsrr.android_app93;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric tests for {@link Album}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AlbumTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void unreadableShard_keepsStoredPhotos() throws IOException {
+        File filesDir = folder.getRoot();
+        Album album = new Album("Trip");
+        for (int i = 0; i < 5; i++) {
+            album.addPhoto(new Photo("Caption " + i, "/storage/" + i + ".jpg"));
+        }
+        new ShardStore(filesDir).write(new ShardStore(filesDir).capture(new HashSet<>(Set.of(album)), 1));
+        File shard = new File(filesDir, ShardStore.shardDirectory).listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(shard, "rw")) {
+            file.seek(file.length() / 2);
+            int value = file.read();
+            file.seek(file.length() / 2);
+            file.write(value ^ 0xFF);
+        }
+        byte[] damaged = Files.readAllBytes(shard.toPath());
+
+        ShardStore store = new ShardStore(filesDir);
+        Set<Album> albums = store.load().albums;
+        Album loaded = albums.iterator().next();
+        assertTrue(loaded.getPhotos().isEmpty());
+        assertNotNull(loaded.getLoadError());
+        assertEquals(5, loaded.getPhotoCount());
+        assertNotNull(loaded.getPendingBody());
+        try {
+            loaded.addPhoto(new Photo("New", "/storage/new.jpg"));
+            fail("An unreadable album must not be changed");
+        } catch (IllegalStateException expected) {
+            // The album stays read-only
+        }
+
+        // Even a save that rewrites every shard keeps the stored photos
+        store.requestRewriteAll();
+        ShardStore.Plan plan = store.capture(albums, 2);
+        assertEquals(0, plan.getShardWriteCount());
+        store.write(plan);
+        assertArrayEquals(damaged, Files.readAllBytes(shard.toPath()));
+    }
+}
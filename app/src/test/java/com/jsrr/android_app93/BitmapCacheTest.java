@@ -0,0 +1,66 @@
+package com.jsrr.android_app93;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric tests for {@link BitmapCache}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BitmapCacheTest {
+
+    // 10 by 10 pixels of 4 bytes each
+    private static final int BITMAP_BYTES = 400;
+
+    private static Bitmap bitmap() {
+        return Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedOverBudget() {
+        BitmapCache cache = new BitmapCache(4 * BITMAP_BYTES);
+        Photo[] photos = new Photo[5];
+        for (int i = 0; i < photos.length; i++) {
+            photos[i] = new Photo("Photo " + i, "/storage/" + i + ".jpg");
+        }
+        for (int i = 0; i < 4; i++) {
+            cache.put(photos[i], 200, bitmap());
+        }
+        assertEquals(4 * BITMAP_BYTES, cache.getSize());
+        assertNotNull(cache.get(photos[0], 200)); // Now the most recently used
+        assertNull(cache.get(photos[0], BitmapCache.FULL_SIZE)); // Sizes are kept apart
+
+        cache.put(photos[4], 200, bitmap());
+        assertEquals(4 * BITMAP_BYTES, cache.getSize());
+        assertNull(cache.get(photos[1], 200));
+        assertNotNull(cache.get(photos[0], 200));
+        assertNotNull(cache.get(new Photo("Copy", "/storage/4.jpg"), 200)); // Keyed by path
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // An image over a quarter of the budget would push the others out, so it is not kept
+        cache.put(photos[1], BitmapCache.FULL_SIZE, Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888));
+        assertNull(cache.get(photos[1], BitmapCache.FULL_SIZE));
+        assertEquals(4 * BITMAP_BYTES, cache.getSize());
+    }
+
+    @Test
+    public void getThumbnail_goesThroughSharedCache() {
+        BitmapCache cache = BitmapCache.getInstance(RuntimeEnvironment.getApplication());
+        assertTrue(cache.getMaxSize() > 0);
+        Photo photo = new Photo("Gallery", String.valueOf(android.R.drawable.ic_menu_gallery));
+        assertNull(photo.getCachedThumbnail(RuntimeEnvironment.getApplication()));
+
+        Bitmap thumbnail = photo.getThumbnail(RuntimeEnvironment.getApplication());
+        assertNotNull(thumbnail);
+        assertSame(thumbnail, photo.getCachedThumbnail(RuntimeEnvironment.getApplication()));
+        assertSame(thumbnail, photo.copy().getThumbnail(RuntimeEnvironment.getApplication()));
+    }
+}
@@ -0,0 +1,108 @@
+package com.jsrr.android_app93;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CaptionTokenizer} and caption searches.
+ */
+public class CaptionSearchTest {
+
+    private static final String[] WORDS = {"Sunset", "beach", "Birthday", "party", "caf\u00e9", "Cafeteria",
+            "hike", "mountain", "ni\u00f1os", "snow", "dinner", "family"};
+
+    private Set<Album> albums;
+    private Album album;
+    private MemoryPhotoRepository repository;
+    private ScanPhotoRepository scan;
+
+    @Before
+    public void setUp() {
+        albums = new HashSet<>();
+        album = new Album("Album");
+        Random random = new Random(8);
+        for (int p = 0; p < 600; p++) {
+            StringBuilder caption = new StringBuilder();
+            for (int w = random.nextInt(5); w > 0; w--) {
+                caption.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextBoolean() ? " " : ", ");
+            }
+            Photo photo = new Photo(caption.toString(), "/storage/" + p + ".jpg");
+            photo.addTag(new Tag("Person", "Person " + random.nextInt(30)));
+            album.addPhoto(photo);
+        }
+        albums.add(album);
+        repository = new MemoryPhotoRepository(albums);
+        scan = new ScanPhotoRepository(albums);
+    }
+
+    @Test
+    public void words_foldCaseAndDiacritics() {
+        assertEquals(Arrays.asList("cafe", "au", "lait", "ninos", "2024"),
+                Arrays.asList(CaptionTokenizer.words("Caf\u00e9 au LAIT -- ni\u00f1os, 2024! cafe").toArray()));
+        assertEquals("cafe", CaptionTokenizer.fold("Cafe\u0301"));
+        assertTrue(CaptionTokenizer.words(null).isEmpty());
+        assertTrue(CaptionTokenizer.hasWord("Trip to the Caf\u00e9", "caf"));
+        assertFalse(CaptionTokenizer.hasWord("Trip to the Caf\u00e9", "afe"));
+        assertFalse(CaptionTokenizer.hasWord("Trip", ""));
+    }
+
+    @Test
+    public void findPhotosByCaption_matchesScan() {
+        for (String prefix : Arrays.asList("sun", "cafe", "cafet", "nino", "b", "party", "xyz", "")) {
+            Set<Photo> expected = scan.findPhotosByCaption(prefix);
+            assertEquals(prefix, expected, repository.findPhotosByCaption(prefix));
+            assertTrue(prefix, repository.countPhotosByCaption(prefix) >= expected.size());
+        }
+    }
+
+    @Test
+    public void captionIndex_followsCaptionAndPhotoChanges() {
+        repository.findPhotosByCaption("sun"); // Builds the index
+        Photo photo = album.getPhotos().iterator().next();
+        String oldCaption = photo.getCaption();
+        photo.setCaption("Glacier walk");
+        repository.onCaptionChanged(album, photo, oldCaption);
+        assertTrue(repository.findPhotosByCaption("glac").contains(photo));
+        for (String word : CaptionTokenizer.words(oldCaption)) {
+            assertEquals(word, scan.findPhotosByCaption(word), repository.findPhotosByCaption(word));
+        }
+
+        Photo added = new Photo("Glacier lake", "/storage/new.jpg");
+        album.addPhoto(added);
+        repository.onPhotoAdded(album, added);
+        assertEquals(new HashSet<>(Arrays.asList(photo, added)), repository.findPhotosByCaption("glacier"));
+        album.removePhoto(photo);
+        repository.onPhotoRemoved(album, photo);
+        assertEquals(new HashSet<>(Arrays.asList(added)), repository.findPhotosByCaption("glacier"));
+    }
+
+    @Test
+    public void captionTerms_combineWithTags() throws ParseException {
+        QueryExpression query = QueryParser.parse("caption:\"Sunset be\" AND NOT person:\"person 1\" OR caption:ni\u00f1");
+        assertEquals("caption:sunset AND caption:be AND NOT person:\"person 1\" OR caption:nin", query.toString());
+        assertEquals(query.run(scan), query.run(repository));
+        Set<Photo> expected = new HashSet<>();
+        for (Photo photo : album.getPhotos()) {
+            if (query.matches(photo)) {
+                expected.add(photo);
+            }
+        }
+        assertEquals(expected, query.run(repository));
+        assertTrue(QueryParser.parse("caption:sunsets person:person").narrows(QueryParser.parse("caption:sunset person:person")));
+
+        try {
+            QueryParser.parse("caption:*set");
+            fail("Parsed a caption searched anywhere");
+        } catch (ParseException e) {
+            assertEquals(8, e.getErrorOffset());
+        }
+    }
+}
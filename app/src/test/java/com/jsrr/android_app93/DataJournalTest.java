@@ -0,0 +1,260 @@
+package com.jsrr.android_app93;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric tests for {@link DataJournal}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File journalFile;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(folder.getRoot(), DataJournal.journalFile);
+    }
+
+    /**
+     * Builds the albums of a snapshot: one album with a single tagged photo.
+     */
+    private static Map<String, Album> snapshot() {
+        Album album = new Album("Trip");
+        Photo photo = new Photo("Beach", "/storage/beach.jpg");
+        photo.addTag(new Tag("Location", "Seaside"));
+        album.addPhoto(photo);
+        Map<String, Album> albums = new HashMap<>();
+        albums.put(album.getName(), album);
+        return albums;
+    }
+
+    private static Photo photo(Map<String, Album> albums, String albumName, String pathName) {
+        Album album = albums.get(albumName);
+        if (album != null) {
+            for (Photo photo : album.getPhotos()) {
+                if (photo.getPathName().equals(pathName)) {
+                    return photo;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records three changes to the snapshot and appends them to a journal for snapshot 1.
+     */
+    private void writeJournal() throws IOException {
+        Map<String, Album> albums = snapshot();
+        Album trip = albums.get("Trip");
+        DataJournal journal = new DataJournal();
+
+        Photo added = new Photo("Dunes", "/storage/dunes.jpg");
+        added.addTag(new Tag("Person", "Ann"));
+        trip.addPhoto(added);
+        journal.onPhotoAdded(trip, added);
+        Photo beach = photo(albums, "Trip", "/storage/beach.jpg");
+        Tag tag = new Tag("Person", "Bob");
+        beach.addTag(tag);
+        journal.onTagAdded(trip, beach, tag);
+        String oldCaption = beach.getCaption();
+        beach.setCaption("Sunset");
+        journal.onCaptionChanged(trip, beach, oldCaption);
+
+        assertTrue(journal.hasPendingRecords());
+        DataJournal.reset(journalFile, 1);
+        DataJournal.append(journalFile, journal.drainPending());
+        assertFalse(journal.hasPendingRecords());
+    }
+
+    @Test
+    public void replay_appliesRecordsOverSnapshot() throws IOException {
+        writeJournal();
+
+        Map<String, Album> albums = snapshot();
+        DataJournal journal = new DataJournal();
+        Set<Album> changed = new HashSet<>();
+        assertEquals(3, journal.replay(journalFile, 1, albums, changed));
+        assertEquals(Set.of(albums.get("Trip")), changed);
+
+        assertEquals(2, albums.get("Trip").getPhotoCount());
+        Photo added = photo(albums, "Trip", "/storage/dunes.jpg");
+        assertNotNull(added);
+        assertEquals("Dunes", added.getCaption());
+        assertTrue(added.getTags().contains(new Tag("Person", "Ann")));
+        Photo beach = photo(albums, "Trip", "/storage/beach.jpg");
+        assertEquals("Sunset", beach.getCaption());
+        assertTrue(beach.getTags().contains(new Tag("Person", "Bob")));
+        assertTrue(beach.getTags().contains(new Tag("Location", "Seaside")));
+        assertFalse(journal.shouldCompact());
+    }
+
+    @Test
+    public void replay_readsDatedAndUndatedPhotoRecords() throws IOException {
+        Map<String, Album> albums = snapshot();
+        Album trip = albums.get("Trip");
+        DataJournal journal = new DataJournal();
+        Photo dated = new Photo("Dunes", "/storage/dunes.jpg");
+        dated.setDate(1_700_000_000_000L);
+        trip.addPhoto(dated);
+        journal.onPhotoAdded(trip, dated);
+        DataJournal.reset(journalFile, 1);
+        DataJournal.append(journalFile, journal.drainPending());
+
+        // A photo record as written before dates were kept, which ends after the tags
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(4); // ADD_PHOTO
+        out.writeUTF("Trip");
+        out.writeUTF("/storage/pier.jpg");
+        out.writeBoolean(true);
+        out.writeUTF("Pier");
+        out.writeInt(1);
+        out.writeUTF("Location");
+        out.writeUTF("Harbor");
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        ByteArrayOutputStream framed = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(framed);
+        frame.writeInt(payload.size());
+        frame.write(payload.toByteArray());
+        frame.writeInt((int) crc.getValue());
+        DataJournal.append(journalFile, framed.toByteArray());
+
+        Map<String, Album> replayed = snapshot();
+        DataJournal reloaded = new DataJournal();
+        assertEquals(2, reloaded.replay(journalFile, 1, replayed, new HashSet<>()));
+        assertFalse(reloaded.shouldCompact());
+        assertEquals(1_700_000_000_000L, photo(replayed, "Trip", "/storage/dunes.jpg").getDate());
+        Photo undated = photo(replayed, "Trip", "/storage/pier.jpg");
+        assertEquals(0, undated.getDate());
+        assertTrue(undated.getTags().contains(new Tag("Location", "Harbor")));
+    }
+
+    @Test
+    public void replay_tornTail_keepsEarlierRecords() throws IOException {
+        writeJournal();
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 3); // As if the process died while appending the caption
+        }
+
+        Map<String, Album> albums = snapshot();
+        DataJournal journal = new DataJournal();
+        assertEquals(2, journal.replay(journalFile, 1, albums, new HashSet<>()));
+
+        assertNotNull(photo(albums, "Trip", "/storage/dunes.jpg"));
+        Photo beach = photo(albums, "Trip", "/storage/beach.jpg");
+        assertTrue(beach.getTags().contains(new Tag("Person", "Bob")));
+        assertEquals("Beach", beach.getCaption());
+        assertTrue(journal.shouldCompact());
+    }
+
+    @Test
+    public void replay_checksumMismatch_stopsAtDamagedRecord() throws IOException {
+        writeJournal();
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long lastByte = file.length() - 5; // Inside the payload of the caption record
+            file.seek(lastByte);
+            int value = file.read();
+            file.seek(lastByte);
+            file.write(value ^ 0xFF);
+        }
+
+        Map<String, Album> albums = snapshot();
+        DataJournal journal = new DataJournal();
+        assertEquals(2, journal.replay(journalFile, 1, albums, new HashSet<>()));
+        assertEquals("Beach", photo(albums, "Trip", "/storage/beach.jpg").getCaption());
+        assertTrue(journal.shouldCompact());
+    }
+
+    @Test
+    public void replay_sequenceMismatch_ignoresJournal() throws IOException {
+        writeJournal();
+
+        Map<String, Album> albums = snapshot();
+        DataJournal journal = new DataJournal();
+        assertEquals(0, journal.replay(journalFile, 2, albums, new HashSet<>()));
+
+        assertEquals(1, albums.get("Trip").getPhotoCount());
+        assertEquals("Beach", photo(albums, "Trip", "/storage/beach.jpg").getCaption());
+        assertTrue(journal.shouldCompact());
+    }
+
+    @Test
+    public void compaction_resetsJournal() throws IOException {
+        writeJournal();
+        Map<String, Album> albums = snapshot();
+        DataJournal journal = new DataJournal();
+        journal.replay(journalFile, 1, albums, new HashSet<>());
+
+        Album trip = albums.get("Trip");
+        Photo beach = photo(albums, "Trip", "/storage/beach.jpg");
+        trip.removePhoto(beach);
+        journal.onPhotoRemoved(trip, beach);
+        long sequence = journal.startCompaction();
+        assertEquals(2, sequence);
+        assertFalse(journal.hasPendingRecords());
+        assertFalse(journal.shouldCompact());
+        DataJournal.reset(journalFile, sequence);
+        assertEquals(12, journalFile.length());
+
+        DataJournal reloaded = new DataJournal();
+        assertEquals(0, reloaded.replay(journalFile, sequence, snapshot(), new HashSet<>()));
+        assertFalse(reloaded.shouldCompact());
+        assertEquals(0, reloaded.replay(journalFile, 1, snapshot(), new HashSet<>()));
+        assertTrue(reloaded.shouldCompact());
+    }
+
+    @Test
+    public void compaction_afterReplay_keepsJournalOnlyChanges() throws IOException {
+        ShardStore store = new ShardStore(folder.getRoot());
+        store.write(store.capture(new HashSet<>(snapshot().values()), 1));
+        writeJournal();
+
+        // As on startup: load the shards, then replay the journal over them
+        store = new ShardStore(folder.getRoot());
+        StoreCodec.Snapshot loaded = store.load();
+        Map<String, Album> albums = new HashMap<>();
+        for (Album album : loaded.albums) {
+            albums.put(album.getName(), album);
+        }
+        DataJournal journal = new DataJournal();
+        Set<Album> changed = new HashSet<>();
+        assertEquals(3, journal.replay(journalFile, loaded.sequence, albums, changed));
+        store.markDirty(changed);
+
+        long sequence = journal.startCompaction();
+        ShardStore.Plan plan = store.capture(new HashSet<>(albums.values()), sequence);
+        assertEquals(1, plan.getShardWriteCount());
+        store.write(plan);
+        DataJournal.reset(journalFile, sequence);
+
+        Map<String, Album> reloaded = new HashMap<>();
+        for (Album album : new ShardStore(folder.getRoot()).load().albums) {
+            reloaded.put(album.getName(), album);
+        }
+        assertEquals(0, new DataJournal().replay(journalFile, sequence, reloaded, new HashSet<>()));
+        assertNotNull(photo(reloaded, "Trip", "/storage/dunes.jpg"));
+        assertEquals("Sunset", photo(reloaded, "Trip", "/storage/beach.jpg").getCaption());
+    }
+}
@@ -0,0 +1,94 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Resources;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Robolectric tests for loading the library in {@link Data}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataLoadTest {
+
+    /**
+     * The app context, keeping the library in shard files.
+     */
+    private static class FileStoreContext extends ContextWrapper {
+        private final Resources resources;
+
+        FileStoreContext(Context base) {
+            super(base);
+            Resources baseResources = base.getResources();
+            resources = new Resources(baseResources.getAssets(), baseResources.getDisplayMetrics(),
+                    baseResources.getConfiguration()) {
+                @Override
+                public boolean getBoolean(int id) {
+                    return false; // use_sqlite_store
+                }
+            };
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public Resources getResources() {
+            return resources;
+        }
+    }
+
+    @Test
+    public void loadBarrier_installsAlbumsBeforeCallbacksRunOnce() {
+        assumeFalse("The library was already loaded by another test", Data.isLoaded());
+        Context context = new FileStoreContext(RuntimeEnvironment.getApplication());
+        List<String> events = new ArrayList<>();
+
+        Data.loadDataAsync(context, () -> events.add("first callback, loaded " + Data.isLoaded()));
+        assertTrue(events.isEmpty()); // Callbacks only run on the main thread
+
+        Set<Album> albums = Data.getAlbums(); // The load barrier
+        assertTrue(Data.isLoaded());
+        assertEquals(List.of("first callback, loaded true"), events);
+
+        // The callback posted by the loader thread finds the albums in place and does nothing
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, events.size());
+        assertSame(albums, Data.getAlbums());
+
+        Data.loadDataAsync(context, () -> events.add("second callback"));
+        assertEquals(List.of("first callback, loaded true", "second callback"), events);
+        assertTrue(Data.getLoadTimeMs() >= 0);
+    }
+
+    @Test
+    public void getAlbums_offMainThread_throws() throws InterruptedException {
+        FutureTask<Set<Album>> task = new FutureTask<>(Data::getAlbums);
+        Thread thread = new Thread(task, "Worker");
+        thread.start();
+        thread.join();
+        try {
+            task.get();
+            fail("The library must only be used on the main thread");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jsrr.android_app93;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric tests for {@link DataWriter}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataWriterTest {
+
+    @Test
+    public void save_withoutChanges_isSkippedAndCounted() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        DataWriter writer = DataWriter.getInstance(context);
+        writer.requestSave();
+        writer.flush().get(5, TimeUnit.SECONDS); // The first save always writes a snapshot
+
+        int writes = writer.getWriteCount();
+        int skipped = writer.getSkippedSaveCount();
+        writer.requestSave();
+        writer.flush().get(5, TimeUnit.SECONDS);
+        assertEquals(skipped + 2, writer.getSkippedSaveCount());
+        assertEquals(writes, writer.getWriteCount());
+
+        Album album = new Album("Trip");
+        Data.addAlbum(album);
+        try {
+            writer.requestSave();
+            writer.flush().get(5, TimeUnit.SECONDS);
+            assertEquals(writes + 1, writer.getWriteCount());
+            assertEquals(skipped + 2, writer.getSkippedSaveCount());
+        } finally {
+            Data.removeAlbum(album);
+        }
+    }
+
+    @Test
+    public void failedWrite_isReportedAndRewritten() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        DataWriter writer = DataWriter.getInstance(context);
+        writer.requestSave();
+        writer.flush().get(5, TimeUnit.SECONDS);
+
+        // A directory in place of the journal makes the next append fail
+        File journalFile = writer.getJournalFile();
+        assertTrue(journalFile.delete() && journalFile.mkdir());
+        Album album = new Album("Trip");
+        Data.addAlbum(album);
+        try {
+            writer.requestSave();
+            writer.flush().get(5, TimeUnit.SECONDS);
+            fail("The failed write must be reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(journalFile.delete());
+            // The library has not changed since, but the files on disk may be incomplete
+            writer.flush().get(5, TimeUnit.SECONDS);
+            assertTrue(journalFile.isFile());
+        } finally {
+            Data.removeAlbum(album);
+        }
+    }
+}
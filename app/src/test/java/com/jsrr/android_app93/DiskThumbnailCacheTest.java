@@ -0,0 +1,103 @@
+package com.jsrr.android_app93;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric tests for {@link DiskThumbnailCache}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskThumbnailCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] thumbnail(int seed) {
+        byte[] encoded = new byte[100];
+        Arrays.fill(encoded, (byte) seed);
+        return encoded;
+    }
+
+    @Test
+    public void reopen_keepsThumbnailsAndTheirRecency() throws IOException {
+        File directory = folder.newFolder("thumbnails");
+        DiskThumbnailCache cache = new DiskThumbnailCache(directory, 300);
+        String[] keys = new String[4];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = DiskThumbnailCache.keyOf("/storage/" + i + ".jpg", 1000 + i, 5000);
+        }
+        cache.put(keys[0], thumbnail(0));
+        cache.put(keys[1], thumbnail(1));
+        cache.put(keys[2], thumbnail(2));
+        assertArrayEquals(thumbnail(0), cache.get(keys[0])); // Now the most recently used
+        assertEquals(300, cache.getSize());
+
+        // As if the process was killed: the journal is replayed by a new instance
+        cache = new DiskThumbnailCache(directory, 300);
+        assertEquals(3, cache.getEntryCount());
+        cache.put(keys[3], thumbnail(3));
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(keys[1]));
+        assertArrayEquals(thumbnail(0), cache.get(keys[0]));
+        assertArrayEquals(thumbnail(2), cache.get(keys[2]));
+        assertArrayEquals(thumbnail(3), cache.get(keys[3]));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, directory.list((dir, name) -> name.endsWith(".jpg")).length);
+    }
+
+    @Test
+    public void reopen_recoversFromCrashes() throws IOException {
+        File directory = folder.newFolder("thumbnails");
+        DiskThumbnailCache cache = new DiskThumbnailCache(directory, 10_000);
+        String kept = DiskThumbnailCache.keyOf("/kept.jpg", 1, 1);
+        String lost = DiskThumbnailCache.keyOf("/lost.jpg", 1, 1);
+        cache.put(kept, thumbnail(1));
+        cache.put(lost, thumbnail(2));
+
+        // A torn record, a thumbnail written without its record, a temporary file and a lost file
+        try (FileOutputStream out = new FileOutputStream(new File(directory, DiskThumbnailCache.journalFile), true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2});
+        }
+        String unrecorded = DiskThumbnailCache.keyOf("/unrecorded.jpg", 1, 1);
+        try (FileOutputStream out = new FileOutputStream(new File(directory, unrecorded + ".jpg"))) {
+            out.write(thumbnail(3));
+        }
+        assertTrue(new File(directory, "partial.tmp").createNewFile());
+        assertTrue(new File(directory, lost + ".jpg").delete());
+
+        cache = new DiskThumbnailCache(directory, 10_000);
+        assertArrayEquals(thumbnail(1), cache.get(kept));
+        assertNull(cache.get(lost));
+        assertNull(cache.get(unrecorded));
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(100, cache.getSize());
+        assertEquals(new HashSet<>(Arrays.asList(DiskThumbnailCache.journalFile, kept + ".jpg")),
+                new HashSet<>(Arrays.asList(directory.list())));
+
+        // A changed original gets a new key, so its old thumbnail is never returned
+        assertNotEquals(kept, DiskThumbnailCache.keyOf("/kept.jpg", 2, 1));
+        assertNotEquals(kept, DiskThumbnailCache.keyOf("/kept.jpg", 1, 2));
+    }
+
+    @Test
+    public void getThumbnail_writesThroughToDisk() {
+        DiskThumbnailCache cache = DiskThumbnailCache.getInstance(RuntimeEnvironment.getApplication());
+        int entries = cache.getEntryCount();
+        Photo photo = new Photo("Gallery", String.valueOf(android.R.drawable.ic_menu_camera));
+        assertNotNull(photo.getThumbnail(RuntimeEnvironment.getApplication()));
+        assertEquals(entries + 1, cache.getEntryCount());
+    }
+}
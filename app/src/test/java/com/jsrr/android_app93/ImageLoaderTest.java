@@ -0,0 +1,128 @@
+package com.jsrr.android_app93;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Robolectric tests for {@link ImageLoader}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ImageLoaderTest {
+
+    private final ExecutorService decoders = Executors.newFixedThreadPool(2);
+    private final Map<Photo, Bitmap> bitmaps = new ConcurrentHashMap<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        decoders.shutdownNow();
+    }
+
+    // Decodes only once released, so the test decides what is still pending
+    private Bitmap decode(Photo photo) {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return bitmaps.computeIfAbsent(photo, p -> Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888));
+    }
+
+    private ImageView view() {
+        return new ImageView(RuntimeEnvironment.getApplication());
+    }
+
+    /** Runs the main looper until the loader has shown the expected number of thumbnails. */
+    private void awaitLoaded(ImageLoader loader, int expectedCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loader.getLoadedCount() < expectedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+        Thread.sleep(50);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static Bitmap shown(ImageView view) {
+        return view.getDrawable() instanceof BitmapDrawable ? ((BitmapDrawable) view.getDrawable()).getBitmap() : null;
+    }
+
+    @Test
+    public void load_showsOnlyThePhotoTheViewWasLastBoundTo() throws Exception {
+        ImageLoader loader = new ImageLoader(decoders, this::decode);
+        ImageView reused = view();
+        ImageView recycled = view();
+        Photo first = new Photo("First", "/first.jpg");
+        Photo second = new Photo("Second", "/second.jpg");
+        Photo third = new Photo("Third", "/third.jpg");
+
+        loader.load(first, reused);
+        loader.load(second, reused);
+        loader.load(second, reused); // Binding the same photo again keeps its request
+        loader.load(third, recycled);
+        loader.cancel(recycled);
+        release.countDown();
+        awaitLoaded(loader, 1);
+
+        assertEquals(1, loader.getLoadedCount());
+        assertEquals(2, loader.getCancelledCount());
+        assertSame(bitmaps.get(second), shown(reused));
+        assertNull(recycled.getDrawable());
+    }
+
+    @Test
+    public void load_showsPlaceholderWhenDecodingFails() throws Exception {
+        ImageLoader loader = new ImageLoader(decoders, photo -> {
+            throw new IllegalStateException("Unreadable");
+        });
+        ImageView view = view();
+        loader.load(new Photo("Broken", "/broken.jpg"), view);
+        assertNull(view.getDrawable());
+        awaitLoaded(loader, 1);
+
+        assertEquals(1, loader.getLoadedCount());
+        assertNotNull(view.getDrawable());
+    }
+
+    @Test
+    public void load_neverDecodesOnTheMainThread() throws Exception {
+        ImageLoader loader = new ImageLoader(decoders, this::decode);
+        ImageView[] cells = new ImageView[12];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = view();
+        }
+        // Scroll through 5,000 photos, binding each cell again and again while nothing is decoded yet
+        long start = System.nanoTime();
+        for (int p = 0; p < 5000; p++) {
+            loader.load(new Photo("Photo " + p, "/storage/" + p + ".jpg"), cells[p % cells.length]);
+        }
+        double bindMs = (System.nanoTime() - start) / 1e6;
+        release.countDown();
+        awaitLoaded(loader, cells.length);
+
+        assertEquals(cells.length, loader.getLoadedCount());
+        for (ImageView cell : cells) {
+            assertNotNull(shown(cell));
+        }
+        assertTrue("Binding should never wait for a decode", bindMs < 2000);
+    }
+}
@@ -0,0 +1,137 @@
+package com.jsrr.android_app93;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MemoryPhotoRepository}.
+ */
+public class MemoryPhotoRepositoryTest {
+
+    private Set<Album> albums;
+    private MemoryPhotoRepository repository;
+
+    @Before
+    public void setUp() {
+        albums = new HashSet<>();
+        Random random = new Random(7);
+        for (int a = 0; a < 5; a++) {
+            Album album = new Album("Album " + a);
+            for (int p = 0; p < 200; p++) {
+                Photo photo = new Photo("Caption " + p, "/storage/" + a + "/" + p + ".jpg");
+                photo.addTag(new Tag("Location", "City " + random.nextInt(50)));
+                photo.addTag(new Tag("Person", "Person " + random.nextInt(100)));
+                album.addPhoto(photo);
+            }
+            albums.add(album);
+        }
+        repository = new MemoryPhotoRepository(albums);
+    }
+
+    private Set<Photo> scan(String tagType, String valuePrefix) {
+        Set<Photo> matches = new HashSet<>();
+        for (Album album : albums) {
+            for (Photo photo : album.getPhotos()) {
+                for (Tag tag : photo.getTags()) {
+                    if (tag.getName().equalsIgnoreCase(tagType)
+                            && tag.getValue().toLowerCase().startsWith(valuePrefix)) {
+                        matches.add(photo);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    private void assertMatchesScan(String tagType, String valuePrefix) {
+        assertEquals(scan(tagType, valuePrefix), repository.findPhotosByTag(tagType, valuePrefix));
+    }
+
+    @Test
+    public void findPhotosByTag_matchesFullScan() {
+        for (String prefix : new String[]{"c", "city 1", "city 12", "city 49", "nowhere"}) {
+            assertMatchesScan("Location", prefix);
+            assertMatchesScan("location", prefix);
+        }
+        assertMatchesScan("Person", "person 9");
+        assertTrue(repository.findPhotosByTag("Location", "").isEmpty());
+        assertTrue(repository.findPhotosByTag("Camera", "c").isEmpty());
+    }
+
+    @Test
+    public void index_isBuiltWhenMade() {
+        Album album = albums.iterator().next();
+        Photo photo = new Photo("Unreported", "/storage/unreported.jpg");
+        photo.addTag(new Tag("Location", "Unreported"));
+        album.addPhoto(photo);
+        // Searches never read the albums, so a change is only seen once it is reported
+        assertTrue(repository.findPhotosByTag("Location", "unreported").isEmpty());
+        repository.onPhotoAdded(album, photo);
+        assertEquals(Set.of(photo), repository.findPhotosByTag("Location", "unreported"));
+    }
+
+    @Test
+    public void tagChanges_updateIndex() {
+        repository.findPhotosByTag("Location", "c");
+        Album album = albums.iterator().next();
+        Photo photo = album.getPhotos().iterator().next();
+        Tag tag = new Tag("Location", "Piscataway");
+        photo.addTag(tag);
+        repository.onTagAdded(album, photo, tag);
+        assertEquals(Set.of(photo), repository.findPhotosByTag("Location", "pisc"));
+
+        photo.removeTag(tag);
+        repository.onTagRemoved(album, photo, tag);
+        assertTrue(repository.findPhotosByTag("Location", "pisc").isEmpty());
+        assertMatchesScan("Location", "city");
+    }
+
+    @Test
+    public void results_areCopiesLeftAloneByLaterChanges() {
+        Album album = albums.iterator().next();
+        Photo photo = album.getPhotos().iterator().next();
+        Tag tag = new Tag("Location", "Piscataway");
+        photo.addTag(tag);
+        repository.onTagAdded(album, photo, tag);
+        Photo found = repository.findPhotosByTag("Location", "pisc").iterator().next();
+        assertEquals(photo, found);
+        assertNotSame(photo, found);
+
+        photo.removeTag(tag);
+        repository.onTagRemoved(album, photo, tag);
+        assertTrue(found.getTags().contains(tag));
+    }
+
+    @Test
+    public void photoAndAlbumChanges_updateIndex() {
+        repository.findPhotosByTag("Location", "c");
+        Album[] pair = albums.toArray(new Album[0]);
+        Photo photo = pair[0].getPhotos().iterator().next();
+        Tag tag = new Tag("Person", "Moved");
+        photo.addTag(tag);
+        repository.onTagAdded(pair[0], photo, tag);
+
+        // Moving a photo is a removal from one album and an addition to another
+        pair[0].removePhoto(photo);
+        repository.onPhotoRemoved(pair[0], photo);
+        pair[1].addPhoto(photo);
+        repository.onPhotoAdded(pair[1], photo);
+        assertEquals(Set.of(photo), repository.findPhotosByTag("Person", "moved"));
+
+        albums.remove(pair[1]);
+        repository.onAlbumRemoved(pair[1]);
+        assertTrue(repository.findPhotosByTag("Person", "moved").isEmpty());
+        assertMatchesScan("Person", "person");
+
+        albums.add(pair[1]);
+        repository.onAlbumAdded(pair[1]);
+        assertEquals(Set.of(photo), repository.findPhotosByTag("Person", "moved"));
+        assertMatchesScan("Location", "city 3");
+    }
+}
@@ -0,0 +1,98 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ParallelScanner}.
+ */
+public class ParallelScannerTest {
+
+    private static List<Album> library(int albumCount, Random random) {
+        List<Album> albums = new ArrayList<>();
+        for (int a = 0; a < albumCount; a++) {
+            Album album = new Album("Album " + a);
+            // Some albums are empty, some much larger than a chunk
+            int photoCount = a % 5 == 0 ? 0 : random.nextInt(3 * ParallelScanner.CHUNK_SIZE);
+            for (int p = 0; p < photoCount; p++) {
+                Photo photo = new Photo("Caption " + random.nextInt(100), "/storage/" + a + "/" + p + ".jpg");
+                photo.addTag(new Tag("Location", "City " + random.nextInt(50)));
+                album.addPhoto(photo);
+            }
+            albums.add(album);
+        }
+        return albums;
+    }
+
+    private static Set<Photo> loop(Iterable<Photo> photos, PhotoQuery query) {
+        Set<Photo> matches = new LinkedHashSet<>();
+        for (Photo photo : photos) {
+            if (query.matches(photo)) {
+                matches.add(photo);
+            }
+        }
+        return matches;
+    }
+
+    @Test
+    public void filter_findsMatchesInLoopOrder() throws ParseException {
+        List<Album> albums = library(23, new Random(20));
+        PhotoQuery query = QueryParser.parse("location:\"city 1\" OR caption:7");
+        List<Photo> all = new ArrayList<>();
+        for (Album album : albums) {
+            all.addAll(album.getPhotos());
+        }
+        List<Photo> expected = new ArrayList<>(loop(all, query));
+        assertFalse(expected.isEmpty());
+
+        for (int parallelism : new int[]{1, 3}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                ParallelScanner scanner = new ParallelScanner(pool);
+                assertEquals(expected, new ArrayList<>(scanner.filter(all, query::matches)));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        assertTrue(ParallelScanner.getInstance().filter(new ArrayList<>(), query::matches).isEmpty());
+    }
+
+    @Test
+    public void check_marksMatchesAtTheirPositions() throws ParseException {
+        List<Photo> all = new ArrayList<>();
+        for (Album album : library(7, new Random(4))) {
+            all.addAll(album.getPhotos());
+        }
+        Photo[] photos = all.toArray(new Photo[0]);
+        assertTrue(photos.length > ParallelScanner.CHUNK_SIZE);
+        PhotoQuery query = QueryParser.parse("location:\"city 2\"");
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            boolean[] matched = new ParallelScanner(pool).check(photos, query::matches);
+            for (int i = 0; i < photos.length; i++) {
+                assertEquals(query.matches(photos[i]), matched[i]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void filter_checksSmallCollectionsOnCallingThread() {
+        List<Album> albums = library(2, new Random(2));
+        Set<Photo> photos = albums.get(1).getPhotos();
+        Thread caller = Thread.currentThread();
+        List<Photo> small = new ArrayList<>(photos).subList(0, 10);
+        Set<Photo> matches = ParallelScanner.getInstance().filter(small, photo -> Thread.currentThread() == caller);
+        assertEquals(small, new ArrayList<>(matches));
+    }
+}
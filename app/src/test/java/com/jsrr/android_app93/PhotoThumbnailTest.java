@@ -0,0 +1,66 @@
+package com.jsrr.android_app93;
+
+import android.graphics.Bitmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric tests for the thumbnails of {@link Photo} and the sizes its decoders pick.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PhotoThumbnailTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sampleSize_keepsShorterSideAtLeastTarget() {
+        assertEquals(1, BitmapFactoryPhotoDecoder.sampleSize(200, 200, 200));
+        assertEquals(1, BitmapFactoryPhotoDecoder.sampleSize(399, 1000, 200));
+        assertEquals(2, BitmapFactoryPhotoDecoder.sampleSize(400, 1000, 200));
+        assertEquals(8, BitmapFactoryPhotoDecoder.sampleSize(4000, 3000, 200)); // 12 MP, decoded at 500 by 375
+        assertEquals(16, BitmapFactoryPhotoDecoder.sampleSize(8160, 6120, 200)); // 50 MP, decoded at 510 by 382
+        assertEquals(1, BitmapFactoryPhotoDecoder.sampleSize(50, 80, 200));
+    }
+
+    @Test
+    public void centerCrop_makesExactSquare() {
+        for (int[] size : new int[][]{{300, 150}, {150, 300}, {200, 200}, {1000, 999}, {90, 60}}) {
+            Bitmap square = BitmapFactoryPhotoDecoder.centerCrop(Bitmap.createBitmap(size[0], size[1], Bitmap.Config.ARGB_8888), 200);
+            assertEquals(200, square.getWidth());
+            assertEquals(200, square.getHeight());
+        }
+    }
+
+    @Test
+    public void scaledSize_fitsShorterSideToTarget() {
+        assertArrayEquals(new int[]{267, 200}, ImageDecoderPhotoDecoder.scaledSize(4000, 3000, 200));
+        assertArrayEquals(new int[]{200, 400}, ImageDecoderPhotoDecoder.scaledSize(800, 1600, 200));
+        assertArrayEquals(new int[]{200, 200}, ImageDecoderPhotoDecoder.scaledSize(1000, 999, 200));
+        assertArrayEquals(new int[]{200, 300}, ImageDecoderPhotoDecoder.scaledSize(60, 90, 200)); // Small images are scaled up
+    }
+
+    @Test
+    public void getThumbnail_decodesFileToSquare() throws IOException {
+        File file = folder.newFile("wide.png");
+        ImageIO.write(new BufferedImage(1600, 800, BufferedImage.TYPE_INT_RGB), "png", file);
+        Photo photo = new Photo("Wide", file.getPath());
+        Bitmap thumbnail = photo.getThumbnail(RuntimeEnvironment.getApplication());
+        assertNotNull(thumbnail);
+        assertEquals(200, thumbnail.getWidth());
+        assertEquals(200, thumbnail.getHeight());
+    }
+}
@@ -0,0 +1,118 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PostingBitmap}.
+ */
+public class PostingBitmapTest {
+
+    private static BitSet toBitSet(PostingBitmap bitmap) {
+        BitSet bits = new BitSet();
+        int[] previous = {-1};
+        bitmap.forEach(ordinal -> {
+            assertTrue("Ordinals must increase", ordinal > previous[0]);
+            previous[0] = ordinal;
+            bits.set(ordinal);
+        });
+        assertEquals(bits.cardinality(), bitmap.cardinality());
+        return bits;
+    }
+
+    // Mixes sparse and dense chunks so every pair of container kinds meets
+    private static BitSet randomOrdinals(Random random) {
+        BitSet bits = new BitSet();
+        for (int chunk = 0; chunk < 4; chunk++) {
+            int count = random.nextBoolean() ? random.nextInt(100) : 3000 + random.nextInt(20_000);
+            int base = (chunk * 2 + random.nextInt(2)) << 16;
+            for (int i = 0; i < count; i++) {
+                bits.set(base + random.nextInt(65536));
+            }
+        }
+        return bits;
+    }
+
+    private static PostingBitmap toBitmap(BitSet bits) {
+        PostingBitmap bitmap = new PostingBitmap();
+        bits.stream().forEach(bitmap::add);
+        return bitmap;
+    }
+
+    @Test
+    public void addAndRemove_crossTheArrayLimit() {
+        PostingBitmap bitmap = new PostingBitmap();
+        for (int i = 0; i < 10_000; i++) {
+            bitmap.add(i * 3);
+        }
+        bitmap.add(3);
+        assertEquals(10_000, bitmap.cardinality());
+        assertTrue(bitmap.contains(29_997));
+        assertFalse(bitmap.contains(29_998));
+        long denseSize = bitmap.sizeInBytes();
+
+        for (int i = 0; i < 9_000; i++) {
+            bitmap.remove(i * 3);
+        }
+        assertEquals(1_000, bitmap.cardinality());
+        assertTrue(bitmap.sizeInBytes() < denseSize);
+        for (int i = 9_000; i < 10_000; i++) {
+            bitmap.remove(i * 3);
+        }
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    public void operations_matchBitSets() {
+        Random random = new Random(17);
+        for (int round = 0; round < 30; round++) {
+            BitSet a = randomOrdinals(random);
+            BitSet b = randomOrdinals(random);
+
+            PostingBitmap and = toBitmap(a);
+            and.and(toBitmap(b));
+            BitSet expected = (BitSet) a.clone();
+            expected.and(b);
+            assertEquals(expected, toBitSet(and));
+
+            PostingBitmap or = toBitmap(a);
+            or.or(toBitmap(b));
+            expected = (BitSet) a.clone();
+            expected.or(b);
+            assertEquals(expected, toBitSet(or));
+
+            PostingBitmap andNot = toBitmap(a);
+            andNot.andNot(toBitmap(b));
+            expected = (BitSet) a.clone();
+            expected.andNot(b);
+            assertEquals(expected, toBitSet(andNot));
+
+            PostingBitmap copy = new PostingBitmap(toBitmap(a));
+            copy.or(toBitmap(b));
+            assertEquals(a.cardinality(), toBitmap(a).cardinality());
+        }
+    }
+
+    @Test
+    public void union_matchesRepeatedOr() {
+        Random random = new Random(19);
+        List<PostingBitmap> bitmaps = new ArrayList<>();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 200; i++) {
+            BitSet bits = i % 50 == 0 ? randomOrdinals(random) : new BitSet();
+            for (int j = random.nextInt(40); j > 0; j--) {
+                bits.set(random.nextInt(300_000));
+            }
+            bitmaps.add(toBitmap(bits));
+            expected.or(bits);
+        }
+        assertEquals(expected, toBitSet(PostingBitmap.union(bitmaps)));
+        assertEquals(toBitSet(bitmaps.get(3)), toBitSet(PostingBitmap.union(bitmaps.subList(3, 4))));
+    }
+}
@@ -0,0 +1,118 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PrefixIndex}.
+ */
+public class PrefixIndexTest {
+
+    private static final String[] VALUES = {"new brunswick", "new york", "newark", "nj", "piscataway", "princeton"};
+
+    private static List<String> valuesWithPrefix(PrefixIndex index, String prefix) {
+        List<String> matches = new ArrayList<>();
+        int start = index.rangeStart(prefix);
+        for (int i = start; i < index.rangeEnd(prefix, start); i++) {
+            matches.add(index.valueAt(i));
+        }
+        return matches;
+    }
+
+    private static List<Integer> ordinals(PostingBitmap bitmap) {
+        List<Integer> ordinals = new ArrayList<>();
+        bitmap.forEach(ordinals::add);
+        return ordinals;
+    }
+
+    @Test
+    public void range_coversExactlyTheValuesWithPrefix() {
+        PrefixIndex index = new PrefixIndex();
+        for (int i = 0; i < VALUES.length; i++) {
+            index.add(VALUES[i], i);
+        }
+        assertEquals(List.of("new brunswick", "new york", "newark"), valuesWithPrefix(index, "new"));
+        assertEquals(List.of("new brunswick", "new york"), valuesWithPrefix(index, "new "));
+        assertEquals(List.of("nj"), valuesWithPrefix(index, "nj"));
+        assertEquals(List.of("piscataway", "princeton"), valuesWithPrefix(index, "p"));
+        assertTrue(valuesWithPrefix(index, "a").isEmpty());
+        assertTrue(valuesWithPrefix(index, "z").isEmpty());
+        assertTrue(valuesWithPrefix(index, "new jersey").isEmpty());
+    }
+
+    @Test
+    public void addAndRemove_keepValuesSortedAndUnique() {
+        PrefixIndex index = new PrefixIndex();
+        int first = 1;
+        int second = 70_000;
+        index.add("newark", first);
+        index.add("newark", second);
+        index.add("new york", first);
+        assertEquals(2, index.size());
+        assertEquals("new york", index.valueAt(0));
+
+        PostingBitmap photos = index.collect("newa");
+        assertEquals(2, photos.cardinality());
+        assertTrue(photos.contains(first) && photos.contains(second));
+        assertEquals(3, index.count("new"));
+
+        index.remove("newark", first);
+        assertEquals(2, index.size());
+        index.remove("newark", second);
+        assertEquals(List.of("new york"), valuesWithPrefix(index, "new"));
+        index.remove("new york", first);
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void bulkConstructor_matchesIncrementalAdds() {
+        Map<String, PostingBitmap> postings = new HashMap<>();
+        PrefixIndex incremental = new PrefixIndex();
+        for (int i = 0; i < 500; i++) {
+            String value = VALUES[i % VALUES.length] + " " + (i % 37);
+            postings.computeIfAbsent(value, v -> new PostingBitmap()).add(i);
+            incremental.add(value, i);
+        }
+        PrefixIndex bulk = new PrefixIndex(postings);
+        assertEquals(incremental.size(), bulk.size());
+        for (int i = 0; i < bulk.size(); i++) {
+            assertEquals(incremental.valueAt(i), bulk.valueAt(i));
+            assertEquals(ordinals(incremental.photosAt(i)), ordinals(bulk.photosAt(i)));
+        }
+    }
+
+    @Test
+    public void collect_matchesScanOfLowercasedValues() {
+        Random random = new Random(1);
+        String[] values = new String[5000];
+        Map<String, PostingBitmap> postings = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            // Mixed-case values like users type
+            String value = Integer.toString(random.nextInt(values.length), 36);
+            values[i] = Character.toUpperCase(value.charAt(0)) + value.substring(1);
+            postings.computeIfAbsent(values[i].toLowerCase(), v -> new PostingBitmap()).add(i);
+        }
+        PrefixIndex index = new PrefixIndex(postings);
+        for (int q = 0; q < 50; q++) {
+            String value = values[random.nextInt(values.length)].toLowerCase();
+            String prefix = value.substring(0, Math.min(value.length(), 1 + q % 3));
+            BitSet fromScan = new BitSet();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i].toLowerCase().startsWith(prefix)) {
+                    fromScan.set(i);
+                }
+            }
+            BitSet fromIndex = new BitSet();
+            index.collect(prefix).forEach(fromIndex::set);
+            assertEquals(prefix, fromScan, fromIndex);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.jsrr.android_app93;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link QueryCache}.
+ */
+public class QueryCacheTest {
+
+    private Set<Album> albums;
+    private Album album;
+    private MemoryPhotoRepository repository;
+    private ScanPhotoRepository scan;
+
+    @Before
+    public void setUp() {
+        albums = new HashSet<>();
+        Random random = new Random(5);
+        album = new Album("Album");
+        for (int p = 0; p < 500; p++) {
+            Photo photo = new Photo("Caption " + p, "/storage/" + p + ".jpg");
+            photo.addTag(new Tag("Location", "City " + random.nextInt(30)));
+            photo.addTag(new Tag("Person", "Person " + random.nextInt(60)));
+            album.addPhoto(photo);
+        }
+        albums.add(album);
+        repository = new MemoryPhotoRepository(albums);
+        scan = new ScanPhotoRepository(albums);
+    }
+
+    private static TagQuery location(String prefix) {
+        return new TagQuery("Location", prefix, TagQuery.Operator.SINGLE, "", "");
+    }
+
+    @Test
+    public void search_repeatedNormalizedQueryIsAHit() throws Exception {
+        QueryCache cache = new QueryCache(8);
+        assertEquals(location("city 1").run(scan), cache.search(location("City 1"), repository, 0));
+        assertEquals(location("city 1").run(scan), cache.search(location(" city 1 "), repository, 0));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Operands of AND and OR may come in any order
+        QueryExpression typed = QueryParser.parse("(location:\"city 2\" OR location:\"city 3\") person:\"person 1\"");
+        QueryExpression reordered = QueryParser.parse("PERSON:\"Person 1\" AND (Location:\"City 3\" OR location:\"city 2\")");
+        assertEquals(typed, reordered);
+        assertEquals(typed.hashCode(), reordered.hashCode());
+        Set<Photo> expected = typed.run(scan);
+        assertEquals(expected, cache.search(typed, repository, 0));
+        assertEquals(expected, cache.search(reordered, repository, 0));
+        assertEquals(expected, cache.search(reordered, scan, 0)); // Not shared with another repository
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void search_dropsLeastRecentlyUsed() {
+        QueryCache cache = new QueryCache(2);
+        cache.search(location("city 1"), repository, 0);
+        cache.search(location("city 2"), repository, 0);
+        cache.search(location("city 1"), repository, 0); // city 2 is now the least recently used
+        cache.search(location("city 3"), repository, 0);
+        assertEquals(2, cache.size());
+
+        cache.search(location("city 1"), repository, 0);
+        assertEquals(2, cache.getHitCount());
+        cache.search(location("city 2"), repository, 0);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void search_newGenerationDropsResults() {
+        QueryCache cache = new QueryCache(8);
+        TagQuery query = location("city 1");
+        Set<Photo> before = cache.search(query, repository, 0);
+
+        // A photo is tagged, which moves the search generation on
+        Photo photo = new Photo("New", "/storage/new.jpg");
+        photo.addTag(new Tag("Location", "City 10 Harbor"));
+        album.addPhoto(photo);
+        repository.onPhotoAdded(album, photo);
+
+        Set<Photo> after = cache.search(query, repository, 1);
+        assertEquals(before.size() + 1, after.size());
+        assertTrue(after.contains(photo));
+        assertEquals(0, cache.getHitCount());
+
+        // A search started at the old generation is neither answered from nor kept in the cache
+        cache.search(location("city 2"), repository, 0);
+        assertEquals(1, cache.size());
+        assertEquals(after, cache.search(query, repository, 1));
+        assertEquals(1, cache.getHitCount());
+
+        // Removing a photo frees its ordinal; the new generation never hands out the old results
+        album.removePhoto(photo);
+        repository.onPhotoRemoved(album, photo);
+        assertEquals(query.run(scan), cache.search(query, repository, 2));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void searchHistory_looksUpQueriesItCannotAnswer() {
+        QueryCache cache = new QueryCache(8);
+        new SearchHistory(cache).search(location("city 1"), repository, 0);
+
+        // A new search screen starts with an empty history but the same cache
+        SearchHistory history = new SearchHistory(cache);
+        assertEquals(location("city 1").run(scan), history.search(location("city 1"), repository, 0));
+        assertEquals(1, cache.getHitCount());
+        history.search(location("city 1"), repository, 0);
+        assertEquals(1, history.getReusedCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(Arrays.asList(1, 1), Arrays.asList(history.getFullCount(), cache.getMissCount()));
+    }
+}
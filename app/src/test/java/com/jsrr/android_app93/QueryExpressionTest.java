@@ -0,0 +1,170 @@
+package com.jsrr.android_app93;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link QueryExpression}.
+ */
+public class QueryExpressionTest {
+
+    private Set<Album> albums;
+    private MemoryPhotoRepository repository;
+
+    @Before
+    public void setUp() {
+        albums = new HashSet<>();
+        Random random = new Random(13);
+        for (int a = 0; a < 4; a++) {
+            Album album = new Album("Album " + a);
+            for (int p = 0; p < 250; p++) {
+                Photo photo = new Photo("Caption " + p, "/storage/" + a + "/" + p + ".jpg");
+                photo.addTag(new Tag("Location", "City " + random.nextInt(40)));
+                for (int t = random.nextInt(3); t >= 0; t--) {
+                    photo.addTag(new Tag("Person", "Person " + random.nextInt(80)));
+                }
+                album.addPhoto(photo);
+            }
+            albums.add(album);
+        }
+        repository = new MemoryPhotoRepository(albums);
+    }
+
+    private Set<Photo> filter(QueryExpression query) {
+        Set<Photo> matches = new LinkedHashSet<>();
+        for (Album album : albums) {
+            for (Photo photo : album.getPhotos()) {
+                if (query.matches(photo)) {
+                    matches.add(photo);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private String randomOperand(Random random, int depth) {
+        switch (depth > 2 ? 0 : random.nextInt(4)) {
+            case 0:
+                return random.nextBoolean() ? "location:\"city " + random.nextInt(40) + "\""
+                        : "person:\"person " + random.nextInt(8) + "\"";
+            case 1:
+                return "(" + randomOperand(random, depth + 1) + " OR " + randomOperand(random, depth + 1) + ")";
+            case 2:
+                return "(" + randomOperand(random, depth + 1) + " AND NOT " + randomOperand(random, depth + 1) + ")";
+            default:
+                return randomOperand(random, depth + 1) + " AND " + randomOperand(random, depth + 1);
+        }
+    }
+
+    @Test
+    public void run_matchesFilteringEveryPhoto() throws ParseException {
+        Random random = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            QueryExpression query = QueryParser.parse(randomOperand(random, 0));
+            assertEquals(query.toString(), filter(query), query.run(repository));
+            assertEquals(query.toString(), filter(query), query.run(new ScanPhotoRepository(albums)));
+        }
+    }
+
+    @Test
+    public void run_startsWithTheMostSelectiveTerm() throws ParseException {
+        CountingRepository counting = new CountingRepository(repository);
+        QueryExpression query = QueryParser.parse("location:city AND person:person AND location:\"city 7\" AND NOT person:\"person 1\"");
+        assertEquals(filter(query), query.run(counting));
+        // Only "city 7" is fetched; the other terms match more photos than are left, so they are checked directly
+        assertEquals(1, counting.fetched);
+
+        counting.fetched = 0;
+        assertTrue(QueryParser.parse("location:city AND person:nobody AND person:person").run(counting).isEmpty());
+        assertEquals(0, counting.fetched);
+    }
+
+    @Test
+    public void run_checksPhotosAsLastReported() throws ParseException {
+        QueryExpression query = QueryParser.parse("location:\"city 7\" AND person:person");
+        Album album = albums.iterator().next();
+        Photo photo = null;
+        for (Photo candidate : album.getPhotos()) {
+            if (candidate.getTags().contains(new Tag("Location", "City 7"))) {
+                photo = candidate;
+            }
+        }
+        assertNotNull(photo);
+        Set<Tag> people = new HashSet<>();
+        for (Tag tag : photo.getTags()) {
+            if (tag.getName().equals("Person")) {
+                people.add(tag);
+            }
+        }
+        for (Tag tag : people) {
+            photo.removeTag(tag);
+        }
+        // "person:person" is checked directly, against the photo as the index last saw it
+        assertTrue(query.run(repository).contains(photo));
+        for (Tag tag : people) {
+            repository.onTagRemoved(album, photo, tag);
+        }
+        assertFalse(query.run(repository).contains(photo));
+        assertEquals(filter(query), query.run(repository));
+    }
+
+    @Test
+    public void narrows_followsTypingInIncludedAndExcludedTerms() throws ParseException {
+        QueryExpression earlier = QueryParser.parse("location:city AND NOT person:\"person 1\"");
+        assertTrue(QueryParser.parse("location:\"city 1\" AND NOT person:\"person 1\"").narrows(earlier));
+        assertTrue(QueryParser.parse("location:city AND NOT person:person").narrows(earlier));
+        assertFalse(QueryParser.parse("location:city AND NOT person:\"person 12\"").narrows(earlier));
+        assertFalse(QueryParser.parse("location:city OR person:\"person 1\"").narrows(earlier));
+        assertFalse(new TagQuery("Location", "city", TagQuery.Operator.SINGLE, "", "").narrows(earlier));
+
+        SearchHistory history = new SearchHistory();
+        ScanPhotoRepository scan = new ScanPhotoRepository(albums);
+        for (String text : new String[]{"location:c", "location:ci AND NOT person:p", "location:ci AND NOT person:pe",
+                "location:cit AND NOT person:p", "location:ci AND NOT person:p"}) {
+            QueryExpression query = QueryParser.parse(text);
+            assertEquals(text, filter(query), history.search(query, scan, 0));
+        }
+        assertEquals(1, history.getRefinedCount());
+        assertEquals(1, history.getReusedCount());
+    }
+
+    private static class CountingRepository implements PhotoRepository {
+        private final PhotoRepository repository;
+        int fetched = 0;
+
+        CountingRepository(PhotoRepository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Set<Photo> findPhotosByTag(String tagType, String valuePrefix) {
+            fetched++;
+            return repository.findPhotosByTag(tagType, valuePrefix);
+        }
+
+        @Override
+        public int countPhotosByTag(String tagType, String valuePrefix) {
+            return repository.countPhotosByTag(tagType, valuePrefix);
+        }
+
+        @Override
+        public Set<Photo> findPhotosContaining(String tagType, String text) {
+            fetched++;
+            return repository.findPhotosContaining(tagType, text);
+        }
+
+        @Override
+        public Set<Photo> findPhotosByCaption(String wordPrefix) {
+            fetched++;
+            return repository.findPhotosByCaption(wordPrefix);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link QueryParser}.
+ */
+public class QueryParserTest {
+
+    private static String parsed(String text) throws ParseException {
+        return QueryParser.parse(text).toString();
+    }
+
+    private static int errorOffset(String text) {
+        try {
+            QueryParser.parse(text);
+        } catch (ParseException e) {
+            return e.getErrorOffset();
+        }
+        fail("Parsed " + text);
+        return -1;
+    }
+
+    @Test
+    public void parse_readsOperatorsAndPrecedence() throws ParseException {
+        assertEquals("person:alice AND (location:nj OR location:ny) AND NOT person:bob",
+                parsed("person:alice AND (location:nj OR location:ny) AND NOT person:bob"));
+        assertEquals("person:a OR person:b AND location:c", parsed("Person:A or person:b and LOCATION:c"));
+        assertEquals("person:a AND location:b", parsed("person:a location:b"));
+        assertEquals("location:\"new york\" AND person:al", parsed("location:\"New York\" person:al"));
+        assertEquals("location:\"new yo\"", parsed("location:\"new yo"));
+        assertEquals("person:a AND NOT (person:b OR person:c)", parsed("person:a AND NOT (person:b OR person:c)"));
+        assertEquals("person:a", parsed("NOT NOT person:a"));
+        assertEquals(QueryParser.parse("((person:a)) AND (person:b AND person:c)"),
+                QueryParser.parse("person:a person:b person:c"));
+    }
+
+    @Test
+    public void parse_reportsWhereTheMistakeIs() {
+        assertEquals(0, errorOffset("alice"));
+        assertEquals(17, errorOffset("person:alice AND "));
+        assertEquals(21, errorOffset("person:alice AND (x:y"));
+        assertEquals(12, errorOffset("person:alice)"));
+        assertEquals(0, errorOffset("NOT person:bob"));
+        assertEquals(12, errorOffset("person:a OR NOT person:b"));
+        assertEquals(0, errorOffset(":alice"));
+    }
+
+    @Test
+    public void isQuery_needsATerm() {
+        assertTrue(QueryParser.isQuery("person:al"));
+        assertFalse(QueryParser.isQuery("new york"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RankedResults} and the relevance of queries.
+ */
+public class RankedResultsTest {
+
+    private static Photo photo(String path, long date, String caption, String... tags) {
+        Photo photo = new Photo(caption, path);
+        photo.setDate(date);
+        for (int i = 0; i < tags.length; i += 2) {
+            photo.addTag(new Tag(tags[i], tags[i + 1]));
+        }
+        return photo;
+    }
+
+    private static List<Photo> all(RankedResults results, int pageSize) {
+        List<Photo> ranked = new ArrayList<>();
+        while (results.hasMore()) {
+            List<Photo> page = results.nextPage(pageSize);
+            assertTrue(page.size() <= pageSize);
+            ranked.addAll(page);
+        }
+        assertTrue(results.nextPage(pageSize).isEmpty());
+        return ranked;
+    }
+
+    @Test
+    public void nextPage_ranksExactThenPrefixThenSubstringThenNewest() {
+        Photo exactOld = photo("/exactOld", 10, null, "Location", "York");
+        Photo exactNew = photo("/exactNew", 20, null, "Location", "york");
+        Photo prefix = photo("/prefix", 30, null, "Location", "Yorktown");
+        Photo substring = photo("/substring", 40, null, "Location", "New York");
+        TagQuery query = new TagQuery("Location", "york", TagQuery.Operator.SINGLE, "", "", true);
+        assertEquals(PhotoQuery.SUBSTRING, query.relevance(substring));
+
+        RankedResults results = new RankedResults(Arrays.asList(substring, exactOld, prefix, exactNew), query);
+        assertEquals(4, results.size());
+        assertEquals(Arrays.asList(exactNew, exactOld), results.nextPage(2));
+        assertEquals(Arrays.asList(prefix, substring), results.nextPage(5));
+        assertFalse(results.hasMore());
+
+        // Without a query only the date counts
+        results = new RankedResults(Arrays.asList(exactOld, substring, prefix), null);
+        assertEquals(Arrays.asList(substring, prefix, exactOld), all(results, 1));
+    }
+
+    @Test
+    public void relevance_addsUpMatchedTermsOfTypedQueries() throws ParseException {
+        Photo photo = photo("/p", 0, "Sunset at the beach", "Location", "Hawaii", "Person", "Alice");
+        assertEquals(PhotoQuery.EXACT + PhotoQuery.PREFIX,
+                QueryParser.parse("person:alice AND location:haw").relevance(photo));
+        assertEquals(PhotoQuery.PREFIX, QueryParser.parse("location:haw OR person:bob").relevance(photo));
+        assertEquals(PhotoQuery.EXACT, QueryParser.parse("caption:beach AND NOT person:bob").relevance(photo));
+        assertEquals(PhotoQuery.PREFIX, QueryParser.parse("caption:sun").relevance(photo));
+        assertEquals(PhotoQuery.SUBSTRING, QueryParser.parse("location:*wai").relevance(photo));
+        assertEquals(PhotoQuery.EXACT + PhotoQuery.PREFIX,
+                new TagQuery("Person", "ALICE", TagQuery.Operator.AND, "Location", "h").relevance(photo));
+    }
+
+    @Test
+    public void pages_matchFullSort() {
+        Random random = new Random(19);
+        Set<Photo> photos = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            String[] values = {"ann", "anna", "annabel", "joanna"};
+            photos.add(photo("/" + i, random.nextInt(50), null, "Person", values[random.nextInt(values.length)]));
+        }
+        TagQuery query = new TagQuery("Person", "ann", TagQuery.Operator.SINGLE, "", "", true);
+        List<Photo> expected = new ArrayList<>(photos);
+        expected.sort(Comparator.comparingInt((Photo p) -> -query.relevance(p))
+                .thenComparingLong(p -> -p.getDate())
+                .thenComparing(Photo::getPathName));
+
+        assertEquals(expected, all(new RankedResults(photos, query), 60));
+        assertEquals(expected, all(new RankedResults(photos, query), 7));
+    }
+}
@@ -0,0 +1,137 @@
+package com.jsrr.android_app93;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Robolectric tests for {@link SearchExecutor}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SearchExecutorTest {
+
+    private final SearchExecutor executor = new SearchExecutor(100);
+    private final List<List<Photo>> delivered = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    private static Set<Photo> photos(String... paths) {
+        Set<Photo> photos = new LinkedHashSet<>();
+        for (String path : paths) {
+            photos.add(new Photo(null, path));
+        }
+        return photos;
+    }
+
+    /** Runs the main looper until the background thread has posted its results. */
+    private void awaitDelivery(int expectedCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getCompletedCount() < expectedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+    }
+
+    @Test
+    public void submit_debouncesBurstIntoOneSearch() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        for (String prefix : new String[]{"n", "ne", "new"}) {
+            executor.submit(() -> {
+                runs.incrementAndGet();
+                return photos("/" + prefix);
+            }, delivered::add);
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(30));
+        }
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100));
+        awaitDelivery(1);
+
+        assertEquals(1, runs.get());
+        assertEquals(1, delivered.size());
+        assertEquals(new Photo(null, "/new"), delivered.get(0).get(0));
+    }
+
+    @Test
+    public void newerSearch_dropsResultsOfRunningSearch() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submitNow(() -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return photos("/stale");
+        }, delivered::add);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.submitNow(() -> photos("/fresh"), delivered::add);
+        shadowOf(Looper.getMainLooper()).idle();
+        release.countDown();
+        awaitDelivery(1);
+        Thread.sleep(50);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, executor.getCancelledCount());
+        assertEquals(1, delivered.size());
+        assertEquals(new Photo(null, "/fresh"), delivered.get(0).get(0));
+    }
+
+    @Test
+    public void cancel_preventsDelivery() throws Exception {
+        executor.submit(() -> photos("/cancelled"), delivered::add);
+        executor.cancel();
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(200));
+        Thread.sleep(50);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertTrue(delivered.isEmpty());
+        assertEquals(0, executor.getCompletedCount());
+    }
+
+    @Test
+    public void loadMore_deliversRankedPagesUntilAllShown() throws Exception {
+        SearchExecutor pager = new SearchExecutor(100, 2);
+        try {
+            Set<Photo> photos = photos("/a", "/b", "/c", "/d", "/e");
+            long date = 1000;
+            for (Photo photo : photos) {
+                photo.setDate(date += 1000);
+            }
+            pager.submitNow(() -> photos, null, delivered::add);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pager.getCompletedCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+                shadowOf(Looper.getMainLooper()).idle();
+            }
+            while (pager.hasMore() && System.currentTimeMillis() < deadline) {
+                pager.loadMore(delivered::add);
+                Thread.sleep(5);
+                shadowOf(Looper.getMainLooper()).idle();
+            }
+
+            assertFalse(pager.hasMore());
+            assertEquals(3, delivered.size());
+            assertEquals(new ArrayList<>(photos("/e", "/d")), delivered.get(0));
+            assertEquals(new ArrayList<>(photos("/c", "/b")), delivered.get(1));
+            assertEquals(new ArrayList<>(photos("/a")), delivered.get(2));
+        } finally {
+            pager.shutdown();
+        }
+    }
+}
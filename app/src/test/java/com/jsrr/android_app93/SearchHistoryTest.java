@@ -0,0 +1,122 @@
+package com.jsrr.android_app93;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SearchHistory} and {@link TagQuery}.
+ */
+public class SearchHistoryTest {
+
+    private Set<Album> albums;
+    private MemoryPhotoRepository repository;
+    private ScanPhotoRepository scan;
+
+    @Before
+    public void setUp() {
+        albums = new HashSet<>();
+        Random random = new Random(11);
+        for (int a = 0; a < 4; a++) {
+            Album album = new Album("Album " + a);
+            for (int p = 0; p < 250; p++) {
+                Photo photo = new Photo("Caption " + p, "/storage/" + a + "/" + p + ".jpg");
+                photo.addTag(new Tag("Location", "City " + random.nextInt(60)));
+                photo.addTag(new Tag("Person", "Person " + random.nextInt(120)));
+                album.addPhoto(photo);
+            }
+            albums.add(album);
+        }
+        repository = new MemoryPhotoRepository(albums);
+        scan = new ScanPhotoRepository(albums);
+    }
+
+    @Test
+    public void narrows_onlyWhenEveryPrefixExtends() {
+        TagQuery city = new TagQuery("Location", "Ci", TagQuery.Operator.SINGLE, "Person", "p");
+        assertTrue(new TagQuery("Location", "cit", TagQuery.Operator.SINGLE, "", "").narrows(city));
+        assertFalse(new TagQuery("Location", "c", TagQuery.Operator.SINGLE, "", "").narrows(city));
+        assertFalse(new TagQuery("Person", "cit", TagQuery.Operator.SINGLE, "", "").narrows(city));
+        assertFalse(new TagQuery("Location", "cit", TagQuery.Operator.OR, "Person", "p").narrows(city));
+
+        TagQuery both = new TagQuery("Location", "city", TagQuery.Operator.AND, "Person", "p");
+        assertTrue(new TagQuery("Location", "city 1", TagQuery.Operator.AND, "Person", "pe").narrows(both));
+        assertFalse(new TagQuery("Location", "city 1", TagQuery.Operator.AND, "Person", "").narrows(both));
+
+        // An empty prefix matches nothing, so typing the first character is not a refinement
+        TagQuery empty = new TagQuery("Location", "", TagQuery.Operator.SINGLE, "", "");
+        assertFalse(new TagQuery("Location", "c", TagQuery.Operator.SINGLE, "", "").narrows(empty));
+    }
+
+    private SearchHistory type(PhotoRepository searched) {
+        Random random = new Random(3);
+        SearchHistory history = new SearchHistory();
+        TagQuery.Operator[] operators = TagQuery.Operator.values();
+        for (int session = 0; session < 40; session++) {
+            String primary = "city " + random.nextInt(60);
+            String secondary = "person " + random.nextInt(120);
+            TagQuery.Operator operator = operators[random.nextInt(operators.length)];
+            int primaryLength = 0;
+            int secondaryLength = random.nextInt(secondary.length() + 1);
+            for (int key = 0; key < 30; key++) {
+                // Mostly typing, sometimes backspacing
+                if (random.nextInt(3) == 0) {
+                    primaryLength = Math.max(0, primaryLength - 1);
+                } else {
+                    primaryLength = Math.min(primary.length(), primaryLength + 1);
+                }
+                TagQuery query = new TagQuery("Location", primary.substring(0, primaryLength).toUpperCase(),
+                        operator, "Person", secondary.substring(0, secondaryLength));
+                assertEquals(query.toString(), query.run(scan), history.search(query, searched, 0));
+            }
+        }
+        assertTrue(history.getReusedCount() > 0);
+        return history;
+    }
+
+    @Test
+    public void typingAndBackspacing_refinesScans() {
+        SearchHistory history = type(scan);
+        assertTrue(history.getRefinedCount() > 0);
+        assertTrue(history.getFullCount() < history.getReusedCount() + history.getRefinedCount());
+    }
+
+    @Test
+    public void typingAndBackspacing_onlyReusesWithIndex() {
+        SearchHistory history = type(repository);
+        assertEquals(0, history.getRefinedCount());
+    }
+
+    @Test
+    public void libraryChange_discardsHistory() {
+        SearchHistory history = new SearchHistory();
+        TagQuery city = new TagQuery("Location", "city", TagQuery.Operator.SINGLE, "", "");
+        TagQuery city1 = new TagQuery("Location", "city 1", TagQuery.Operator.SINGLE, "", "");
+        history.search(city, scan, 0);
+        Set<Photo> before = history.search(city1, scan, 0);
+        assertEquals(city1.run(scan), before);
+        assertEquals(1, history.getRefinedCount());
+
+        Photo photo = null;
+        for (Album album : albums) {
+            for (Photo candidate : album.getPhotos()) {
+                if (!before.contains(candidate)) {
+                    photo = candidate;
+                }
+            }
+        }
+        assertNotNull(photo);
+        photo.addTag(new Tag("Location", "City 1000"));
+
+        Set<Photo> after = history.search(city1, scan, 1);
+        assertTrue(after.contains(photo));
+        assertEquals(city1.run(scan), after);
+        assertEquals(0, history.getReusedCount());
+        assertEquals(2, history.getFullCount());
+    }
+}
@@ -0,0 +1,157 @@
+package com.jsrr.android_app93;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ShardStore}.
+ */
+public class ShardStoreTest {
+
+    private File filesDir;
+    private File shardDir;
+
+    @Before
+    public void setUp() throws IOException {
+        filesDir = Files.createTempDirectory("shards").toFile();
+        shardDir = new File(filesDir, ShardStore.shardDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        File[] shards = shardDir.listFiles();
+        if (shards != null) {
+            for (File file : shards) {
+                file.delete();
+            }
+        }
+        shardDir.delete();
+        new File(filesDir, ShardStore.manifestFile).delete();
+        filesDir.delete();
+    }
+
+    private static Album album(String name, int photoCount) {
+        Album album = new Album(name);
+        for (int i = 0; i < photoCount; i++) {
+            Photo photo = new Photo("Caption " + i, "/storage/" + name + "/" + i + ".jpg");
+            photo.addTag(new Tag("Person", "Person " + i));
+            album.addPhoto(photo);
+        }
+        return album;
+    }
+
+    private Map<String, Long> shardTimes() {
+        Map<String, Long> times = new HashMap<>();
+        for (File file : shardDir.listFiles()) {
+            times.put(file.getName(), file.lastModified());
+        }
+        return times;
+    }
+
+    @Test
+    public void save_rewritesOnlyDirtyShards() throws Exception {
+        ShardStore store = new ShardStore(filesDir);
+        Album first = album("First", 10);
+        Album second = album("Second", 10);
+        Album third = album("Third", 10);
+        Set<Album> albums = new HashSet<>(Set.of(first, second, third));
+
+        ShardStore.Plan initial = store.capture(albums, 1);
+        assertEquals(3, initial.getShardWriteCount());
+        store.write(initial);
+        Map<String, Long> before = shardTimes();
+        assertEquals(3, before.size());
+
+        Photo photo = second.getPhotos().iterator().next();
+        Tag tag = new Tag("Location", "Piscataway");
+        photo.addTag(tag);
+        store.onTagAdded(second, photo, tag);
+        ShardStore.Plan update = store.capture(albums, 2);
+        assertEquals(1, update.getShardWriteCount());
+        store.write(update);
+
+        Map<String, Long> after = shardTimes();
+        assertEquals(3, after.size());
+        int unchanged = 0;
+        for (Map.Entry<String, Long> entry : before.entrySet()) {
+            if (entry.getValue().equals(after.get(entry.getKey()))) {
+                unchanged++;
+            }
+        }
+        assertEquals(2, unchanged);
+
+        StoreCodec.Snapshot loaded = new ShardStore(filesDir).load();
+        assertEquals(2, loaded.sequence);
+        for (Album album : loaded.albums) {
+            if (album.getName().equals("Second")) {
+                boolean found = false;
+                for (Photo loadedPhoto : album.getPhotos()) {
+                    found |= loadedPhoto.getTags().contains(tag);
+                }
+                assertTrue(found);
+            }
+        }
+    }
+
+    @Test
+    public void save_withoutChanges_rewritesNoShards() throws Exception {
+        ShardStore store = new ShardStore(filesDir);
+        Set<Album> albums = new HashSet<>(Set.of(album("First", 5), album("Second", 5)));
+        store.write(store.capture(albums, 1));
+
+        ShardStore.Plan plan = store.capture(albums, 2);
+        assertEquals(0, plan.getShardWriteCount());
+    }
+
+    @Test
+    public void rename_onlyRewritesManifest() throws Exception {
+        ShardStore store = new ShardStore(filesDir);
+        Album album = album("Old", 5);
+        Set<Album> albums = new HashSet<>(Set.of(album));
+        store.write(store.capture(albums, 1));
+
+        album.setName("New");
+        ShardStore.Plan plan = store.capture(albums, 2);
+        assertEquals(0, plan.getShardWriteCount());
+        store.write(plan);
+
+        Album loaded = new ShardStore(filesDir).load().albums.iterator().next();
+        assertEquals("New", loaded.getName());
+        assertEquals(5, loaded.getPhotos().size());
+    }
+
+    @Test
+    public void preload_decodesAllShards() throws Exception {
+        ShardStore store = new ShardStore(filesDir);
+        Set<Album> albums = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            albums.add(album("Album " + i, 50));
+        }
+        store.write(store.capture(albums, 1));
+
+        StoreCodec.Snapshot loaded = new ShardStore(filesDir).load();
+        for (Album album : loaded.albums) {
+            assertEquals(50, album.getPhotoCount());
+        }
+        for (Future<?> future : ShardStore.preload(loaded.albums)) {
+            future.get();
+        }
+        assertEquals(albums, loaded.albums);
+        for (Album album : loaded.albums) {
+            assertNull(album.getPendingBody());
+            assertEquals(50, album.getPhotos().size());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.jsrr.android_app93;
+
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric tests for {@link SqlitePhotoRepository}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SqlitePhotoRepositoryTest {
+
+    private SqlitePhotoRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new SqlitePhotoRepository(RuntimeEnvironment.getApplication(), null);
+    }
+
+    @After
+    public void tearDown() {
+        repository.close();
+    }
+
+    private static Album album(String name, int firstPhoto, int photoCount) {
+        Album album = new Album(name);
+        for (int i = firstPhoto; i < firstPhoto + photoCount; i++) {
+            Photo photo = new Photo("Caption " + i, "/storage/photos/" + i + ".jpg");
+            photo.addTag(new Tag("Location", "City " + (i % 500)));
+            photo.addTag(new Tag("Person", "Person " + (i % 1000)));
+            photo.setDate(1_700_000_000_000L + i);
+            album.addPhoto(photo);
+        }
+        return album;
+    }
+
+    @Test
+    public void importAlbums_loadsBackAlbumsPhotosAndTags() throws Exception {
+        Set<Album> albums = new HashSet<>(Set.of(album("First", 0, 20), album("Second", 20, 20), new Album("Empty")));
+        repository.importAlbums(albums).get();
+
+        Set<Album> loaded = repository.loadAlbums();
+        assertEquals(albums, loaded);
+        for (Album album : loaded) {
+            for (Album original : albums) {
+                if (original.equals(album)) {
+                    assertEquals(original.getPhotos(), album.getPhotos());
+                }
+            }
+            for (Photo photo : album.getPhotos()) {
+                assertEquals(2, photo.getTags().size());
+                assertEquals(1_700_000_000_000L + Integer.parseInt(photo.getCaption().substring(8)), photo.getDate());
+            }
+        }
+    }
+
+    @Test
+    public void changes_areWrittenAsTheyHappen() throws Exception {
+        Album album = album("Trip", 0, 3);
+        repository.onAlbumAdded(album);
+        Photo photo = album.getPhotos().iterator().next();
+        Tag tag = new Tag("Location", "Piscataway");
+        photo.addTag(tag);
+        repository.onTagAdded(album, photo, tag);
+        photo.setCaption("Beach");
+        repository.onCaptionChanged(album, photo, "Caption 0");
+        album.setName("Vacation");
+        repository.onAlbumRenamed(album, "Trip");
+        repository.flush().get();
+
+        Set<Photo> found = repository.findPhotosByTag("location", "pisc");
+        assertEquals(Set.of(photo), found);
+        assertEquals("Beach", found.iterator().next().getCaption());
+        assertEquals(photo.getDate(), found.iterator().next().getDate());
+        assertEquals("Vacation", repository.loadAlbums().iterator().next().getName());
+        assertEquals(Set.of(photo), repository.findPhotosByCaption("bea"));
+        assertEquals(2, repository.findPhotosByCaption("caption").size());
+
+        photo.removeTag(tag);
+        repository.onTagRemoved(album, photo, tag);
+        album.removePhoto(photo);
+        repository.onPhotoRemoved(album, photo);
+        repository.flush().get();
+        assertTrue(repository.findPhotosByTag("Location", "pisc").isEmpty());
+        assertEquals(2, repository.loadAlbums().iterator().next().getPhotoCount());
+        assertTrue(repository.findPhotosByCaption("beach").isEmpty());
+
+        repository.onAlbumRemoved(album);
+        repository.flush().get();
+        assertTrue(repository.loadAlbums().isEmpty());
+        assertTrue(repository.findPhotosByTag("Location", "city").isEmpty());
+    }
+
+    @Test
+    public void failedWrite_isReportedAndRewritten() throws Exception {
+        Album album = album("Trip", 0, 3);
+        repository.onAlbumAdded(album);
+        repository.onAlbumAdded(album); // Album names are unique, so this transaction fails
+        try {
+            repository.flush().get();
+            fail("The failed write must be reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(repository.isResyncRequested());
+        repository.flush().get(); // Each failure is reported once
+
+        Album other = album("Other", 3, 2);
+        repository.resync(new HashSet<>(Set.of(album, other))).get();
+        assertFalse(repository.isResyncRequested());
+        Set<Album> loaded = repository.loadAlbums();
+        assertEquals(Set.of(album, other), loaded);
+        for (Album loadedAlbum : loaded) {
+            assertEquals(loadedAlbum.getName().equals("Trip") ? 3 : 2, loadedAlbum.getPhotoCount());
+        }
+        repository.flush().get();
+    }
+
+    @Test
+    public void findPhotosByTag_usesIndexOnLargeLibrary() throws Exception {
+        Set<Album> albums = new HashSet<>();
+        for (int a = 0; a < 100; a++) {
+            albums.add(album("Album " + a, a * 1000, 1000));
+        }
+        repository.importAlbums(albums).get();
+
+        // 100 000 photos, 200 per city and 100 per person; "city 42" also matches cities 420 to 429
+        assertEquals(11 * 200, repository.findPhotosByTag("Location", "city 42").size());
+        assertEquals(200, repository.findPhotosByTag("Location", "city 499").size());
+        assertEquals(100, repository.findPhotosByTag("PERSON", "person 999").size());
+        assertTrue(repository.findPhotosByTag("Location", "nowhere").isEmpty());
+        assertEquals(11 * 200, repository.countPhotosByTag("Location", "city 42"));
+        assertEquals(0, repository.countPhotosByTag("Location", "nowhere"));
+
+        // Text found anywhere, with the wildcards of LIKE taken literally
+        assertEquals(11 * 200, repository.findPhotosContaining("Location", "ty 49").size());
+        assertEquals(11 * 200, repository.countPhotosContaining("Location", "ty 49"));
+        assertEquals(100, repository.findPhotosContaining("Person", "n 999").size());
+        assertTrue(repository.findPhotosContaining("Location", "%").isEmpty());
+        assertTrue(repository.findPhotosContaining("Location", "c_ty").isEmpty());
+
+        // Caption words by prefix, "1234" also matching photos 12340 to 12349
+        assertEquals(11, repository.findPhotosByCaption("1234").size());
+        assertEquals(11, repository.countPhotosByCaption("1234"));
+        assertEquals(100, QueryParser.parse("caption:capt AND person:\"person 999\"").run(repository).size());
+
+        // Photo i is in city i % 500 with person i % 1000, so every "person 42" photo is in a "city 42"
+        Set<Photo> expected = repository.findPhotosByTag("Person", "person 42");
+        expected.removeAll(repository.findPhotosByTag("Person", "person 420"));
+        assertEquals(expected, QueryParser.parse(
+                "location:\"city 42\" AND person:\"person 42\" AND NOT person:\"person 420\"").run(repository));
+
+        try (Cursor plan = repository.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN "
+                + "SELECT photo_id FROM tag WHERE name = ? AND value_lower >= ? AND value_lower < ?",
+                new String[]{"Location", "city 4", "city 4\uDBFF\uDFFF"})) {
+            StringBuilder details = new StringBuilder();
+            while (plan.moveToNext()) {
+                details.append(plan.getString(plan.getColumnCount() - 1));
+            }
+            assertTrue(details.toString(), details.toString().contains("tag_lookup"));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link StoreCodec}.
+ */
+public class StoreCodecTest {
+
+    private static Set<Album> sampleLibrary(int albumCount, int photosPerAlbum) {
+        Set<Album> albums = new HashSet<>();
+        for (int a = 0; a < albumCount; a++) {
+            Album album = new Album("Album " + a);
+            for (int p = 0; p < photosPerAlbum; p++) {
+                Photo photo = new Photo(p % 3 == 0 ? null : "Caption " + p,
+                        "content://com.android.providers.media.documents/document/image%3A" + a + "_" + p);
+                photo.addTag(new Tag("Location", "New Brunswick"));
+                photo.addTag(new Tag("Person", "Person " + (p % 10)));
+                photo.setDate(p % 4 == 0 ? 0 : 1_700_000_000_000L + a * 1000 + p);
+                album.addPhoto(photo);
+            }
+            albums.add(album);
+        }
+        return albums;
+    }
+
+    private static byte[] encode(Set<Album> albums, long sequence) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StoreCodec.encode(albums, sequence, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip_preservesAlbumsPhotosAndTags() throws IOException {
+        Set<Album> albums = sampleLibrary(3, 20);
+        StoreCodec.Snapshot snapshot = StoreCodec.decode(ByteBuffer.wrap(encode(albums, 42)));
+
+        assertEquals(42, snapshot.sequence);
+        assertEquals(albums, snapshot.albums);
+        for (Album original : albums) {
+            Album decoded = null;
+            for (Album album : snapshot.albums) {
+                if (album.equals(original)) {
+                    decoded = album;
+                }
+            }
+            assertNotNull(decoded);
+            assertEquals(original.getPhotos(), decoded.getPhotos());
+            for (Photo photo : decoded.getPhotos()) {
+                for (Photo expected : original.getPhotos()) {
+                    if (expected.equals(photo)) {
+                        assertEquals(expected.getCaption(), photo.getCaption());
+                        assertEquals(expected.getTags(), photo.getTags());
+                        assertEquals(expected.getDate(), photo.getDate());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encode_isSmallerThanJavaSerialization() throws IOException {
+        Set<Album> albums = sampleLibrary(5, 200);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(serialized)) {
+            oos.writeObject(albums);
+        }
+        assertTrue(encode(albums, 1).length * 3 < serialized.size());
+    }
+
+    @Test
+    public void decode_keepsPhotosEncodedUntilFirstUse() throws IOException {
+        StoreCodec.Snapshot snapshot = StoreCodec.decode(ByteBuffer.wrap(encode(sampleLibrary(2, 50), 1)));
+        for (Album album : snapshot.albums) {
+            assertNotNull(album.getPendingBody());
+            assertEquals(50, album.getPhotoCount());
+            assertEquals(50, album.getPhotos().size());
+            assertNull(album.getPendingBody());
+        }
+    }
+
+    @Test
+    public void encode_copiesUndecodedAlbumsUnchanged() throws IOException {
+        Set<Album> albums = sampleLibrary(3, 30);
+        StoreCodec.Snapshot first = StoreCodec.decode(ByteBuffer.wrap(encode(albums, 1)));
+        first.albums.iterator().next().getPhotos();
+        StoreCodec.Snapshot second = StoreCodec.decode(ByteBuffer.wrap(encode(first.albums, 2)));
+
+        assertEquals(albums, second.albums);
+        for (Album album : second.albums) {
+            assertEquals(30, album.getPhotos().size());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsCorruptedDirectory() throws IOException {
+        byte[] bytes = encode(sampleLibrary(1, 5), 1);
+        bytes[10] ^= 0x5A;
+        StoreCodec.decode(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsCorruptedAlbumBody() throws IOException {
+        byte[] bytes = encode(sampleLibrary(1, 5), 1);
+        bytes[bytes.length - 3] ^= 0x5A;
+        Album album = StoreCodec.decode(ByteBuffer.wrap(bytes)).albums.iterator().next();
+        album.getPendingBody().decode();
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsTruncatedStore() throws IOException {
+        byte[] bytes = encode(sampleLibrary(1, 5), 1);
+        StoreCodec.decode(ByteBuffer.wrap(bytes, 0, bytes.length - 10).slice());
+    }
+}
@@ -0,0 +1,152 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SuggestionIndex} and {@link TagSuggester}.
+ */
+public class SuggestionIndexTest {
+
+    private static List<String> expected(Map<String, Integer> counts, String prefix, int limit) {
+        List<String> values = new ArrayList<>();
+        for (String value : counts.keySet()) {
+            if (value.startsWith(prefix)) {
+                values.add(value);
+            }
+        }
+        values.sort((a, b) -> counts.get(a).equals(counts.get(b))
+                ? a.compareTo(b) : Integer.compare(counts.get(b), counts.get(a)));
+        return values.subList(0, Math.min(limit, values.size()));
+    }
+
+    @Test
+    public void suggest_matchesSortedScanThroughChanges() {
+        Random random = new Random(18);
+        SuggestionIndex index = new SuggestionIndex(5);
+        Map<String, Integer> counts = new HashMap<>();
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (!added.isEmpty() && random.nextInt(3) == 0) {
+                // Remove one photo of a value added before, splitting and merging nodes as values go
+                String value = added.remove(random.nextInt(added.size()));
+                index.remove(value);
+                counts.merge(value, -1, Integer::sum);
+                counts.remove(value, 0);
+            } else {
+                // A small alphabet so values share long prefixes
+                StringBuilder value = new StringBuilder();
+                int length = 1 + random.nextInt(6);
+                for (int c = 0; c < length; c++) {
+                    value.append("ab c".charAt(Math.min(random.nextInt(4), random.nextInt(4))));
+                }
+                index.add(value.toString(), value.toString());
+                counts.merge(value.toString(), 1, Integer::sum);
+                added.add(value.toString());
+            }
+            if (i % 1000 == 0 || i > 19900) {
+                assertEquals(counts.size(), index.size());
+                for (String prefix : Arrays.asList("", "a", "ab", "aab", "b a", "c", "abab", "x")) {
+                    assertEquals(prefix, expected(counts, prefix, 5), index.suggest(prefix, 5));
+                    assertEquals(prefix, expected(counts, prefix, 2), index.suggest(prefix, 2));
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            assertEquals(entry.getKey(), (int) entry.getValue(), index.count(entry.getKey()));
+        }
+        index.remove("not there");
+        assertEquals(counts.size(), index.size());
+    }
+
+    @Test
+    public void suggest_keepsFirstSpellingAndDropsUnusedValues() {
+        SuggestionIndex index = new SuggestionIndex(3);
+        index.add("new york", "New York");
+        index.add("new york", "new york");
+        index.add("newark", "Newark");
+        index.add("new jersey", "New Jersey");
+        index.add("new jersey", "New Jersey");
+        index.add("new jersey", "New Jersey");
+        assertEquals(Arrays.asList("New Jersey", "New York", "Newark"), index.suggest("new", 8));
+        assertEquals(Collections.singletonList("New York"), index.suggest("new y", 8));
+        assertEquals(Collections.singletonList("New York"), index.suggest("new york", 8));
+        assertTrue(index.suggest("new yorker", 8).isEmpty());
+
+        index.remove("newark");
+        assertEquals(Arrays.asList("New Jersey", "New York"), index.suggest("ne", 8));
+        assertEquals(0, index.count("newark"));
+        index.add("newark", "NEWARK");
+        assertEquals(Collections.singletonList("NEWARK"), index.suggest("newa", 8));
+    }
+
+    @Test
+    public void tagSuggester_followsLibraryChanges() {
+        Set<Album> albums = new HashSet<>();
+        Album album = new Album("Album");
+        for (int p = 0; p < 30; p++) {
+            Photo photo = new Photo("Caption " + p, "/storage/" + p + ".jpg");
+            photo.addTag(new Tag("Location", p % 3 == 0 ? "Newark" : "New Brunswick"));
+            photo.addTag(new Tag("Person", "Person " + p));
+            album.addPhoto(photo);
+        }
+        albums.add(album);
+        TagSuggester suggester = new TagSuggester(albums);
+        assertEquals(Arrays.asList("New Brunswick", "Newark"), suggester.suggest("LOCATION", "NEW", 8));
+        assertEquals(3, suggester.suggest("person", "person 1", 3).size());
+
+        // Changes reported after the suggester is made are applied to the indexes
+        Album trip = new Album("Trip");
+        for (int p = 0; p < 25; p++) {
+            Photo photo = new Photo("Trip " + p, "/storage/trip" + p + ".jpg");
+            photo.addTag(new Tag("Location", "Newark"));
+            trip.addPhoto(photo);
+        }
+        albums.add(trip);
+        suggester.onAlbumAdded(trip);
+        assertEquals(Arrays.asList("Newark", "New Brunswick"), suggester.suggest("Location", "n", 8));
+        Photo photo = trip.getPhotos().iterator().next();
+        Tag tag = new Tag("Location", "Newport");
+        photo.addTag(tag);
+        suggester.onTagAdded(trip, photo, tag);
+        assertEquals(Collections.singletonList("Newport"), suggester.suggest("Location", "newp", 8));
+        photo.removeTag(tag);
+        suggester.onTagRemoved(trip, photo, tag);
+        assertTrue(suggester.suggest("Location", "newp", 8).isEmpty());
+
+        albums.remove(trip);
+        suggester.onAlbumRemoved(trip);
+        assertEquals(Arrays.asList("New Brunswick", "Newark"), suggester.suggest("Location", "new", 8));
+        assertTrue(suggester.suggest("Camera", "n", 8).isEmpty());
+    }
+
+    @Test
+    public void tagSuggester_isBuiltWhenMade() {
+        Album album = new Album("Album");
+        Photo photo = new Photo("Caption", "/storage/caption.jpg");
+        photo.addTag(new Tag("Location", "Newark"));
+        album.addPhoto(photo);
+        TagSuggester suggester = new TagSuggester(new HashSet<>(Set.of(album)));
+
+        // Suggestions never read the albums, so a photo is only counted once it is reported
+        Photo unreported = new Photo("Unreported", "/storage/unreported.jpg");
+        unreported.addTag(new Tag("Location", "Newport"));
+        album.addPhoto(unreported);
+        assertTrue(suggester.suggest("Location", "newp", 8).isEmpty());
+        suggester.onPhotoAdded(album, unreported);
+        assertEquals(Collections.singletonList("Newport"), suggester.suggest("Location", "newp", 8));
+        suggester.onPhotoRemoved(album, unreported);
+        assertEquals(Collections.singletonList("Newark"), suggester.suggest("Location", "new", 8));
+    }
+}
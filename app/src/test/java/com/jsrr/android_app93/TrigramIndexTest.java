@@ -0,0 +1,119 @@
+package com.jsrr.android_app93;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrigramIndex} and the "contains" searches built on it.
+ */
+public class TrigramIndexTest {
+
+    private static List<String> sorted(List<String> values) {
+        List<String> copy = new ArrayList<>(values);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    @Test
+    public void find_matchesLinearScan() {
+        Random random = new Random(9);
+        TrigramIndex index = new TrigramIndex();
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < 3000; i++) {
+            // A small alphabet so trigrams are shared and many candidates must be checked
+            StringBuilder value = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int c = 0; c < length; c++) {
+                value.append("abc d".charAt(random.nextInt(5)));
+            }
+            values.add(value.toString());
+            index.add(value.toString());
+        }
+        // Removed values are no longer found, and their ids are reused
+        List<String> removed = new ArrayList<>(values).subList(0, 500);
+        for (String value : new ArrayList<>(removed)) {
+            index.remove(value);
+            values.remove(value);
+        }
+        index.add("abcabc");
+        values.add("abcabc");
+        assertEquals(values.size(), index.size());
+
+        for (String text : Arrays.asList("a", "dc", "abc", "bca", "aaaa", "abcab", "d d", "ddddddddd", "x", "")) {
+            List<String> expected = new ArrayList<>();
+            for (String value : values) {
+                if (!text.isEmpty() && value.contains(text)) {
+                    expected.add(value);
+                }
+            }
+            assertEquals(text, sorted(expected), sorted(index.find(text)));
+        }
+    }
+
+    @Test
+    public void find_needsTrigramsInOrder() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("new york");
+        index.add("york, new");
+        index.add("newark");
+        assertEquals(Collections.singletonList("new york"), index.find("w yo"));
+        assertEquals(Arrays.asList("new york", "york, new"), sorted(index.find("york")));
+        assertEquals(Arrays.asList("new york", "newark", "york, new"), sorted(index.find("ne")));
+        index.remove("new york");
+        assertTrue(index.find("w yo").isEmpty());
+        assertEquals(0, new TrigramIndex().gramCount());
+    }
+
+    @Test
+    public void findPhotosContaining_matchesScanAndFollowsChanges() throws Exception {
+        Set<Album> albums = new HashSet<>();
+        Album album = new Album("Album");
+        Random random = new Random(4);
+        String[] streets = {"Main Street", "Old Mill Road", "Harbor View", "Millbrook Lane", "Elm Street"};
+        for (int p = 0; p < 400; p++) {
+            Photo photo = new Photo("Caption " + p, "/storage/" + p + ".jpg");
+            photo.addTag(new Tag("Location", random.nextInt(90) + " " + streets[random.nextInt(streets.length)]));
+            photo.addTag(new Tag("Person", "Person " + random.nextInt(40)));
+            album.addPhoto(photo);
+        }
+        albums.add(album);
+        MemoryPhotoRepository repository = new MemoryPhotoRepository(albums);
+        ScanPhotoRepository scan = new ScanPhotoRepository(albums);
+
+        for (String text : Arrays.asList("mill", "street", "1 m", "on 3", "7", "nowhere")) {
+            Set<Photo> expected = scan.findPhotosContaining("location", text);
+            assertEquals(text, expected, repository.findPhotosContaining("Location", text));
+            assertTrue(text, repository.countPhotosContaining("Location", text) >= expected.size());
+        }
+
+        // The trigram index is kept up to date once built
+        Photo photo = new Photo("New", "/storage/new.jpg");
+        photo.addTag(new Tag("Location", "Windmill Park"));
+        album.addPhoto(photo);
+        repository.onPhotoAdded(album, photo);
+        assertTrue(repository.findPhotosContaining("location", "dmill").contains(photo));
+        album.removePhoto(photo);
+        repository.onPhotoRemoved(album, photo);
+        assertTrue(repository.findPhotosContaining("location", "dmill").isEmpty());
+
+        // Typed and field queries find text anywhere, and combine it with prefixes
+        QueryExpression typed = QueryParser.parse("location:*mill AND NOT person:\"person 1\"");
+        assertEquals("location:*mill AND NOT person:\"person 1\"", typed.toString());
+        assertEquals(typed.run(scan), typed.run(repository));
+        TagQuery fields = new TagQuery("Location", "Street", TagQuery.Operator.AND, "Person", "son 2", true);
+        assertEquals(fields.run(scan), fields.run(repository));
+        assertTrue(new TagQuery("Location", "mill r", TagQuery.Operator.SINGLE, "", "", true)
+                .narrows(new TagQuery("Location", "ill", TagQuery.Operator.SINGLE, "", "", true)));
+        assertFalse(new TagQuery("Location", "mill", TagQuery.Operator.SINGLE, "", "", true)
+                .narrows(new TagQuery("Location", "mill", TagQuery.Operator.SINGLE, "", "")));
+    }
+}